@@ -0,0 +1,77 @@
+package benchmark;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import controller.ExpenseTrackerController;
+import model.Filter.AmountFilter;
+import model.Filter.CategoryFilter;
+import view.ViewUpdateQueue;
+
+/**
+ * Benchmarks of ExpenseTrackerController.applyFilter: filtering the rows and computing their subtotal.
+ * ExpenseTrackerView is a window, which cannot be created headless, so the highlighted rows are
+ * handed to a queue that only keeps the last ones instead of repainting a table.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+@State(Scope.Benchmark)
+public class ControllerBenchmark {
+
+  private ExpenseTrackerController controller;
+  private HighlightSink highlights;
+
+  @Setup(Level.Trial)
+  public void createController(ModelState state) {
+    highlights = new HighlightSink();
+    controller = new ExpenseTrackerController(state.model, null, highlights);
+  }
+
+  @Benchmark
+  public double applyCategoryFilter() {
+    controller.setFilter(new CategoryFilter("food"));
+    controller.applyFilter();
+    return highlights.total;
+  }
+
+  @Benchmark
+  public double applyAmountFilter() {
+    controller.setFilter(new AmountFilter(250));
+    controller.applyFilter();
+    return highlights.total;
+  }
+
+  /**
+   * An update queue keeping the last highlighted rows, in place of the view
+   */
+  static class HighlightSink extends ViewUpdateQueue {
+    BitSet rows;
+    double total;
+
+    HighlightSink() {
+      super(null);
+    }
+
+    @Override
+    public void highlight(BitSet rows, double total) {
+      this.rows = rows;
+      this.total = total;
+    }
+  }
+
+}
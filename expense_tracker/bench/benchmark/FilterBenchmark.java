@@ -0,0 +1,49 @@
+package benchmark;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.Transaction;
+import model.Filter.AmountFilter;
+import model.Filter.CategoryFilter;
+
+/**
+ * Benchmarks of the category and amount filters, through the List API (filter) and the row API (filterRows).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g"})
+public class FilterBenchmark {
+
+  @Benchmark
+  public List<Transaction> categoryFilter(ModelState state) {
+    return new CategoryFilter("food").filter(state.model.getTransactions());
+  }
+
+  @Benchmark
+  public List<Transaction> amountFilter(ModelState state) {
+    return new AmountFilter(250).filter(state.model.getTransactions());
+  }
+
+  @Benchmark
+  public BitSet categoryFilterRows(ModelState state) {
+    return new CategoryFilter("food").filterRows(state.model.getSnapshot().asColumns());
+  }
+
+  @Benchmark
+  public BitSet amountFilterRows(ModelState state) {
+    return new AmountFilter(250).filterRows(state.model.getSnapshot().asColumns());
+  }
+
+}
@@ -0,0 +1,60 @@
+package benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.Transaction;
+
+/**
+ * Benchmarks of adding, reading and removing transactions in the model.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g"})
+public class ModelBenchmark {
+
+  /**
+   * Adds a transaction at the end of the model. The rows added during an iteration are removed after it
+   * (see ModelState.trim), so every iteration starts from the same size.
+   */
+  @Benchmark
+  public void addTransaction(ModelState state) {
+    state.model.addTransaction(ModelState.randomTransaction(state.random));
+  }
+
+  /**
+   * Reads every transaction through the list returned by getTransactions(), as the code written
+   * against the List API does (each row is materialized as a Transaction)
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public double getTransactions(ModelState state) {
+    List<Transaction> transactions = state.model.getTransactions();
+    double total = 0;
+    for (int i = 0; i < transactions.size(); i++) {
+      total += transactions.get(i).getAmount();
+    }
+    return total;
+  }
+
+  /**
+   * Removes a transaction at a random position. A new transaction is added after each removal,
+   * so that the model keeps its size; addTransaction measures that part alone.
+   */
+  @Benchmark
+  public void removeTransaction(ModelState state) {
+    state.model.removeTransaction(state.random.nextInt(state.rows));
+    state.model.addTransaction(ModelState.randomTransaction(state.random));
+  }
+
+}
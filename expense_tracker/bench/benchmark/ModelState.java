@@ -0,0 +1,70 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import model.ExpenseTrackerModel;
+import model.Transaction;
+
+/**
+ * A model filled with random transactions, shared by the benchmarks that run at every model size.
+ */
+@State(Scope.Benchmark)
+public class ModelState {
+
+  static final String[] CATEGORIES = {"food", "travel", "bills", "entertainment", "other"};
+
+  @Param({"1000", "100000", "10000000"})
+  public int rows;
+
+  public ExpenseTrackerModel model;
+  public Random random;
+
+  @Setup(Level.Trial)
+  public void fill() {
+    random = new Random(42);
+    model = new ExpenseTrackerModel();
+    // Added in large batches, as the importer does
+    List<Transaction> batch = new ArrayList<>();
+    for (int row = 0; row < rows; row++) {
+      batch.add(randomTransaction(random));
+      if (batch.size() == 100_000 || row == rows - 1) {
+        model.addTransactions(batch);
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * Function to remove the rows added during an iteration, so that the next one starts from the same size
+   */
+  @TearDown(Level.Iteration)
+  public void trim() {
+    int size = model.getSnapshot().size();
+    if (size > rows) {
+      int[] added = new int[size - rows];
+      Arrays.setAll(added, i -> rows + i);
+      model.removeTransactions(added);
+    }
+  }
+
+  /**
+   * Function to create a transaction with a whole amount between 1 and 500 and one of the default categories,
+   * so that filters on a single amount or category match some of the rows
+   * @param random Source of the amounts and categories
+   * @return the new transaction
+   */
+  static Transaction randomTransaction(Random random) {
+    return new Transaction(1 + random.nextInt(500), CATEGORIES[random.nextInt(CATEGORIES.length)]);
+  }
+
+}
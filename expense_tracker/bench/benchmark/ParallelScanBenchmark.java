@@ -0,0 +1,97 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.ExpenseTrackerModel;
+import model.ParallelScan;
+import model.Transaction;
+import model.TransactionColumns;
+import model.Filter.AmountRangeFilter;
+import model.Filter.CategoryFilter;
+import model.Filter.NotFilter;
+import model.Filter.OrFilter;
+import model.Filter.TransactionFilter;
+
+/**
+ * Scaling of the parallel scans with the number of threads, on a dedicated pool of each size, with the
+ * chunks of the store full or (after removing a row in every 100) of varying sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g"})
+@State(Scope.Benchmark)
+public class ParallelScanBenchmark {
+
+  @Param({"1", "2", "4", "8"})
+  public int threads;
+
+  @Param({"false", "true"})
+  public boolean removed;
+
+  private ForkJoinPool pool;
+  private TransactionColumns snapshot;
+  private TransactionFilter filter;
+  private BitSet rows;
+
+  @Setup(Level.Trial)
+  public void fill() {
+    Random random = new Random(42);
+    ExpenseTrackerModel model = new ExpenseTrackerModel();
+    List<Transaction> batch = new ArrayList<>();
+    for (int row = 0; row < 5_000_000; row++) {
+      batch.add(ModelState.randomTransaction(random));
+      if (batch.size() == 100_000) {
+        model.addTransactions(batch);
+        batch.clear();
+      }
+    }
+    if (removed) {
+      int[] rows = new int[50_000];
+      for (int i = 0; i < rows.length; i++) {
+        rows[i] = i * 100 + random.nextInt(100);
+      }
+      model.removeTransactions(rows);
+    }
+    snapshot = model.getSnapshot().asColumns();
+    filter = new OrFilter(AmountRangeFilter.above(400), new NotFilter(new CategoryFilter("food")));
+    rows = filter.filterRows(snapshot);
+    pool = new ForkJoinPool(threads);
+  }
+
+  @TearDown(Level.Trial)
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public BitSet filterRows() {
+    return ParallelScan.filterRows(snapshot, filter.cost(), filter::compile, pool);
+  }
+
+  @Benchmark
+  public double sum() {
+    return ParallelScan.sum(snapshot, rows, pool);
+  }
+
+}
@@ -0,0 +1,69 @@
+package benchmark;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import controller.InputValidation;
+
+/**
+ * Benchmarks of the input validation, on a mix of valid and invalid amounts and categories.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ValidationBenchmark {
+
+  // A power of two, so that the next input is picked with a mask
+  private static final int INPUTS = 1024;
+  private static final String[] CATEGORIES = {"food", "Travel", "BILLS", "entertainment", "other", "rent", "", "f00d"};
+
+  private double[] amounts;
+  private String[] categories;
+  private int next;
+
+  @Setup
+  public void createInputs() {
+    Random random = new Random(42);
+    amounts = new double[INPUTS];
+    categories = new String[INPUTS];
+    for (int i = 0; i < INPUTS; i++) {
+      amounts[i] = random.nextInt(1200) - 100 + random.nextInt(100) / 100.0;
+      categories[i] = CATEGORIES[random.nextInt(CATEGORIES.length)];
+    }
+  }
+
+  @Benchmark
+  public boolean isValidAmount() {
+    return InputValidation.isValidAmount(amounts[next++ & (INPUTS - 1)]);
+  }
+
+  @Benchmark
+  public boolean isValidCategory() {
+    return InputValidation.isValidCategory(categories[next++ & (INPUTS - 1)]);
+  }
+
+  /**
+   * Validates every input in one batch, as the importer does
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public BitSet findInvalidRows() {
+    return InputValidation.findInvalidRows(amounts, categories, INPUTS);
+  }
+
+}
@@ -0,0 +1,75 @@
+package benchmark;
+
+import java.awt.Component;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JTable;
+import javax.swing.table.TableCellRenderer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.TransactionColumns;
+import view.HighlightRenderer;
+import view.TransactionTableModel;
+
+/**
+ * Benchmark of refreshing the transactions table, headless. ExpenseTrackerView.refreshTable hands the
+ * snapshot to its TransactionTableModel; here the same table model and renderer are used without a window,
+ * and a refresh is followed by rendering the rows a window would show.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+@State(Scope.Benchmark)
+public class ViewBenchmark {
+
+  // Rows visible in the default window size
+  private static final int VISIBLE_ROWS = 20;
+
+  private TransactionTableModel tableModel;
+  private JTable table;
+  private TransactionColumns snapshot;
+
+  @Setup(Level.Trial)
+  public void createTable(ModelState state) {
+    tableModel = new TransactionTableModel();
+    table = new JTable(tableModel);
+    table.setDefaultRenderer(Object.class, new HighlightRenderer());
+    snapshot = state.model.getSnapshot().asColumns();
+  }
+
+  @Benchmark
+  public int refreshTable() {
+    tableModel.setColumns(snapshot);
+    // Render the first page, and the total row at the end
+    int rendered = 0;
+    int rowCount = table.getRowCount();
+    for (int row = 0; row < rowCount && row < VISIBLE_ROWS; row++) {
+      rendered += renderRow(row);
+    }
+    return rendered + renderRow(rowCount - 1);
+  }
+
+  private int renderRow(int row) {
+    int width = 0;
+    for (int column = 0; column < table.getColumnCount(); column++) {
+      TableCellRenderer renderer = table.getCellRenderer(row, column);
+      Component cell = table.prepareRenderer(renderer, row, column);
+      width += cell.getPreferredSize().width;
+    }
+    return width;
+  }
+
+}
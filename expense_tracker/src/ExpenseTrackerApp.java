@@ -1,26 +1,67 @@
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import controller.ExpenseTrackerController;
 import model.ExpenseTrackerModel;
+import model.Persistence.TransactionImporter;
+import model.Persistence.TransactionJournal;
 import view.ExpenseTrackerView;
+import view.ViewUpdateQueue;
 import model.Filter.AmountFilter;
 import model.Filter.CategoryFilter;
+import model.Filter.TransactionFilter;
+import metrics.Metrics;
 import javax.swing.JTable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
 
 public class ExpenseTrackerApp {
 
+  // System properties choosing the file keeping the transactions between sessions (empty to keep none),
+  // and how often it is forced to disk (a TransactionJournal.SyncPolicy)
+  static final String JOURNAL_PROPERTY = "expensetracker.journal";
+  static final String JOURNAL_SYNC_PROPERTY = "expensetracker.journal.sync";
+  // Default journal file, in this directory under the user's home directory
+  private static final String JOURNAL_DIRECTORY = ".expensetracker";
+  private static final String JOURNAL_FILE = "transactions.journal";
+  // File receiving a snapshot of the metrics every METRICS_INTERVAL_MILLIS, when they are enabled
+  private static final String METRICS_FILE = "metrics.csv";
+  private static final long METRICS_INTERVAL_MILLIS = 10_000;
+
   /**
    * @param args
    */
   public static void main(String[] args) {
-    
+    if (Metrics.ENABLED) {
+      exportMetrics();
+    }
+
     // Create MVC components
-    ExpenseTrackerModel model = new ExpenseTrackerModel();
+    Path journalFile = journalFile();
+    TransactionJournal journal = journalFile != null ? openJournal(journalFile) : null;
+    ExpenseTrackerModel model = journal != null ? new ExpenseTrackerModel(journal.getStore()) : new ExpenseTrackerModel();
     ExpenseTrackerView view = new ExpenseTrackerView();
-    ExpenseTrackerController controller = new ExpenseTrackerController(model, view);
+    // The model is updated off the event dispatch thread, and the view at most once per frame
+    ExpenseTrackerController controller = new ExpenseTrackerController(model, view,
+        new ViewUpdateQueue(view, ViewUpdateQueue.DEFAULT_FRAME_MILLIS));
     
 
     // Initialize view
     view.setVisible(true);
+    // Show the transactions restored from the journal
+    controller.submit(() -> {
+      if (!model.getTransactions().isEmpty()) {
+        controller.refresh();
+      }
+      return null;
+    });
+    if (journalFile != null && journal == null) {
+      JOptionPane.showMessageDialog(view, "The transactions could not be loaded and will not be saved");
+      view.toFront();
+    }
 
 
 
@@ -31,12 +72,11 @@ public class ExpenseTrackerApp {
       String category = view.getCategoryField();
       
       // Call controller to add transaction
-      boolean added = controller.addTransaction(amount, category);
-      
-      if (!added) {
-        JOptionPane.showMessageDialog(view, "Invalid amount or category entered");
-        view.toFront();
-      }
+      controller.submit(() -> controller.addTransaction(amount, category)).whenComplete((added, failure) -> {
+        if (failure != null || !added) {
+          showMessage(view, "Invalid amount or category entered");
+        }
+      });
     });
 
       // Add action listener to the "Apply Category Filter" button
@@ -46,8 +86,7 @@ public class ExpenseTrackerApp {
       CategoryFilter categoryFilter = new CategoryFilter(categoryFilterInput);
       if (categoryFilterInput != null) {
           // controller.applyCategoryFilter(categoryFilterInput);
-          controller.setFilter(categoryFilter);
-          controller.applyFilter();
+          applyFilter(controller, view, categoryFilter);
       }
      }catch(IllegalArgumentException exception) {
     JOptionPane.showMessageDialog(view, exception.getMessage());
@@ -61,8 +100,7 @@ public class ExpenseTrackerApp {
       double amountFilterInput = view.getAmountFilterInput();
       AmountFilter amountFilter = new AmountFilter(amountFilterInput);
       if (amountFilterInput != 0.0) {
-          controller.setFilter(amountFilter);
-          controller.applyFilter();
+          applyFilter(controller, view, amountFilter);
       }
     }catch(IllegalArgumentException exception) {
     JOptionPane.showMessageDialog(view,exception.getMessage());
@@ -71,44 +109,176 @@ public class ExpenseTrackerApp {
 
     // Creating an ActionListener to handle the event of ButtonClick on Delete Transaction Button
     view.getDeleteTransactionBtn().addActionListener(e -> {
+      // The selected rows are resolved to stable ids on the event dispatch thread, while the table matches them
+      long[] ids = view.getSelectedTransactionIds();
       // Checking whether the delete operation was successful or not
-      boolean is_deleted = deleteTransaction(controller, view);
-      // Displaying an Error Message using JOptionPane on the GUI 
-      if (!is_deleted) {
-        JOptionPane.showMessageDialog(view, "There's no such transaction in the table!");
-        view.toFront();
+      controller.submit(() -> deleteTransaction(controller, ids)).whenComplete((is_deleted, failure) -> {
+        // Displaying an Error Message using JOptionPane on the GUI 
+        if (failure != null || !is_deleted) {
+          showMessage(view, "There's no such transaction in the table!");
+        }
+      });
+    });
+
+
+    // Import the transactions of a CSV or TSV file
+    view.getImportBtn().addActionListener(e -> {
+      Path file = view.getImportFileInput();
+      if (file == null) {
+        return;
       }
+      controller.submit(() -> controller.importTransactions(file)).whenComplete((result, failure) -> {
+        if (failure != null) {
+          showMessage(view, "The file could not be imported: " + failure.getMessage());
+          return;
+        }
+        String message = "Imported " + result.getImportedCount() + " transactions";
+        if (result.getRejectedCount() > 0) {
+          message += ", rejected " + result.getRejectedCount() + " invalid lines (first: line " + result.getRejectedLines()[0] + ")";
+        }
+        showMessage(view, message);
+      });
+    });
+
+    // Export the transactions (only the filtered ones if a filter is applied) without blocking the UI
+    view.getExportBtn().addActionListener(e -> {
+      Path file = view.getExportFileInput();
+      if (file == null) {
+        return;
+      }
+      // The export is started on the model thread, and then writes the file on its own
+      controller.submit(() -> controller.exportTransactions(file, true)).thenCompose(export -> export)
+          .whenComplete((count, failure) -> {
+            if (failure != null) {
+              showMessage(view, "The transactions could not be exported: " + failure.getMessage());
+            } else {
+              showMessage(view, "Exported " + count + " transactions");
+            }
+          });
     });
 
   }
 
   /**
-   * Function called by the action listener of the delete button to remove a selected transaction from the model and the view
-   * @param controller controller to delete the transaction from model and view
-   * @param view used to get the index of selected transaction
-   * @return boolean status code indicating whether the deletion was successful or not 
+   * Function to set a filter and highlight the matching rows, on the model thread
+   * @param controller controller applying the filter
+   * @param view used to show an error
+   * @param filter filter to be applied
    */
-  private static boolean deleteTransaction(ExpenseTrackerController controller, ExpenseTrackerView view) {
-    // Getting the index of selected row in JTable
-    int row_index = view.getJTransactionsTable().getSelectedRow();
-    // Validating the row index
-    if (checkRowNum(view, row_index)) {
-      boolean is_deleted = controller.deleteTransaction(row_index);
-      return is_deleted;
-    } else {
-      return false;
+  private static void applyFilter(ExpenseTrackerController controller, ExpenseTrackerView view, TransactionFilter filter) {
+    controller.submit(() -> {
+      controller.setFilter(filter);
+      controller.applyFilter();
+      return null;
+    }).whenComplete((ignored, failure) -> {
+      if (failure != null) {
+        showMessage(view, failure.getMessage());
+      }
+    });
+  }
+
+  /**
+   * Function to show a message on the event dispatch thread, from any thread
+   * @param view view the message is shown over
+   * @param message message to be shown
+   */
+  private static void showMessage(ExpenseTrackerView view, String message) {
+    SwingUtilities.invokeLater(() -> {
+      JOptionPane.showMessageDialog(view, message);
+      view.toFront();
+    });
+  }
+
+  /**
+   * Function to publish the metrics over JMX and write them to METRICS_FILE periodically and on exit
+   */
+  private static void exportMetrics() {
+    try {
+      Metrics.registerMBeans();
+    } catch (IllegalStateException e) {
+      e.printStackTrace();
     }
+    Closeable exports = Metrics.exportPeriodically(Paths.get(METRICS_FILE), METRICS_INTERVAL_MILLIS);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        exports.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }));
   }
 
   /**
-   * Function to check whether the row number is valid (a precautionary function)
-   * @param view To access the total number of rows present in the table
-   * @param row_index Row index of the selected transaction
-   * @return boolean value specifying whether the row index is valid or not
+   * Function to find the journal file, from the system property JOURNAL_PROPERTY
+   * @return the journal file (by default transactions.journal in the .expensetracker directory of the user's home),
+   *     or null if the property is empty and the transactions are not kept between sessions
    */
-  private static boolean checkRowNum(ExpenseTrackerView view, int row_index) {
-    int row_counts = view.getJTransactionsTable().getRowCount();
-    // Checking whether the current index falls within a valid range
-    return (row_index < row_counts) && (row_index >= 0);
+  static Path journalFile() {
+    String file = System.getProperty(JOURNAL_PROPERTY);
+    if (file == null) {
+      return Paths.get(System.getProperty("user.home"), JOURNAL_DIRECTORY, JOURNAL_FILE);
+    }
+    return file.trim().isEmpty() ? null : Paths.get(file.trim());
+  }
+
+  /**
+   * Function to read how often the journal is forced to disk, from the system property JOURNAL_SYNC_PROPERTY
+   * @return the sync policy (GROUP_COMMIT by default)
+   */
+  static TransactionJournal.SyncPolicy journalSyncPolicy() {
+    String policy = System.getProperty(JOURNAL_SYNC_PROPERTY);
+    if (policy == null) {
+      return TransactionJournal.SyncPolicy.GROUP_COMMIT;
+    }
+    try {
+      return TransactionJournal.SyncPolicy.valueOf(policy.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid journal sync policy: " + policy);
+    }
+  }
+
+  /**
+   * Function to open the journal holding the transactions of earlier sessions.
+   * The journal is committed and closed when the application exits.
+   * @param file Journal file (its directory is created if needed)
+   * @return the opened journal, or null if it cannot be opened
+   */
+  private static TransactionJournal openJournal(Path file) {
+    try {
+      Path directory = file.toAbsolutePath().getParent();
+      if (directory != null) {
+        Files.createDirectories(directory);
+      }
+      TransactionJournal journal = TransactionJournal.open(file, journalSyncPolicy());
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        try {
+          journal.close();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }));
+      return journal;
+    } catch (IOException | RuntimeException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  /**
+   * Function called by the action listener of the delete button to remove the selected transactions from the model and the view
+   * @param controller controller to delete the transactions from model and view
+   * @param ids the ids of the selected transactions
+   * @return boolean status code indicating whether the deletion was successful or not 
+   */
+  private static boolean deleteTransaction(ExpenseTrackerController controller, long[] ids) {
+    // Stable ids do not depend on how the table is sorted or filtered
+    if (ids.length == 0) {
+      return false;
+    }
+    if (ids.length == 1) {
+      return controller.deleteTransactionById(ids[0]);
+    }
+    // Several selected rows are deleted with one batch update
+    return controller.deleteTransactionsById(ids);
   }
 }
@@ -1,15 +1,26 @@
 package controller;
 
 import view.ExpenseTrackerView;
+import view.ViewUpdateQueue;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.swing.JOptionPane;
 
 import model.ExpenseTrackerModel;
 import model.Transaction;
+import model.TransactionColumns;
 import model.Filter.TransactionFilter;
+import model.Persistence.TransactionExporter;
+import model.Persistence.TransactionImporter;
+import metrics.Metrics;
 
 public class ExpenseTrackerController {
   
@@ -21,10 +32,59 @@ public class ExpenseTrackerController {
    * being used in the applyFilter method.
    */
   private TransactionFilter filter;
+  // Every change to be shown goes through the queue, which applies it right away or once per frame
+  private final ViewUpdateQueue updates;
+  // Thread running the submitted operations (created on first use)
+  private ExecutorService modelExecutor;
 
   public ExpenseTrackerController(ExpenseTrackerModel model, ExpenseTrackerView view) {
+    this(model, view, new ViewUpdateQueue(view));
+  }
+
+  /**
+   * Constructor for a controller publishing its changes to the view through the given queue
+   * @param model Model holding the transactions
+   * @param view View showing the transactions
+   * @param updates Queue the changes are shown through; a coalescing queue is needed to use submit()
+   */
+  public ExpenseTrackerController(ExpenseTrackerModel model, ExpenseTrackerView view, ViewUpdateQueue updates) {
     this.model = model;
     this.view = view;
+    this.updates = updates;
+    // The view follows every change of the model, whoever makes it
+    model.addTransactionListener(updates);
+  }
+
+  /**
+   * Function to run an operation of this controller off the event dispatch thread, so the UI stays responsive.
+   * Operations run one at a time on a single thread, in the order they are submitted (the order the user
+   * asked for them); the changes they make reach the view through the coalescing queue.
+   * @param operation Operation to be run, e.g. () -> controller.addTransaction(amount, category)
+   * @return a future completed with the result of the operation, or with its failure
+   */
+  public <T> CompletableFuture<T> submit(Callable<T> operation) {
+    if (updates.isImmediate()) {
+      throw new IllegalStateException("Background operations need a coalescing view update queue.");
+    }
+    synchronized (this) {
+      if (modelExecutor == null) {
+        // A daemon thread, so that it never keeps the application alive
+        modelExecutor = Executors.newSingleThreadExecutor(runnable -> {
+          Thread thread = new Thread(runnable, "expense-tracker-model");
+          thread.setDaemon(true);
+          return thread;
+        });
+      }
+    }
+    CompletableFuture<T> result = new CompletableFuture<>();
+    modelExecutor.execute(() -> {
+      try {
+        result.complete(operation.call());
+      } catch (Exception | Error e) {
+        result.completeExceptionally(e);
+      }
+    });
+    return result;
   }
 
   public void setFilter(TransactionFilter filter) {
@@ -33,44 +93,108 @@ public class ExpenseTrackerController {
   }
 
   public void refresh() {
-    List<Transaction> transactions = model.getTransactions();
-    view.refreshTable(transactions);
+    long start = Metrics.start();
+    updates.refresh(model.getSnapshot().asColumns());
+    Metrics.REFRESH.stop(start);
   }
 
   public boolean addTransaction(double amount, String category) {
-    if (!InputValidation.isValidAmount(amount)) {
+    long start = Metrics.start();
+    try {
+      if (!InputValidation.isValidAmount(amount)) {
+        return false;
+      }
+      if (!InputValidation.isValidCategory(category)) {
+        return false;
+      }
+
+      Transaction t = new Transaction(amount, category);
+      // The model reports only the new row to the view, instead of rebuilding the whole table
+      model.addTransaction(t);
+      return true;
+    } finally {
+      Metrics.ADD_TRANSACTION.stop(start);
+    }
+  }
+
+  /**
+   * Function to add several transactions at once, with a single update of the model and the view
+   * @param transactions Transactions to be added, in order (already validated by their constructor)
+   * @return false (and nothing is added) if the collection is empty or holds a null
+   */
+  public boolean addTransactions(Collection<Transaction> transactions) {
+    if (transactions == null || transactions.isEmpty() || transactions.contains(null)) {
       return false;
     }
-    if (!InputValidation.isValidCategory(category)) {
+    model.addTransactions(transactions);
+    return true;
+  }
+
+  /**
+   * Function to import the transactions of a CSV or TSV file.
+   * The rows are parsed in parallel and added in large batches; the view is notified once per batch.
+   * @param file File to be imported
+   * @return the number of imported and rejected rows
+   * @throws IOException if the file cannot be read
+   */
+  public TransactionImporter.ImportResult importTransactions(Path file) throws IOException {
+    return TransactionImporter.forFile(file).importFile(file, this::addTransactions);
+  }
+
+  /**
+   * Function to export the transactions in the background, while the model keeps changing.
+   * The export reads the snapshot taken when it is started.
+   * @param file Exported file (.csv files are written as CSV, all others in the binary snapshot format)
+   * @param onlyFiltered Whether to only export the rows matching the current filter (if one is set)
+   * @return a future completed with the number of exported rows, or with the failure of the export
+   */
+  public CompletableFuture<Integer> exportTransactions(Path file, boolean onlyFiltered) {
+    TransactionColumns transactions = model.getSnapshot().asColumns();
+    BitSet rows;
+    if (onlyFiltered && filter != null) {
+      rows = filter.filterRows(transactions);
+    } else {
+      rows = new BitSet(transactions.size());
+      rows.set(0, transactions.size());
+    }
+    return TransactionExporter.exportInBackground(transactions, rows, file, TransactionExporter.Format.forFile(file));
+  }
+
+  /**
+   * Function to make a new category available for transactions and filters
+   * @param category Name of the new category (letters only)
+   * @return true if the category is available (it may have existed already), false if the name is not valid
+   */
+  public boolean addCategory(String category) {
+    if (!InputValidation.isValidCategoryName(category)) {
+      return false;
+    }
+    try {
+      model.addCategory(category);
+    } catch (IllegalStateException e) {
+      // The dictionary is full
       return false;
     }
-    
-    Transaction t = new Transaction(amount, category);
-    model.addTransaction(t);
-    view.getTableModel().addRow(new Object[]{t.getAmount(), t.getCategory(), t.getTimestamp()});
-    refresh();
     return true;
   }
 
   public void applyFilter() {
+    long start = Metrics.start();
     //null check for filter
     if(filter!=null){
-      // Use the Strategy class to perform the desired filtering
-      List<Transaction> transactions = model.getTransactions();
-      List<Transaction> filteredTransactions = filter.filter(transactions);
-      List<Integer> rowIndexes = new ArrayList<>();
-      for (Transaction t : filteredTransactions) {
-        int rowIndex = transactions.indexOf(t);
-        if (rowIndex != -1) {
-          rowIndexes.add(rowIndex);
-        }
-      }
-      view.highlightRows(rowIndexes);
+      // Use the Strategy class to perform the desired filtering.
+      // The filter reports the positions of the matching rows directly, in one scan.
+      TransactionColumns transactions = model.getSnapshot().asColumns();
+      BitSet rowIndexes = filter.filterRows(transactions);
+      updates.highlight(rowIndexes, filter.subtotal(transactions, rowIndexes));
     }
     else{
-      JOptionPane.showMessageDialog(view, "No filter applied");
-      view.toFront();}
-
+      updates.runOnView(() -> {
+        JOptionPane.showMessageDialog(view, "No filter applied");
+        view.toFront();
+      });
+    }
+    Metrics.APPLY_FILTER.stop(start);
   }
 
   /**
@@ -78,12 +202,63 @@ public class ExpenseTrackerController {
    * @param index_number Specifies the index number of the row selected in GUI
    */
   public boolean deleteTransaction(int index_number) {
-    // Updating the model
-    model.removeTransaction(index_number);
-    // Updating the view
-    view.deleteTransactionRow(index_number); // the row number also start from 0
-    refresh();
+    long start = Metrics.start();
+    // Updating the model, which updates the view
+    model.removeTransaction(index_number); // the row number also start from 0
+    Metrics.DELETE_TRANSACTION.stop(start);
     return true;
   }
+
+  /**
+   * Function to delete several transactions at once, with a single update of the model and the view
+   * @param index_numbers Index numbers of the rows selected in GUI
+   * @return false (and nothing is deleted) if any index does not name a transaction
+   */
+  public boolean removeTransactions(int[] index_numbers) {
+    if (index_numbers.length == 0) {
+      return false;
+    }
+    long start = Metrics.start();
+    try {
+      // The model checks the indexes and removes the rows under one write lock, so no other change can come in between
+      model.removeTransactions(index_numbers);
+      return true;
+    } catch (IndexOutOfBoundsException e) {
+      return false;
+    } finally {
+      Metrics.DELETE_TRANSACTION.stop(start);
+    }
+  }
+
+  /**
+   * Function to delete a transaction by its stable id, so that the right transaction is deleted however the table is sorted or filtered
+   * @param id Id of the transaction selected in GUI
+   * @return false if no transaction has the id
+   */
+  public boolean deleteTransactionById(long id) {
+    long start = Metrics.start();
+    try {
+      return model.removeTransactionById(id);
+    } finally {
+      Metrics.DELETE_TRANSACTION.stop(start);
+    }
+  }
+
+  /**
+   * Function to delete several transactions by their stable ids, with a single update of the model and the view
+   * @param ids Ids of the transactions selected in GUI
+   * @return false (and nothing is deleted) if the array is empty or any id does not name a transaction
+   */
+  public boolean deleteTransactionsById(long[] ids) {
+    if (ids.length == 0) {
+      return false;
+    }
+    long start = Metrics.start();
+    try {
+      return model.removeTransactionsById(ids);
+    } finally {
+      Metrics.DELETE_TRANSACTION.stop(start);
+    }
+  }
   
 }
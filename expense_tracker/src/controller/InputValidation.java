@@ -1,9 +1,13 @@
 package controller;
 
-import java.util.Arrays;
+import java.util.BitSet;
+
+import model.CategoryDictionary;
 
 public class InputValidation {
 
+  public static final int MAX_CATEGORY_NAME_LENGTH = 32;
+
   public static boolean isValidAmount(double amount) {
     
     // Check range
@@ -16,32 +20,53 @@ public class InputValidation {
     if (amount == 0){
       return false;
     }
+    // NaN passes every comparison above
+    if (Double.isNaN(amount)) {
+      return false;
+    }
     return true;
   }
 
   public static boolean isValidCategory(String category) {
+    return CategoryDictionary.codeOf(category) != -1;
+  }
 
-    if(category == null) {
-      return false; 
-    }
-  
-    if(category.trim().isEmpty()) {
+  /**
+   * Function to check whether a new category may be registered
+   * @param category Category name
+   * @return true if the name only holds letters and is at most MAX_CATEGORY_NAME_LENGTH long
+   */
+  public static boolean isValidCategoryName(String category) {
+    if (category == null || category.isEmpty() || category.length() > MAX_CATEGORY_NAME_LENGTH) {
       return false;
     }
-
-    if(!category.matches("[a-zA-Z]+")) {
-      return false;
+    for (int i = 0; i < category.length(); i++) {
+      char c = category.charAt(i);
+      if ((c < 'a' || c > 'z') && (c < 'A' || c > 'Z')) {
+        return false;
+      }
     }
+    return true;
+  }
 
-    String[] validWords = {"food", "travel", "bills", "entertainment", "other"};
-
-    if(!Arrays.asList(validWords).contains(category.toLowerCase())) {
-      // invalid word  
-      return false;
+  /**
+   * Function to validate a batch of incoming rows in one pass
+   * @param amounts Amounts of the rows
+   * @param categories Categories of the rows (same length as amounts)
+   * @param count Number of rows to check, from the start of the arrays
+   * @return bitmap of the rows holding an invalid amount or category (empty if every row is valid)
+   */
+  public static BitSet findInvalidRows(double[] amounts, String[] categories, int count) {
+    if (count < 0 || count > amounts.length || count > categories.length) {
+      throw new IllegalArgumentException("The batch is not valid.");
     }
-  
-    return true;
-  
+    BitSet invalidRows = new BitSet();
+    for (int row = 0; row < count; row++) {
+      if (!isValidAmount(amounts[row]) || CategoryDictionary.codeOf(categories[row]) == -1) {
+        invalidRows.set(row);
+      }
+    }
+    return invalidRows;
   }
 
-}
\ No newline at end of file
+}
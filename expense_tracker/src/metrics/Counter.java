@@ -0,0 +1,41 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free counter of events, e.g. the rows added to the model. Threads add to their own cell
+ * of a LongAdder, so counting from many threads does not contend on a single value.
+ */
+public class Counter implements CounterMXBean {
+
+  private final String name;
+  private final LongAdder count = new LongAdder();
+
+  Counter(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Function to count events, if metrics are enabled
+   * @param events Number of events
+   */
+  public void add(long events) {
+    if (Metrics.ENABLED) {
+      count.add(events);
+    }
+  }
+
+  public void increment() {
+    add(1);
+  }
+
+  @Override
+  public long getCount() {
+    return count.sum();
+  }
+
+}
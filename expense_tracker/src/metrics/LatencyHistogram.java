@@ -0,0 +1,141 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds, with buckets in the style of HdrHistogram.
+ *
+ * Every power of two is split into 32 buckets of equal width, so a value is known to within about 3%
+ * whatever its magnitude, with a fixed array of counters. Recording a value is one atomic increment
+ * (plus an addition to the sum); any number of threads may record at the same time.
+ */
+public class LatencyHistogram {
+
+  // Each power of two is split into 2^SUB_BUCKET_BITS buckets
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // Values up to 2^MAX_BITS - 1 ns (about 18 minutes) are told apart; larger ones share the last bucket
+  private static final int MAX_BITS = 40;
+  static final int BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Function to record one latency
+   * @param nanos Latency in nanoseconds (negative values are recorded as 0)
+   */
+  public void record(long nanos) {
+    long value = Math.max(nanos, 0);
+    counts.incrementAndGet(bucketOf(value));
+    sum.add(value);
+    if (value > max.get()) {
+      max.accumulateAndGet(value, Math::max);
+    }
+  }
+
+  /**
+   * Function to copy the current counts, while other threads keep recording
+   * @return the recorded latencies so far
+   */
+  public Snapshot snapshot() {
+    long[] copy = new long[BUCKETS];
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      copy[bucket] = counts.get(bucket);
+    }
+    return new Snapshot(copy, sum.sum(), max.get());
+  }
+
+  /**
+   * Function to find the bucket of a value: the value itself below 2 * SUB_BUCKETS, and otherwise
+   * the power of two of the value followed by its SUB_BUCKET_BITS bits after the highest one
+   */
+  static int bucketOf(long value) {
+    if (value < 2 * SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    if (shift > MAX_BITS - SUB_BUCKET_BITS - 1) {
+      return BUCKETS - 1;
+    }
+    return shift * SUB_BUCKETS + (int) (value >>> shift);
+  }
+
+  /**
+   * @return the largest value that falls into a bucket
+   */
+  static long highestValueOf(int bucket) {
+    if (bucket < 2 * SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long mantissa = bucket - shift * SUB_BUCKETS;
+    return ((mantissa + 1) << shift) - 1;
+  }
+
+  /**
+   * The counts of a histogram at one point in time
+   */
+  public static class Snapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    Snapshot(long[] counts, long sum, long max) {
+      this.counts = counts;
+      long total = 0;
+      for (long bucketCount : counts) {
+        total += bucketCount;
+      }
+      this.count = total;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * @return the mean latency in nanoseconds, or 0 if nothing was recorded
+     */
+    public double getMean() {
+      return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @return the largest recorded latency in nanoseconds
+     */
+    public long getMax() {
+      return max;
+    }
+
+    /**
+     * Function to find the latency below which a share of the recorded latencies fall
+     * @param percentile Share of the latencies, between 0 and 100 (e.g. 99.9)
+     * @return the latency in nanoseconds (to within about 3%, never above the maximum), or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+      if (percentile < 0 || percentile > 100) {
+        throw new IllegalArgumentException("The percentile must be between 0 and 100.");
+      }
+      if (count == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+      long seen = 0;
+      for (int bucket = 0; bucket < counts.length; bucket++) {
+        seen += counts[bucket];
+        if (seen >= rank) {
+          return Math.min(highestValueOf(bucket), max);
+        }
+      }
+      return max;
+    }
+  }
+
+}
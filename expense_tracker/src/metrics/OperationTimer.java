@@ -0,0 +1,81 @@
+package metrics;
+
+/**
+ * The latencies of one operation, e.g. adding a transaction through the controller.
+ *
+ * Typical use, which costs nothing when metrics are disabled:
+ * <pre>
+ *   long start = Metrics.start();
+ *   ... the operation ...
+ *   Metrics.ADD_TRANSACTION.stop(start);
+ * </pre>
+ */
+public class OperationTimer implements OperationTimerMXBean {
+
+  private final String name;
+  private final LatencyHistogram histogram = new LatencyHistogram();
+
+  OperationTimer(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Function to record the latency of an operation started at the given time, if metrics are enabled
+   * @param startNanos Start of the operation, as returned by Metrics.start()
+   */
+  public void stop(long startNanos) {
+    if (Metrics.ENABLED) {
+      histogram.record(System.nanoTime() - startNanos);
+    }
+  }
+
+  /**
+   * Function to record a latency measured by the caller (whether metrics are enabled or not)
+   * @param nanos Latency in nanoseconds
+   */
+  public void record(long nanos) {
+    histogram.record(nanos);
+  }
+
+  /**
+   * @return the latencies recorded so far
+   */
+  public LatencyHistogram.Snapshot snapshot() {
+    return histogram.snapshot();
+  }
+
+  @Override
+  public long getCount() {
+    return snapshot().getCount();
+  }
+
+  @Override
+  public double getMeanNanos() {
+    return snapshot().getMean();
+  }
+
+  @Override
+  public long getP50Nanos() {
+    return snapshot().getPercentile(50);
+  }
+
+  @Override
+  public long getP99Nanos() {
+    return snapshot().getPercentile(99);
+  }
+
+  @Override
+  public long getP999Nanos() {
+    return snapshot().getPercentile(99.9);
+  }
+
+  @Override
+  public long getMaxNanos() {
+    return snapshot().getMax();
+  }
+
+}
@@ -0,0 +1,20 @@
+package metrics;
+
+/**
+ * JMX view of an OperationTimer. All latencies are in nanoseconds.
+ */
+public interface OperationTimerMXBean {
+
+  public long getCount();
+
+  public double getMeanNanos();
+
+  public long getP50Nanos();
+
+  public long getP99Nanos();
+
+  public long getP999Nanos();
+
+  public long getMaxNanos();
+
+}
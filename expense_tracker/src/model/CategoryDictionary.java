@@ -0,0 +1,151 @@
+package model;
+
+import java.util.Arrays;
+
+import controller.InputValidation;
+
+/**
+ * Dictionary of the known categories, shared by every transaction, store and filter.
+ *
+ * Each category is interned once and identified by a small integer code (at most 256 codes, so a
+ * code fits the byte column of the stores). Transactions and stores keep the code instead of the
+ * name, so comparing, grouping and indexing categories are integer operations.
+ *
+ * The five default categories always have the codes 0 to 4. More categories can be registered at
+ * any time; codes are never reused or removed. Lookups never lock and never allocate: they read an
+ * immutable table that registration replaces as a whole.
+ */
+public final class CategoryDictionary {
+
+  /**
+   * Maximum number of distinct categories
+   */
+  public static final int MAX_CATEGORIES = 256;
+
+  private static final String[] DEFAULT_CATEGORIES = {"food", "travel", "bills", "entertainment", "other"};
+
+  private static volatile Table table = Table.EMPTY;
+
+  static {
+    for (String category : DEFAULT_CATEGORIES) {
+      register(category);
+    }
+  }
+
+  private CategoryDictionary() {
+  }
+
+  /**
+   * Function to look up the code of a category, ignoring case
+   * @param category Category name
+   * @return the code of the category, or -1 if it is not registered
+   */
+  public static int codeOf(String category) {
+    return category == null ? -1 : table.find(category);
+  }
+
+  /**
+   * @param code Category code
+   * @return the canonical (lower-case) name of the category
+   * @throws IndexOutOfBoundsException if no category has the code
+   */
+  public static String nameOf(int code) {
+    Table current = table;
+    if (code < 0 || code >= current.size) {
+      throw new IndexOutOfBoundsException("Unknown category code: " + code);
+    }
+    return current.names[code];
+  }
+
+  /**
+   * @return number of registered categories (codes are 0 to size() - 1)
+   */
+  public static int size() {
+    return table.size;
+  }
+
+  /**
+   * Function to add a category to the dictionary
+   * @param category Category name: letters only, in any case
+   * @return the code of the category (its existing code if it is already registered)
+   */
+  public static synchronized int register(String category) {
+    int code = codeOf(category);
+    if (code != -1) {
+      return code;
+    }
+    if (!InputValidation.isValidCategoryName(category)) {
+      throw new IllegalArgumentException("The category is not valid.");
+    }
+    if (table.size == MAX_CATEGORIES) {
+      throw new IllegalStateException("Too many distinct categories.");
+    }
+    table = table.with(category.toLowerCase());
+    return table.size - 1;
+  }
+
+  /**
+   * Immutable open-addressing hash table of the category names.
+   * Names only hold ASCII letters, so a case-insensitive hash is computed by folding each letter to lower case.
+   */
+  private static final class Table {
+    static final Table EMPTY = new Table(new String[0], 0);
+
+    final String[] names;
+    final int size;
+    // Hash slot -> code + 1 (0 for an empty slot); twice as many slots as categories can exist
+    private final short[] slots;
+
+    private Table(String[] names, int size) {
+      this.names = names;
+      this.size = size;
+      this.slots = new short[MAX_CATEGORIES * 2];
+      for (int code = 0; code < size; code++) {
+        int slot = hash(names[code]) & (slots.length - 1);
+        while (slots[slot] != 0) {
+          slot = (slot + 1) & (slots.length - 1);
+        }
+        slots[slot] = (short) (code + 1);
+      }
+    }
+
+    Table with(String name) {
+      String[] newNames = Arrays.copyOf(names, size + 1);
+      newNames[size] = name;
+      return new Table(newNames, size + 1);
+    }
+
+    int find(String category) {
+      int hash = hash(category);
+      if (hash == -1) {
+        return -1;
+      }
+      int slot = hash & (slots.length - 1);
+      while (slots[slot] != 0) {
+        String name = names[slots[slot] - 1];
+        if (name.length() == category.length() && name.regionMatches(true, 0, category, 0, name.length())) {
+          return slots[slot] - 1;
+        }
+        slot = (slot + 1) & (slots.length - 1);
+      }
+      return -1;
+    }
+
+    /**
+     * @return the case-insensitive hash of the name, or -1 if it holds anything other than ASCII letters
+     */
+    private static int hash(String name) {
+      int hash = 0;
+      for (int i = 0; i < name.length(); i++) {
+        char c = name.charAt(i);
+        if ((c < 'a' || c > 'z') && (c < 'A' || c > 'Z')) {
+          return -1;
+        }
+        hash = 31 * hash + (c | 0x20);
+      }
+      // Spread the bits, and keep the hash non-negative
+      return (hash ^ (hash >>> 16)) & 0x7FFFFFFF;
+    }
+  }
+
+}
@@ -0,0 +1,89 @@
+package model;
+
+/**
+ * One storage chunk of a ColumnarTransactionStore, presented as columns of its own:
+ * rows 0 to size() - 1 of the chunk are rows getFirstRow() onwards of the store.
+ *
+ * A chunk reads its primitive arrays directly, without looking up the chunk of a row, so scans
+ * that handle one chunk at a time (see ParallelScan) share no lookup state with other threads.
+ * The arrays are shared with the store: a chunk is only valid while the rows of the store it
+ * was taken from do not change, e.g. for as long as the chunks of a snapshot are used.
+ */
+public final class ColumnChunk implements TransactionColumns {
+
+  private final int firstRow;
+  private final int size;
+  private final double[] amounts;
+  private final byte[] categoryCodes;
+  private final long[] timestamps;
+  private final long[] ids;
+
+  ColumnChunk(int firstRow, int size, double[] amounts, byte[] categoryCodes, long[] timestamps, long[] ids) {
+    this.firstRow = firstRow;
+    this.size = size;
+    this.amounts = amounts;
+    this.categoryCodes = categoryCodes;
+    this.timestamps = timestamps;
+    this.ids = ids;
+  }
+
+  /**
+   * @return the row index, in the whole store, of row 0 of the chunk
+   */
+  public int getFirstRow() {
+    return firstRow;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public double getAmount(int row) {
+    checkRow(row);
+    return amounts[row];
+  }
+
+  @Override
+  public int getCategoryCode(int row) {
+    checkRow(row);
+    return categoryCodes[row] & 0xFF;
+  }
+
+  @Override
+  public String getCategory(int row) {
+    return CategoryDictionary.nameOf(getCategoryCode(row));
+  }
+
+  @Override
+  public long getTimestamp(int row) {
+    checkRow(row);
+    return timestamps[row];
+  }
+
+  @Override
+  public long getId(int row) {
+    checkRow(row);
+    return ids[row];
+  }
+
+  @Override
+  public int findCategoryCode(String category) {
+    return CategoryDictionary.codeOf(category);
+  }
+
+  @Override
+  public Transaction getTransaction(int row) {
+    checkRow(row);
+    return new Transaction(amounts[row], categoryCodes[row] & 0xFF, timestamps[row], ids[row]);
+  }
+
+  private void checkRow(int row) {
+    // The arrays have room for a full chunk, so only the size tells which rows are valid
+    if (row < 0 || row >= size) {
+      throw new IndexOutOfBoundsException("Index: " + row + ", Size: " + size);
+    }
+  }
+
+}
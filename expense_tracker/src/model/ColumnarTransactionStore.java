@@ -0,0 +1,465 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A TransactionStore that keeps every field in its own primitive column:
+ * double amounts, byte category codes, long epoch-millis timestamps and long ids.
+ *
+ * The columns are split into chunks of at most CHUNK_SIZE rows, so growing the store only
+ * allocates a new chunk and never copies the rows that are already stored. Removing a row only
+ * moves the rows after it in its own chunk, so it takes the same time whatever the size of the
+ * store; neighbouring chunks that have become small are merged, so the chunks stay at least a
+ * quarter full on average. A directory of the first row of each chunk maps a row index to its
+ * chunk: with a shift while every chunk is full, and otherwise from the chunk of the row's block
+ * (a quarter of a chunk) in a few steps. Lookups write nothing, so any number of threads can read
+ * a snapshot at once.
+ *
+ * Every added row gets the next id of a counter, so ids are never reused and grow with the row index.
+ *
+ * Snapshots share the chunks with the store (copy-on-write): a chunk is only copied when
+ * a removal is about to change rows that a snapshot taken earlier can still see.
+ */
+public class ColumnarTransactionStore implements TransactionStore {
+
+  // Largest number of rows per chunk (a power of two, so that a row index splits into chunk and offset
+  // with a shift and a mask while every chunk is full)
+  static final int CHUNK_SHIFT = 12;
+  static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+  static final int CHUNK_MASK = CHUNK_SIZE - 1;
+  // Rows per block of the block directory: two neighbouring chunks hold more than half a chunk,
+  // so at most two chunks start within a block
+  private static final int BLOCK_SHIFT = CHUNK_SHIFT - 2;
+  private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+
+  private double[][] amounts;
+  // Codes of the CategoryDictionary, which has at most 256 of them, so they fit a byte column
+  private byte[][] categoryCodes;
+  private long[][] timestamps;
+  private long[][] ids;
+  // Index of the first row of each chunk
+  private int[] chunkStarts;
+  private int chunkCount;
+  private int size;
+  private long nextId;
+  // Whether every chunk but the last one is full, so that chunk = row >>> CHUNK_SHIFT
+  private boolean packed;
+  // Unless packed: chunk holding the first row of each block. Never changed in place below the
+  // size of the store, so it is shared with snapshots like the chunk directory
+  private int[] blockChunks;
+
+  // Copy-on-write bookkeeping: the epoch is advanced whenever a snapshot is taken, and a
+  // chunk (or the chunk directory) may only be changed in place if it belongs to the current epoch
+  private int epoch;
+  private int[] chunkEpochs;
+  private int directoryEpoch;
+  // Snapshots are read-only
+  private final boolean frozen;
+
+  public ColumnarTransactionStore() {
+    this(0);
+  }
+
+  /**
+   * Constructor for a store numbering its rows from the given id, e.g. after the rows of a snapshot file
+   * @param firstId Id of the first added row
+   */
+  ColumnarTransactionStore(long firstId) {
+    amounts = new double[4][];
+    categoryCodes = new byte[4][];
+    timestamps = new long[4][];
+    ids = new long[4][];
+    chunkStarts = new int[4];
+    chunkEpochs = new int[4];
+    nextId = firstId;
+    packed = true;
+    frozen = false;
+  }
+
+  /**
+   * Constructor for a read-only snapshot sharing the chunks of the given store
+   * @param source Store to take the snapshot of
+   */
+  private ColumnarTransactionStore(ColumnarTransactionStore source) {
+    amounts = source.amounts;
+    categoryCodes = source.categoryCodes;
+    timestamps = source.timestamps;
+    ids = source.ids;
+    chunkStarts = source.chunkStarts;
+    chunkCount = source.chunkCount;
+    size = source.size;
+    nextId = source.nextId;
+    packed = source.packed;
+    blockChunks = source.blockChunks;
+    frozen = true;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public double getAmount(int row) {
+    int chunk = chunkOf(row);
+    return amounts[chunk][row - chunkStarts[chunk]];
+  }
+
+  @Override
+  public int getCategoryCode(int row) {
+    int chunk = chunkOf(row);
+    return categoryCodes[chunk][row - chunkStarts[chunk]] & 0xFF;
+  }
+
+  @Override
+  public String getCategory(int row) {
+    return CategoryDictionary.nameOf(getCategoryCode(row));
+  }
+
+  @Override
+  public long getTimestamp(int row) {
+    int chunk = chunkOf(row);
+    return timestamps[chunk][row - chunkStarts[chunk]];
+  }
+
+  @Override
+  public long getId(int row) {
+    int chunk = chunkOf(row);
+    return ids[chunk][row - chunkStarts[chunk]];
+  }
+
+  @Override
+  public int rowOf(long id) {
+    if (size == 0 || id < ids[0][0]) {
+      return -1;
+    }
+    // The last chunk starting with an id not above the given one, then the id within that chunk
+    int low = 0;
+    int high = chunkCount - 1;
+    while (low < high) {
+      int middle = (low + high + 1) >>> 1;
+      if (ids[middle][0] <= id) {
+        low = middle;
+      } else {
+        high = middle - 1;
+      }
+    }
+    int offset = Arrays.binarySearch(ids[low], 0, chunkEnd(low) - chunkStarts[low], id);
+    return offset < 0 ? -1 : chunkStarts[low] + offset;
+  }
+
+  @Override
+  public long getNextId() {
+    return nextId;
+  }
+
+  @Override
+  public int findCategoryCode(String category) {
+    return CategoryDictionary.codeOf(category);
+  }
+
+  @Override
+  public Transaction getTransaction(int row) {
+    int chunk = chunkOf(row);
+    int offset = row - chunkStarts[chunk];
+    return new Transaction(amounts[chunk][offset], categoryCodes[chunk][offset] & 0xFF, timestamps[chunk][offset], ids[chunk][offset]);
+  }
+
+  @Override
+  public void add(Transaction t) {
+    checkWritable();
+    // Same guarantee as the model: every stored row comes from a non-null transaction
+    if (t == null) {
+      throw new IllegalArgumentException("The new transaction must be non-null.");
+    }
+    append(t, nextId++);
+  }
+
+  /**
+   * Function to add a row keeping the id it was given earlier, e.g. when copying the rows of another store
+   * @param t Transaction to be added
+   * @param id Id of the row, greater than the id of every row in the store
+   */
+  void add(Transaction t, long id) {
+    checkWritable();
+    if (t == null) {
+      throw new IllegalArgumentException("The new transaction must be non-null.");
+    }
+    if (size > 0 && id <= getId(size - 1)) {
+      throw new IllegalArgumentException("The ids must be ascending.");
+    }
+    append(t, id);
+    nextId = Math.max(nextId, id + 1);
+  }
+
+  private void append(Transaction t, long id) {
+    int chunk = chunkCount - 1;
+    if (chunk < 0 || size - chunkStarts[chunk] == CHUNK_SIZE) {
+      chunk = addChunk();
+    }
+    // Snapshots never read past their own size, so appending a row (or a new chunk)
+    // does not have to copy anything even while a snapshot shares the storage
+    if (!packed && (size & BLOCK_MASK) == 0) {
+      addBlock(chunk);
+    }
+    int offset = size - chunkStarts[chunk];
+    amounts[chunk][offset] = t.getAmount();
+    categoryCodes[chunk][offset] = (byte) t.getCategoryCode();
+    timestamps[chunk][offset] = t.getEpochMillis();
+    ids[chunk][offset] = id;
+    size++;
+  }
+
+  /**
+   * Function to start a new, empty chunk after the last one
+   * @return index of the new chunk
+   */
+  private int addChunk() {
+    if (chunkCount == amounts.length) {
+      int newLength = amounts.length * 2;
+      amounts = Arrays.copyOf(amounts, newLength);
+      categoryCodes = Arrays.copyOf(categoryCodes, newLength);
+      timestamps = Arrays.copyOf(timestamps, newLength);
+      ids = Arrays.copyOf(ids, newLength);
+      chunkStarts = Arrays.copyOf(chunkStarts, newLength);
+      chunkEpochs = Arrays.copyOf(chunkEpochs, newLength);
+      directoryEpoch = epoch;
+    }
+    int chunk = chunkCount++;
+    // Always a new chunk: a chunk dropped from the directory may still be used by a snapshot
+    amounts[chunk] = new double[CHUNK_SIZE];
+    categoryCodes[chunk] = new byte[CHUNK_SIZE];
+    timestamps[chunk] = new long[CHUNK_SIZE];
+    ids[chunk] = new long[CHUNK_SIZE];
+    chunkStarts[chunk] = size;
+    chunkEpochs[chunk] = epoch;
+    return chunk;
+  }
+
+  /**
+   * Function to record the chunk of the first row of a new block, when that row is about to be appended
+   * @param chunk Index of the chunk the row goes into
+   */
+  private void addBlock(int chunk) {
+    int block = size >>> BLOCK_SHIFT;
+    if (block == blockChunks.length) {
+      blockChunks = Arrays.copyOf(blockChunks, Math.max(4, blockChunks.length * 2));
+    }
+    blockChunks[block] = chunk;
+  }
+
+  @Override
+  public void remove(int row) {
+    removeAll(new int[] {row});
+  }
+
+  @Override
+  public void removeAll(int[] rows) {
+    checkWritable();
+    if (rows.length == 0) {
+      return;
+    }
+    checkRow(rows[0]);
+    checkRow(rows[rows.length - 1]);
+    ensureDirectoryWritable();
+    int[] chunkSizes = new int[chunkCount];
+    for (int chunk = 0; chunk < chunkCount; chunk++) {
+      chunkSizes[chunk] = chunkEnd(chunk) - chunkStarts[chunk];
+    }
+
+    // Drop the rows from their chunks: only the rows after a removed row in the same chunk move
+    int next = 0;
+    while (next < rows.length) {
+      int chunk = chunkOf(rows[next]);
+      int start = chunkStarts[chunk];
+      int end = start + chunkSizes[chunk];
+      ensureChunkWritable(chunk);
+      int target = rows[next] - start;
+      int offset = target;
+      while (offset < end - start) {
+        if (next < rows.length && rows[next] == start + offset) {
+          next++;
+          offset++;
+          continue;
+        }
+        // Move the kept rows up to the next removed row of the chunk at once
+        int runEnd = next < rows.length && rows[next] < end ? rows[next] - start : end - start;
+        moveRows(chunk, offset, chunk, target, runEnd - offset);
+        target += runEnd - offset;
+        offset = runEnd;
+      }
+      chunkSizes[chunk] = target;
+    }
+
+    // Rebuild the directory: drop the empty chunks, and merge each chunk into the one before
+    // when both fit in half a chunk (so that two neighbours always hold more than half a chunk)
+    int kept = 0;
+    for (int chunk = 0; chunk < chunkCount; chunk++) {
+      if (chunkSizes[chunk] == 0) {
+        continue;
+      }
+      if (kept > 0 && chunkSizes[kept - 1] + chunkSizes[chunk] <= CHUNK_SIZE / 2) {
+        ensureChunkWritable(kept - 1);
+        moveRows(chunk, 0, kept - 1, chunkSizes[kept - 1], chunkSizes[chunk]);
+        chunkSizes[kept - 1] += chunkSizes[chunk];
+        continue;
+      }
+      amounts[kept] = amounts[chunk];
+      categoryCodes[kept] = categoryCodes[chunk];
+      timestamps[kept] = timestamps[chunk];
+      ids[kept] = ids[chunk];
+      chunkEpochs[kept] = chunkEpochs[chunk];
+      chunkSizes[kept] = chunkSizes[chunk];
+      kept++;
+    }
+    for (int chunk = kept; chunk < chunkCount; chunk++) {
+      amounts[chunk] = null;
+      categoryCodes[chunk] = null;
+      timestamps[chunk] = null;
+      ids[chunk] = null;
+    }
+    chunkCount = kept;
+    size = 0;
+    packed = true;
+    for (int chunk = 0; chunk < chunkCount; chunk++) {
+      chunkStarts[chunk] = size;
+      size += chunkSizes[chunk];
+      packed &= chunk == chunkCount - 1 || chunkSizes[chunk] == CHUNK_SIZE;
+    }
+    blockChunks = packed ? null : buildBlocks();
+  }
+
+  /**
+   * Function to build a new block directory for the current chunks (a new array: snapshots may use the old one)
+   * @return the chunk of the first row of each block
+   */
+  private int[] buildBlocks() {
+    int[] blocks = new int[Math.max(4, (size + BLOCK_MASK) >>> BLOCK_SHIFT)];
+    int chunk = 0;
+    for (int block = 0; block << BLOCK_SHIFT < size; block++) {
+      int row = block << BLOCK_SHIFT;
+      while (chunkEnd(chunk) <= row) {
+        chunk++;
+      }
+      blocks[block] = chunk;
+    }
+    return blocks;
+  }
+
+  @Override
+  public int indexOf(Transaction t) {
+    if (t == null) {
+      return -1;
+    }
+    int code = t.getCategoryCode();
+    for (int chunk = 0; chunk < chunkCount; chunk++) {
+      int chunkSize = chunkEnd(chunk) - chunkStarts[chunk];
+      for (int offset = 0; offset < chunkSize; offset++) {
+        if ((categoryCodes[chunk][offset] & 0xFF) == code
+            && timestamps[chunk][offset] == t.getEpochMillis()
+            && Double.compare(amounts[chunk][offset], t.getAmount()) == 0) {
+          return chunkStarts[chunk] + offset;
+        }
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public List<ColumnChunk> chunks() {
+    List<ColumnChunk> chunks = new ArrayList<>(chunkCount);
+    for (int chunk = 0; chunk < chunkCount; chunk++) {
+      chunks.add(new ColumnChunk(chunkStarts[chunk], chunkEnd(chunk) - chunkStarts[chunk],
+          amounts[chunk], categoryCodes[chunk], timestamps[chunk], ids[chunk]));
+    }
+    return chunks;
+  }
+
+  @Override
+  public TransactionColumns snapshot() {
+    if (frozen) {
+      return this;
+    }
+    // Everything allocated so far is now shared with the snapshot
+    epoch++;
+    return new ColumnarTransactionStore(this);
+  }
+
+  /**
+   * Function to find the chunk holding a row
+   * @param row Row index
+   * @return index of the chunk
+   */
+  private int chunkOf(int row) {
+    checkRow(row);
+    if (packed) {
+      return row >>> CHUNK_SHIFT;
+    }
+    // The chunk of the block's first row, or one of the (at most two) chunks starting after it in the block
+    int chunk = blockChunks[row >>> BLOCK_SHIFT];
+    while (chunk + 1 < chunkCount && chunkStarts[chunk + 1] <= row) {
+      chunk++;
+    }
+    return chunk;
+  }
+
+  /**
+   * @return the index after the last row of the chunk
+   */
+  private int chunkEnd(int chunk) {
+    return chunk + 1 < chunkCount ? chunkStarts[chunk + 1] : size;
+  }
+
+  /**
+   * Function to copy consecutive rows within or between chunks, in every column
+   */
+  private void moveRows(int fromChunk, int fromOffset, int toChunk, int toOffset, int length) {
+    System.arraycopy(amounts[fromChunk], fromOffset, amounts[toChunk], toOffset, length);
+    System.arraycopy(categoryCodes[fromChunk], fromOffset, categoryCodes[toChunk], toOffset, length);
+    System.arraycopy(timestamps[fromChunk], fromOffset, timestamps[toChunk], toOffset, length);
+    System.arraycopy(ids[fromChunk], fromOffset, ids[toChunk], toOffset, length);
+  }
+
+  /**
+   * Function to copy the chunk directory if it is still shared with a snapshot
+   */
+  private void ensureDirectoryWritable() {
+    if (directoryEpoch != epoch) {
+      amounts = amounts.clone();
+      categoryCodes = categoryCodes.clone();
+      timestamps = timestamps.clone();
+      ids = ids.clone();
+      chunkStarts = chunkStarts.clone();
+      directoryEpoch = epoch;
+    }
+  }
+
+  /**
+   * Function to copy a chunk if it is still shared with a snapshot
+   * @param chunk Index of the chunk about to be changed
+   */
+  private void ensureChunkWritable(int chunk) {
+    if (chunkEpochs[chunk] != epoch) {
+      amounts[chunk] = amounts[chunk].clone();
+      categoryCodes[chunk] = categoryCodes[chunk].clone();
+      timestamps[chunk] = timestamps[chunk].clone();
+      ids[chunk] = ids[chunk].clone();
+      chunkEpochs[chunk] = epoch;
+    }
+  }
+
+  private void checkWritable() {
+    if (frozen) {
+      throw new UnsupportedOperationException("A snapshot cannot be modified.");
+    }
+  }
+
+  private void checkRow(int row) {
+    if (row < 0 || row >= size) {
+      throw new IndexOutOfBoundsException("Index: " + row + ", Size: " + size);
+    }
+  }
+
+}
@@ -0,0 +1,41 @@
+package model;
+
+/**
+ * A running sum of doubles using compensated (Kahan-Babuska/Neumaier) summation.
+ *
+ * The rounding error of every addition is carried along separately, so long sequences
+ * of additions and subtractions do not drift away from the exact total.
+ */
+public class CompensatedSum {
+
+  private double sum;
+  private double compensation;
+
+  public void add(double value) {
+    double t = sum + value;
+    if (Math.abs(sum) >= Math.abs(value)) {
+      compensation += (sum - t) + value;
+    } else {
+      compensation += (value - t) + sum;
+    }
+    sum = t;
+  }
+
+  /**
+   * Function to add another running sum, keeping the rounding errors of both
+   * @param other Sum to be added (not changed)
+   */
+  public void add(CompensatedSum other) {
+    add(other.sum);
+    add(other.compensation);
+  }
+
+  public void subtract(double value) {
+    add(-value);
+  }
+
+  public double get() {
+    return sum + compensation;
+  }
+
+}
@@ -1,16 +1,78 @@
 package model;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+import metrics.Metrics;
+
+/**
+ * The transactions of the expense tracker. The model is thread-safe, so any number of threads
+ * (importers, the UI, ...) may add and remove transactions at the same time.
+ *
+ * Changes are made under a write lock. Single adds are first queued, and the thread that gets the lock
+ * applies every queued add in one go, so under contention most writers never wait for the lock themselves.
+ * Readers work on immutable snapshots, whose rows are read without any lock; only lookups in the
+ * indexes and aggregates of the latest version briefly share the lock with the writers.
+ *
+ * Every change is published to the registered TransactionListeners as a typed delta (rows inserted
+ * at the end, rows deleted by id), in batches delivered after the lock is released.
+ */
 public class ExpenseTrackerModel {
 
+  // Largest number of queued adds applied by one thread in one go, before handing the rest over
+  private static final int MAX_ADD_BATCH = 1024;
+  // Version of the aggregates view that always describes the latest version
+  private static final long LATEST = -1;
+
   //encapsulation - data integrity
-  private List<Transaction> transactions;
+  private TransactionStore store;
+  // Held by writers (and, briefly, to take a snapshot); its read lock by lookups in the indexes and aggregates
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  // Adds waiting for a thread holding the write lock to apply them
+  private final Queue<PendingAdd> pendingAdds = new ConcurrentLinkedQueue<>();
+  // Incremented by every add and remove, so readers can tell whether a snapshot is still current
+  private volatile long version;
+  private volatile TransactionSnapshot snapshot;
+  // Secondary indexes, maintained on every add and remove once built (null until first needed,
+  // so that opening a large store does not have to read every row)
+  private volatile TransactionIndex index;
+  // Running aggregates (count, total, ...), maintained on every add and remove once built
+  private volatile TransactionAggregates aggregates;
+  // Thread-safe view of the running aggregates, returned by getAggregates()
+  private volatile TransactionAggregates latestAggregates;
+
+  private final List<TransactionListener> listeners = new CopyOnWriteArrayList<>();
+  // Changes not delivered to the listeners yet, in order (guarded by the write lock; only recorded while there are listeners)
+  private final List<TransactionChange> recordedChanges = new ArrayList<>();
+  private volatile boolean changesRecorded;
+  // Held while changes are delivered, so that the listeners get them one batch at a time
+  private final ReentrantLock dispatchLock = new ReentrantLock();
 
   public ExpenseTrackerModel() {
-    transactions = new ArrayList<>(); 
+    this(new ColumnarTransactionStore());
+  }
+
+  /**
+   * Constructor to create a model on top of a specific storage engine
+   * @param store Storage engine holding the transactions
+   */
+  public ExpenseTrackerModel(TransactionStore store) {
+    if (store == null) {
+      throw new IllegalArgumentException("The transaction store must be non-null.");
+    }
+    this.store = store;
   }
 
   public void addTransaction(Transaction t) {
@@ -18,24 +80,679 @@ public class ExpenseTrackerModel {
     if (t == null) {
       throw new IllegalArgumentException("The new transaction must be non-null.");
     }
-    transactions.add(t);
+    long start = Metrics.start();
+    // Without contention the add is applied right away
+    if (pendingAdds.isEmpty() && lock.writeLock().tryLock()) {
+      try {
+        int row = appendRow(t);
+        recordInserted(row, row);
+        version++;
+      } finally {
+        writeUnlock();
+      }
+      Metrics.ROWS_ADDED.increment();
+      Metrics.MODEL_ADD.stop(start);
+      return;
+    }
+    // Otherwise it is queued, for the thread holding the lock to apply
+    PendingAdd add = new PendingAdd(t);
+    pendingAdds.add(add);
+    applyPendingAdds();
+    boolean interrupted = false;
+    while (!add.done) {
+      // Woken up once the add is applied, or to apply the queued adds itself
+      LockSupport.park(this);
+      interrupted |= Thread.interrupted();
+      applyPendingAdds();
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    Metrics.MODEL_ADD.stop(start);
+    if (add.failure != null) {
+      throw add.failure;
+    }
+    Metrics.ROWS_ADDED.increment();
+  }
+
+  /**
+   * Function to apply the queued adds, if the write lock is free. Otherwise the thread holding the lock
+   * wakes up the thread of the first queued add when it releases the lock.
+   */
+  private void applyPendingAdds() {
+    if (pendingAdds.isEmpty() || !lock.writeLock().tryLock()) {
+      return;
+    }
+    List<PendingAdd> applied = new ArrayList<>();
+    try {
+      PendingAdd add;
+      while (applied.size() < MAX_ADD_BATCH && (add = pendingAdds.poll()) != null) {
+        try {
+          int row = appendRow(add.transaction);
+          recordInserted(row, row);
+        } catch (RuntimeException e) {
+          add.failure = e;
+        }
+        applied.add(add);
+      }
+      // One new version for the whole batch
+      version++;
+    } finally {
+      lock.writeLock().unlock();
+    }
+    Thread current = Thread.currentThread();
+    for (PendingAdd add : applied) {
+      add.done = true;
+      if (add.owner != current) {
+        LockSupport.unpark(add.owner);
+      }
+    }
+    wakeNextAdd();
+    dispatchChanges();
+  }
+
+  /**
+   * Function to wake up the thread of the first queued add, so that it applies the queue
+   */
+  private void wakeNextAdd() {
+    PendingAdd next = pendingAdds.peek();
+    if (next != null) {
+      LockSupport.unpark(next.owner);
+    }
+  }
+
+  private void writeUnlock() {
+    lock.writeLock().unlock();
+    wakeNextAdd();
+    dispatchChanges();
+  }
+
+  private void readUnlock() {
+    lock.readLock().unlock();
+    wakeNextAdd();
+  }
+
+  /**
+   * Function to append a row to the store, the indexes and the aggregates (with the write lock held)
+   * @param t Transaction to be added
+   * @return index of the new row
+   */
+  private int appendRow(Transaction t) {
+    int row = store.size();
+    store.add(t);
+    indexRow(row);
+    return row;
+  }
+
+  /**
+   * Function to add a row just appended to the store to the indexes and the aggregates (with the write lock held)
+   */
+  private void indexRow(int row) {
+    if (index != null) {
+      index.add(store.getId(row), store.getAmount(row), store.getCategoryCode(row), store.getTimestamp(row));
+    }
+    if (aggregates != null) {
+      aggregates.add(store.getAmount(row), store.getCategoryCode(row), store.getTimestamp(row));
+    }
+  }
+
+  /**
+   * Function to append several transactions as one change: either all of them are added or none is
+   * @param transactions Transactions to be added, in order
+   */
+  public void addTransactions(Collection<Transaction> transactions) {
+    if (transactions == null || transactions.contains(null)) {
+      throw new IllegalArgumentException("The new transactions must be non-null.");
+    }
+    lock.writeLock().lock();
+    try {
+      int firstRow = store.size();
+      try {
+        // The store gets the whole batch at once, so a journal can write it as a single record
+        try {
+          store.addAll(transactions);
+        } finally {
+          // Rows the store took before a failure are indexed too, so that taking them back keeps the indexes right
+          for (int row = firstRow; row < store.size(); row++) {
+            indexRow(row);
+          }
+        }
+      } catch (RuntimeException e) {
+        // Take back the rows added so far (removing the last rows moves nothing)
+        int[] added = new int[store.size() - firstRow];
+        Arrays.setAll(added, i -> firstRow + i);
+        // Nothing was reported for them
+        removeRows(added);
+        version++;
+        throw e;
+      }
+      if (store.size() > firstRow) {
+        recordInserted(firstRow, store.size() - 1);
+      }
+      Metrics.ROWS_ADDED.add(store.size() - firstRow);
+      version++;
+    } finally {
+      writeUnlock();
+    }
   }
 
   public void removeTransaction(Transaction t) {
-    transactions.remove(t);
+    lock.writeLock().lock();
+    try {
+      // A transaction read from the model is found by its id; any other one by its values
+      int index = t != null && t.getId() != Transaction.NO_ID ? store.rowOf(t.getId()) : store.indexOf(t);
+      if (index != -1) {
+        removeTransaction(index);
+      }
+    } finally {
+      writeUnlock();
+    }
   }
-  
+
   /**
    * Function to delete the transaction based on the index
    * @param index Specifies the index where the transaction to be removed is present
    */
   public void removeTransaction(int index) {
-    transactions.remove(index);
+    long start = Metrics.start();
+    lock.writeLock().lock();
+    try {
+      record(removeRows(new int[] {index}));
+      version++;
+    } finally {
+      writeUnlock();
+    }
+    Metrics.ROWS_REMOVED.increment();
+    Metrics.MODEL_REMOVE.stop(start);
+  }
+
+  /**
+   * Function to delete a transaction by its stable id, whatever its current position
+   * @param id Id of the transaction, as returned by Transaction.getId()
+   * @return false if no transaction has the id (e.g. it was removed already)
+   */
+  public boolean removeTransactionById(long id) {
+    lock.writeLock().lock();
+    try {
+      int index = store.rowOf(id);
+      if (index == -1) {
+        return false;
+      }
+      removeTransaction(index);
+      return true;
+    } finally {
+      writeUnlock();
+    }
+  }
+
+  /**
+   * Function to delete several transactions by their ids as one change: either all of them are removed or none is
+   * @param ids Ids of the transactions, in any order (duplicates are ignored)
+   * @return false (and nothing is removed) if any id does not name a transaction
+   */
+  public boolean removeTransactionsById(long[] ids) {
+    if (ids == null) {
+      throw new IllegalArgumentException("The ids must be non-null.");
+    }
+    lock.writeLock().lock();
+    try {
+      int[] rows = new int[ids.length];
+      for (int i = 0; i < ids.length; i++) {
+        rows[i] = store.rowOf(ids[i]);
+        if (rows[i] == -1) {
+          return false;
+        }
+      }
+      removeTransactions(rows);
+      return true;
+    } finally {
+      writeUnlock();
+    }
+  }
+
+  /**
+   * Function to delete several transactions as one change: either all of them are removed or none is
+   * @param indexes Indexes of the transactions to be removed, in any order (duplicates are ignored)
+   */
+  public void removeTransactions(int[] indexes) {
+    if (indexes == null) {
+      throw new IllegalArgumentException("The indexes must be non-null.");
+    }
+    int[] rows = Arrays.stream(indexes).sorted().distinct().toArray();
+    if (rows.length == 0) {
+      return;
+    }
+    long start = Metrics.start();
+    lock.writeLock().lock();
+    try {
+      if (rows[0] < 0 || rows[rows.length - 1] >= store.size()) {
+        throw new IndexOutOfBoundsException("Index: " + (rows[0] < 0 ? rows[0] : rows[rows.length - 1]) + ", Size: " + store.size());
+      }
+      record(removeRows(rows));
+      version++;
+    } finally {
+      writeUnlock();
+    }
+    Metrics.ROWS_REMOVED.add(rows.length);
+    Metrics.MODEL_REMOVE.stop(start);
+  }
+
+  /**
+   * Function to remove rows from the store, the indexes and the aggregates (with the write lock held)
+   * @param rows Row indexes, distinct and in ascending order
+   * @return the deletion, to be reported to the listeners
+   */
+  private TransactionChange removeRows(int[] rows) {
+    long[] ids = new long[rows.length];
+    double[] amounts = new double[rows.length];
+    int[] categoryCodes = new int[rows.length];
+    long[] timestamps = new long[rows.length];
+    for (int i = 0; i < rows.length; i++) {
+      ids[i] = store.getId(rows[i]);
+      amounts[i] = store.getAmount(rows[i]);
+      categoryCodes[i] = store.getCategoryCode(rows[i]);
+      timestamps[i] = store.getTimestamp(rows[i]);
+    }
+    store.removeAll(rows);
+    for (int i = 0; i < rows.length; i++) {
+      if (index != null) {
+        index.remove(ids[i], amounts[i], categoryCodes[i], timestamps[i]);
+      }
+      if (aggregates != null) {
+        aggregates.remove(amounts[i], categoryCodes[i], timestamps[i]);
+      }
+    }
+    return TransactionChange.deleted(ids, rows, amounts, categoryCodes);
+  }
+
+  /**
+   * Function to register a listener for the changes made from now on
+   * @param listener Listener to be called after every change
+   */
+  public void addTransactionListener(TransactionListener listener) {
+    if (listener == null) {
+      throw new IllegalArgumentException("The listener must be non-null.");
+    }
+    listeners.add(listener);
+  }
+
+  /**
+   * Function to stop calling a listener
+   * @param listener Listener registered with addTransactionListener
+   */
+  public void removeTransactionListener(TransactionListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Function to report appended rows to the listeners (with the write lock held)
+   * @param firstRow Index of the first new row
+   * @param lastRow Index of the last new row
+   */
+  private void recordInserted(int firstRow, int lastRow) {
+    if (!listeners.isEmpty()) {
+      record(TransactionChange.inserted(firstRow, lastRow, store.getId(firstRow), store.getId(lastRow)));
+    }
+  }
+
+  /**
+   * Function to queue a change for the listeners (with the write lock held)
+   * @param change Change just made
+   */
+  private void record(TransactionChange change) {
+    if (listeners.isEmpty()) {
+      return;
+    }
+    int last = recordedChanges.size() - 1;
+    TransactionChange merged = last >= 0 ? recordedChanges.get(last).mergeInserted(change) : null;
+    if (merged != null) {
+      recordedChanges.set(last, merged);
+    } else {
+      recordedChanges.add(change);
+    }
+    changesRecorded = true;
+  }
+
+  /**
+   * Function to deliver the recorded changes to the listeners, once the write lock is released.
+   * If another thread is delivering changes already, it delivers these as well.
+   */
+  private void dispatchChanges() {
+    // A listener changing the model gets its own changes in the next batch
+    if (!changesRecorded || lock.isWriteLockedByCurrentThread() || dispatchLock.isHeldByCurrentThread()) {
+      return;
+    }
+    while (changesRecorded && dispatchLock.tryLock()) {
+      try {
+        TransactionChangeEvent event;
+        lock.writeLock().lock();
+        try {
+          if (recordedChanges.isEmpty()) {
+            continue;
+          }
+          event = new TransactionChangeEvent(this, new ArrayList<>(recordedChanges), currentSnapshot());
+          recordedChanges.clear();
+          changesRecorded = false;
+        } finally {
+          lock.writeLock().unlock();
+          wakeNextAdd();
+        }
+        for (TransactionListener listener : listeners) {
+          try {
+            listener.transactionsChanged(event);
+          } catch (RuntimeException e) {
+            // The change is made whatever a listener does; its failure is reported like that of a thread
+            Thread current = Thread.currentThread();
+            current.getUncaughtExceptionHandler().uncaughtException(current, e);
+          }
+        }
+      } finally {
+        dispatchLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Function to register a category beyond the default ones, in the CategoryDictionary shared by every model
+   * @param category Name of the new category (letters only)
+   * @return the code of the category
+   */
+  public int addCategory(String category) {
+    return CategoryDictionary.register(category);
   }
 
   public List<Transaction> getTransactions() {
-    //encapsulation - data integrity
-    return Collections.unmodifiableList(new ArrayList<>(transactions));
+    // The snapshot is immutable, so it can be handed out without copying the transactions
+    return getSnapshot().asList();
+  }
+
+  /**
+   * Function to get a stable, read-only view of the current transactions.
+   * The same snapshot is returned until the model is modified; it never changes afterwards,
+   * and can be read by any thread without holding up the writers.
+   * @return snapshot of the transactions at the current version of the model
+   */
+  public TransactionSnapshot getSnapshot() {
+    TransactionSnapshot current = snapshot;
+    if (current != null && current.getVersion() == version) {
+      return current;
+    }
+    // Taking a snapshot only marks the storage as shared, so the lock is held for a moment
+    lock.writeLock().lock();
+    try {
+      return currentSnapshot();
+    } finally {
+      writeUnlock();
+    }
+  }
+
+  /**
+   * Function to get the snapshot of the current version (with the write lock held)
+   */
+  private TransactionSnapshot currentSnapshot() {
+    if (snapshot == null || snapshot.getVersion() != version) {
+      snapshot = new TransactionSnapshot(store.snapshot(), version, this);
+    }
+    return snapshot;
+  }
+
+  /**
+   * Function to get the secondary indexes as seen by a snapshot, building them on first use.
+   * The snapshot keeps the view, so the indexes of its own rows are built at most once.
+   * @param snapshot Snapshot taken from this model
+   * @return the indexes, or null if the model has changed since the snapshot was taken
+   */
+  TransactionIndex getIndex(TransactionSnapshot snapshot) {
+    if (snapshot.getVersion() != version) {
+      return null;
+    }
+    buildIndex();
+    return new IndexView(snapshot);
+  }
+
+  /**
+   * Function to get the running aggregates as seen by a snapshot, building them on first use
+   * @param snapshot Snapshot taken from this model
+   * @return the aggregates, or null if the model has changed since the snapshot was taken
+   */
+  TransactionAggregates getAggregates(TransactionSnapshot snapshot) {
+    if (snapshot.getVersion() != version) {
+      return null;
+    }
+    buildAggregates();
+    return new AggregatesView(snapshot);
+  }
+
+  /**
+   * Function to read the running totals of the current transactions without scanning them
+   * @return the running aggregates (they keep changing with the model)
+   */
+  public TransactionAggregates getAggregates() {
+    if (latestAggregates == null) {
+      buildAggregates();
+      latestAggregates = new AggregatesView(null);
+    }
+    return latestAggregates;
+  }
+
+  private void buildIndex() {
+    if (index != null) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      if (index == null) {
+        TransactionIndex built = new TransactionIndex(store);
+        built.rebuild();
+        index = built;
+      }
+    } finally {
+      writeUnlock();
+    }
+  }
+
+  private void buildAggregates() {
+    if (aggregates != null) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      if (aggregates == null) {
+        TransactionAggregates built = new TransactionAggregates();
+        built.rebuild(store);
+        aggregates = built;
+      }
+    } finally {
+      writeUnlock();
+    }
+  }
+
+  /**
+   * @return the current version of the model, incremented by every add and remove
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * An add waiting in the queue, until a thread holding the write lock applies it
+   */
+  private static final class PendingAdd {
+    final Transaction transaction;
+    final Thread owner = Thread.currentThread();
+    // Set before done
+    RuntimeException failure;
+    volatile boolean done;
+
+    PendingAdd(Transaction transaction) {
+      this.transaction = transaction;
+    }
+  }
+
+  /**
+   * The indexes as seen by a snapshot. While the snapshot is current, lookups are answered by the
+   * indexes of the model, under the read lock; once the model has changed, by indexes of the snapshot's
+   * own rows, built on first use.
+   */
+  private final class IndexView extends TransactionIndex {
+    private final long viewVersion;
+    // Whether the indexes of the snapshot's rows have been built (guarded by this)
+    private boolean built;
+
+    IndexView(TransactionSnapshot snapshot) {
+      super(snapshot.asColumns());
+      this.viewVersion = snapshot.getVersion();
+    }
+
+    private <T> T lookup(Function<TransactionIndex, T> latest, Supplier<T> own) {
+      lock.readLock().lock();
+      try {
+        if (version == viewVersion) {
+          return latest.apply(index);
+        }
+      } finally {
+        readUnlock();
+      }
+      synchronized (this) {
+        if (!built) {
+          rebuild();
+          built = true;
+        }
+        return own.get();
+      }
+    }
+
+    @Override
+    public BitSet rowsWithCategory(int categoryCode) {
+      return lookup(latest -> latest.rowsWithCategory(categoryCode), () -> super.rowsWithCategory(categoryCode));
+    }
+
+    @Override
+    public BitSet rowsWithAmount(double amount) {
+      return lookup(latest -> latest.rowsWithAmount(amount), () -> super.rowsWithAmount(amount));
+    }
+
+    @Override
+    public BitSet rowsWithAmountBetween(double min, double max) {
+      return lookup(latest -> latest.rowsWithAmountBetween(min, max), () -> super.rowsWithAmountBetween(min, max));
+    }
+
+    @Override
+    public BitSet rowsWithTimestampBetween(long from, long to) {
+      return lookup(latest -> latest.rowsWithTimestampBetween(from, to), () -> super.rowsWithTimestampBetween(from, to));
+    }
+
+    @Override
+    public boolean isTimeOrdered() {
+      return lookup(TransactionIndex::isTimeOrdered, super::isTimeOrdered);
+    }
+
+    @Override
+    public int countWithCategory(int categoryCode) {
+      return lookup(latest -> latest.countWithCategory(categoryCode), () -> super.countWithCategory(categoryCode));
+    }
+
+    @Override
+    public int countWithAmount(double amount) {
+      return lookup(latest -> latest.countWithAmount(amount), () -> super.countWithAmount(amount));
+    }
+
+    @Override
+    public double minAmount() {
+      return lookup(TransactionIndex::minAmount, super::minAmount);
+    }
+
+    @Override
+    public double maxAmount() {
+      return lookup(TransactionIndex::maxAmount, super::maxAmount);
+    }
+
+    @Override
+    public int size() {
+      return lookup(TransactionIndex::size, super::size);
+    }
+  }
+
+  /**
+   * The running aggregates as seen by a snapshot (or always the latest ones), checked the same way as IndexView
+   */
+  private final class AggregatesView extends TransactionAggregates {
+    // Null for the view of the latest aggregates
+    private final TransactionColumns columns;
+    private final long viewVersion;
+    // Whether the aggregates of the snapshot's rows have been computed (guarded by this)
+    private boolean built;
+
+    /**
+     * @param snapshot Snapshot the aggregates are read for, or null for the latest aggregates
+     */
+    AggregatesView(TransactionSnapshot snapshot) {
+      this.columns = snapshot == null ? null : snapshot.asColumns();
+      this.viewVersion = snapshot == null ? LATEST : snapshot.getVersion();
+    }
+
+    private <T> T lookup(Function<TransactionAggregates, T> latest, Supplier<T> own) {
+      lock.readLock().lock();
+      try {
+        if (viewVersion == LATEST || version == viewVersion) {
+          return latest.apply(aggregates);
+        }
+      } finally {
+        readUnlock();
+      }
+      synchronized (this) {
+        if (!built) {
+          rebuild(columns);
+          built = true;
+        }
+        return own.get();
+      }
+    }
+
+    @Override
+    public int getCount() {
+      return lookup(TransactionAggregates::getCount, super::getCount);
+    }
+
+    @Override
+    public double getTotal() {
+      return lookup(TransactionAggregates::getTotal, super::getTotal);
+    }
+
+    @Override
+    public double getMinAmount() {
+      return lookup(TransactionAggregates::getMinAmount, super::getMinAmount);
+    }
+
+    @Override
+    public double getMaxAmount() {
+      return lookup(TransactionAggregates::getMaxAmount, super::getMaxAmount);
+    }
+
+    @Override
+    public double getCategoryTotal(int categoryCode) {
+      return lookup(latest -> latest.getCategoryTotal(categoryCode), () -> super.getCategoryTotal(categoryCode));
+    }
+
+    @Override
+    public int getCategoryCount(int categoryCode) {
+      return lookup(latest -> latest.getCategoryCount(categoryCode), () -> super.getCategoryCount(categoryCode));
+    }
+
+    @Override
+    public List<TransactionRollup.Row> getRollup(TransactionRollup.Granularity granularity, LocalDate first, LocalDate last) {
+      return lookup(latest -> latest.getRollup(granularity, first, last), () -> super.getRollup(granularity, first, last));
+    }
+
+    @Override
+    public double getBucketTotal(TransactionRollup.Granularity granularity, LocalDate date, int categoryCode) {
+      return lookup(latest -> latest.getBucketTotal(granularity, date, categoryCode), () -> super.getBucketTotal(granularity, date, categoryCode));
+    }
+
+    @Override
+    public int getBucketCount(TransactionRollup.Granularity granularity, LocalDate date, int categoryCode) {
+      return lookup(latest -> latest.getBucketCount(granularity, date, categoryCode), () -> super.getBucketCount(granularity, date, categoryCode));
+    }
   }
 
 }
@@ -1,9 +1,12 @@
 package model.Filter;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 import model.Transaction;
+import model.TransactionColumns;
+import model.TransactionIndex;
 import controller.InputValidation;
 
 public class AmountFilter implements TransactionFilter{
@@ -29,5 +32,30 @@ public class AmountFilter implements TransactionFilter{
         }
         return filteredTransactions;
     }
+
+    @Override
+    public boolean matches(TransactionColumns columns, int row){
+        return columns.getAmount(row) == amountFilter;
+    }
+
+    @Override
+    public double selectivity(TransactionColumns columns){
+        TransactionIndex index = columns.getIndex();
+        if(index != null && index.size() > 0){
+            return (double) index.countWithAmount(amountFilter) / index.size();
+        }
+        // An exact amount is usually rare
+        return 0.01;
+    }
+
+    @Override
+    public BitSet filterRows(TransactionColumns columns){
+        // Look the amount up in the sorted amount index when the rows have one
+        TransactionIndex index = columns.getIndex();
+        if(index != null){
+            return index.rowsWithAmount(amountFilter);
+        }
+        return TransactionFilter.super.filterRows(columns);
+    }
     
 }
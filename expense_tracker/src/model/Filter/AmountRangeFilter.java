@@ -0,0 +1,67 @@
+package model.Filter;
+
+import java.util.BitSet;
+
+import model.TransactionColumns;
+import model.TransactionIndex;
+
+/**
+ * Filter for the transactions whose amount lies within a range (both bounds inclusive).
+ * The static factory methods build the usual comparisons (above, below, ...).
+ */
+public class AmountRangeFilter implements TransactionFilter {
+    // Largest amount accepted by the input validation
+    private static final double MAX_AMOUNT = 1000;
+
+    private double minAmount;
+    private double maxAmount;
+
+    public AmountRangeFilter(double minAmount, double maxAmount) {
+        // NaN bounds would never match, and an empty range is most likely a mistake
+        if (Double.isNaN(minAmount) || Double.isNaN(maxAmount) || minAmount > maxAmount) {
+            throw new IllegalArgumentException("Invalid amount range filter");
+        }
+        this.minAmount = minAmount;
+        this.maxAmount = maxAmount;
+    }
+
+    public static AmountRangeFilter atLeast(double amount) {
+        return new AmountRangeFilter(amount, Double.POSITIVE_INFINITY);
+    }
+
+    public static AmountRangeFilter above(double amount) {
+        return new AmountRangeFilter(Math.nextUp(amount), Double.POSITIVE_INFINITY);
+    }
+
+    public static AmountRangeFilter atMost(double amount) {
+        return new AmountRangeFilter(Double.NEGATIVE_INFINITY, amount);
+    }
+
+    public static AmountRangeFilter below(double amount) {
+        return new AmountRangeFilter(Double.NEGATIVE_INFINITY, Math.nextDown(amount));
+    }
+
+    @Override
+    public boolean matches(TransactionColumns columns, int row) {
+        double amount = columns.getAmount(row);
+        return amount >= minAmount && amount <= maxAmount;
+    }
+
+    @Override
+    public double selectivity(TransactionColumns columns) {
+        // Assume the amounts are spread evenly over the valid range
+        double low = Math.max(minAmount, 0);
+        double high = Math.min(maxAmount, MAX_AMOUNT);
+        return high < low ? 0 : (high - low) / MAX_AMOUNT;
+    }
+
+    @Override
+    public BitSet filterRows(TransactionColumns columns) {
+        // Read the range straight out of the sorted amount index when the rows have one
+        TransactionIndex index = columns.getIndex();
+        if (index != null) {
+            return index.rowsWithAmountBetween(minAmount, maxAmount);
+        }
+        return TransactionFilter.super.filterRows(columns);
+    }
+}
@@ -0,0 +1,93 @@
+package model.Filter;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.function.IntPredicate;
+
+import model.ParallelScan;
+import model.TransactionColumns;
+
+/**
+ * Filter for the transactions that pass every one of its filters.
+ *
+ * The filters are checked in a single pass, cheapest and most selective first,
+ * and the check of a row stops at the first filter it fails.
+ */
+public class AndFilter implements TransactionFilter {
+    private TransactionFilter[] filters;
+
+    public AndFilter(TransactionFilter... filters) {
+        if (filters == null || filters.length == 0 || Arrays.asList(filters).contains(null)) {
+            throw new IllegalArgumentException("Invalid filter combination");
+        }
+        this.filters = filters.clone();
+    }
+
+    @Override
+    public boolean matches(TransactionColumns columns, int row) {
+        for (TransactionFilter filter : filters) {
+            if (!filter.matches(columns, row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public IntPredicate compile(TransactionColumns columns) {
+        IntPredicate[] predicates = Arrays.stream(ordered(columns))
+            .map(filter -> filter.compile(columns))
+            .toArray(IntPredicate[]::new);
+        return row -> {
+            for (IntPredicate predicate : predicates) {
+                if (!predicate.test(row)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    @Override
+    public boolean isRowLocal() {
+        return Arrays.stream(filters).allMatch(TransactionFilter::isRowLocal);
+    }
+
+    @Override
+    public int cost() {
+        return Arrays.stream(filters).mapToInt(TransactionFilter::cost).sum();
+    }
+
+    @Override
+    public double selectivity(TransactionColumns columns) {
+        double selectivity = 1;
+        for (TransactionFilter filter : filters) {
+            selectivity *= filter.selectivity(columns);
+        }
+        return selectivity;
+    }
+
+    @Override
+    public BitSet filterRows(TransactionColumns columns) {
+        // The most selective filter produces the candidate rows (from an index if it has one),
+        // and only those candidates are checked against the remaining filters
+        TransactionFilter[] ordered = ordered(columns);
+        BitSet rows = ordered[0].filterRows(columns);
+        if (ordered.length == 1) {
+            return rows;
+        }
+        AndFilter rest = new AndFilter(Arrays.copyOfRange(ordered, 1, ordered.length));
+        return ParallelScan.refine(rows, rest.cost(), rest.compile(columns));
+    }
+
+    /**
+     * Function to order the filters so that a row is rejected as cheaply as possible:
+     * by the cost of a check divided by the chance that the check rejects the row
+     */
+    private TransactionFilter[] ordered(TransactionColumns columns) {
+        TransactionFilter[] ordered = filters.clone();
+        Arrays.sort(ordered, Comparator.comparingDouble(filter -> filter.cost() / Math.max(1e-9, 1 - filter.selectivity(columns))));
+        return ordered;
+    }
+}
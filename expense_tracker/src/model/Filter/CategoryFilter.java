@@ -1,13 +1,20 @@
 package model.Filter;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.function.IntPredicate;
 
+import model.CategoryDictionary;
 import model.Transaction;
+import model.TransactionAggregates;
+import model.TransactionColumns;
+import model.TransactionIndex;
 import controller.InputValidation;
 
 public class CategoryFilter implements TransactionFilter {
-    private String categoryFilter;
+    // Code of the category in the CategoryDictionary, so that rows are compared as integers
+    private int categoryFilter;
 
     public CategoryFilter(String categoryFilter) {
         // Since the CategoryFilter constructor is public, 
@@ -15,7 +22,7 @@ public class CategoryFilter implements TransactionFilter {
         if(!InputValidation.isValidCategory(categoryFilter)){
             throw new IllegalArgumentException("Invalid category filter");
         }else{
-            this.categoryFilter = categoryFilter;
+            this.categoryFilter = CategoryDictionary.codeOf(categoryFilter);
         }
     }
 
@@ -25,11 +32,53 @@ public class CategoryFilter implements TransactionFilter {
         List<Transaction> filteredTransactions = new ArrayList<>();
 
         for (Transaction transaction : transactions) {
-            if (transaction.getCategory().equalsIgnoreCase(categoryFilter)) {
+            if (transaction.getCategoryCode() == categoryFilter) {
                 filteredTransactions.add(transaction);
             }
         }
 
         return filteredTransactions;
     }
+
+    @Override
+    public boolean matches(TransactionColumns columns, int row) {
+        return columns.getCategoryCode(row) == categoryFilter;
+    }
+
+    @Override
+    public IntPredicate compile(TransactionColumns columns) {
+        // Every row is checked with an integer comparison
+        int categoryCode = categoryFilter;
+        return row -> columns.getCategoryCode(row) == categoryCode;
+    }
+
+    @Override
+    public double selectivity(TransactionColumns columns) {
+        TransactionIndex index = columns.getIndex();
+        if (index != null && index.size() > 0) {
+            return (double) index.countWithCategory(categoryFilter) / index.size();
+        }
+        // Assume the rows are spread evenly over the known categories
+        return 1.0 / CategoryDictionary.size();
+    }
+
+    @Override
+    public double subtotal(TransactionColumns columns, BitSet rows) {
+        // The model keeps a running total per category
+        TransactionAggregates aggregates = columns.getAggregates();
+        if (aggregates != null) {
+            return aggregates.getCategoryTotal(categoryFilter);
+        }
+        return TransactionFilter.super.subtotal(columns, rows);
+    }
+
+    @Override
+    public BitSet filterRows(TransactionColumns columns) {
+        // Use the category posting list when the rows have one
+        TransactionIndex index = columns.getIndex();
+        if (index != null) {
+            return index.rowsWithCategory(categoryFilter);
+        }
+        return TransactionFilter.super.filterRows(columns);
+    }
 }
@@ -0,0 +1,92 @@
+package model.Filter;
+
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import model.CategoryDictionary;
+import model.CompensatedSum;
+import model.TransactionAggregates;
+import model.TransactionColumns;
+import model.TransactionIndex;
+
+/**
+ * Filter for the transactions whose category is one of a set of categories.
+ */
+public class CategorySetFilter implements TransactionFilter {
+    // Codes of the categories in the CategoryDictionary, without duplicates
+    private int[] categoryCodes;
+    // Category code -> whether the set holds the category
+    private boolean[] accepted;
+
+    public CategorySetFilter(String... categories) {
+        // Since the CategorySetFilter constructor is public,
+        // the input validation needs to be performed again.
+        if (categories == null || categories.length == 0) {
+            throw new IllegalArgumentException("Invalid category filter");
+        }
+        this.accepted = new boolean[CategoryDictionary.MAX_CATEGORIES];
+        for (String category : categories) {
+            int code = CategoryDictionary.codeOf(category);
+            if (code == -1) {
+                throw new IllegalArgumentException("Invalid category filter");
+            }
+            accepted[code] = true;
+        }
+        this.categoryCodes = IntStream.range(0, accepted.length).filter(code -> accepted[code]).toArray();
+    }
+
+    @Override
+    public boolean matches(TransactionColumns columns, int row) {
+        return accepted[columns.getCategoryCode(row)];
+    }
+
+    @Override
+    public IntPredicate compile(TransactionColumns columns) {
+        // The set is a lookup table indexed by category code
+        boolean[] accepted = this.accepted;
+        return row -> accepted[columns.getCategoryCode(row)];
+    }
+
+    @Override
+    public double selectivity(TransactionColumns columns) {
+        TransactionIndex index = columns.getIndex();
+        if (index != null && index.size() > 0) {
+            int count = 0;
+            for (int code : categoryCodes) {
+                count += index.countWithCategory(code);
+            }
+            return (double) count / index.size();
+        }
+        // Assume the rows are spread evenly over the known categories
+        return Math.min(1.0, (double) categoryCodes.length / CategoryDictionary.size());
+    }
+
+    @Override
+    public double subtotal(TransactionColumns columns, BitSet rows) {
+        // The model keeps a running total per category
+        TransactionAggregates aggregates = columns.getAggregates();
+        if (aggregates != null) {
+            CompensatedSum subtotal = new CompensatedSum();
+            for (int code : categoryCodes) {
+                subtotal.add(aggregates.getCategoryTotal(code));
+            }
+            return subtotal.get();
+        }
+        return TransactionFilter.super.subtotal(columns, rows);
+    }
+
+    @Override
+    public BitSet filterRows(TransactionColumns columns) {
+        // Merge the posting lists of the categories when the rows have them
+        TransactionIndex index = columns.getIndex();
+        if (index != null) {
+            BitSet rows = new BitSet(columns.size());
+            for (int code : categoryCodes) {
+                rows.or(index.rowsWithCategory(code));
+            }
+            return rows;
+        }
+        return TransactionFilter.super.filterRows(columns);
+    }
+}
@@ -0,0 +1,53 @@
+package model.Filter;
+
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+import model.TransactionColumns;
+
+/**
+ * Filter for the transactions that do not pass the wrapped filter.
+ */
+public class NotFilter implements TransactionFilter {
+    private TransactionFilter filter;
+
+    public NotFilter(TransactionFilter filter) {
+        if (filter == null) {
+            throw new IllegalArgumentException("Invalid filter combination");
+        }
+        this.filter = filter;
+    }
+
+    @Override
+    public boolean matches(TransactionColumns columns, int row) {
+        return !filter.matches(columns, row);
+    }
+
+    @Override
+    public IntPredicate compile(TransactionColumns columns) {
+        return filter.compile(columns).negate();
+    }
+
+    @Override
+    public boolean isRowLocal() {
+        return filter.isRowLocal();
+    }
+
+    @Override
+    public int cost() {
+        return filter.cost();
+    }
+
+    @Override
+    public double selectivity(TransactionColumns columns) {
+        return 1 - filter.selectivity(columns);
+    }
+
+    @Override
+    public BitSet filterRows(TransactionColumns columns) {
+        // Complement the rows of the wrapped filter, which may come from an index
+        BitSet rows = filter.filterRows(columns);
+        rows.flip(0, columns.size());
+        return rows;
+    }
+}
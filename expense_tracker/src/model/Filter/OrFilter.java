@@ -0,0 +1,70 @@
+package model.Filter;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.IntPredicate;
+
+import model.TransactionColumns;
+
+/**
+ * Filter for the transactions that pass at least one of its filters.
+ *
+ * The filters are checked in a single pass, cheapest and most likely to match first,
+ * and the check of a row stops at the first filter it passes.
+ */
+public class OrFilter implements TransactionFilter {
+    private TransactionFilter[] filters;
+
+    public OrFilter(TransactionFilter... filters) {
+        if (filters == null || filters.length == 0 || Arrays.asList(filters).contains(null)) {
+            throw new IllegalArgumentException("Invalid filter combination");
+        }
+        this.filters = filters.clone();
+    }
+
+    @Override
+    public boolean matches(TransactionColumns columns, int row) {
+        for (TransactionFilter filter : filters) {
+            if (filter.matches(columns, row)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public IntPredicate compile(TransactionColumns columns) {
+        // Order the filters by the cost of a check divided by the chance that the check accepts the row
+        IntPredicate[] predicates = Arrays.stream(filters)
+            .sorted(Comparator.comparingDouble(filter -> filter.cost() / Math.max(1e-9, filter.selectivity(columns))))
+            .map(filter -> filter.compile(columns))
+            .toArray(IntPredicate[]::new);
+        return row -> {
+            for (IntPredicate predicate : predicates) {
+                if (predicate.test(row)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    @Override
+    public boolean isRowLocal() {
+        return Arrays.stream(filters).allMatch(TransactionFilter::isRowLocal);
+    }
+
+    @Override
+    public int cost() {
+        return Arrays.stream(filters).mapToInt(TransactionFilter::cost).sum();
+    }
+
+    @Override
+    public double selectivity(TransactionColumns columns) {
+        double rejected = 1;
+        for (TransactionFilter filter : filters) {
+            rejected *= 1 - filter.selectivity(columns);
+        }
+        return 1 - rejected;
+    }
+}
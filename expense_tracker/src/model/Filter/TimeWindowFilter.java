@@ -0,0 +1,97 @@
+package model.Filter;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.time.temporal.WeekFields;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.function.IntPredicate;
+
+import model.TransactionColumns;
+import model.TransactionIndex;
+
+/**
+ * Filter for the transactions created within a time window.
+ * The window starts at fromMillis (inclusive) and ends at toMillis (exclusive).
+ * The static factory methods build the usual windows (this week, this month, a range of days)
+ * in the default time zone, the one timestamps are shown in.
+ */
+public class TimeWindowFilter implements TransactionFilter {
+    private long fromMillis;
+    private long toMillis;
+
+    public TimeWindowFilter(long fromMillis, long toMillis) {
+        if (fromMillis > toMillis) {
+            throw new IllegalArgumentException("Invalid time window filter");
+        }
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+    }
+
+    /**
+     * Function to build the window of the days from first to last, both included
+     * @param first First day of the window
+     * @param last Last day of the window
+     * @return the filter for the transactions created on those days
+     */
+    public static TimeWindowFilter between(LocalDate first, LocalDate last) {
+        if (first == null || last == null || first.isAfter(last)) {
+            throw new IllegalArgumentException("Invalid time window filter");
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        return new TimeWindowFilter(first.atStartOfDay(zone).toInstant().toEpochMilli(),
+            last.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli());
+    }
+
+    /**
+     * @return the filter for the transactions created this week, which starts on the first day of the week of the default locale
+     */
+    public static TimeWindowFilter thisWeek() {
+        LocalDate today = LocalDate.now();
+        LocalDate first = today.with(TemporalAdjusters.previousOrSame(WeekFields.of(Locale.getDefault()).getFirstDayOfWeek()));
+        return between(first, first.plusDays(6));
+    }
+
+    /**
+     * @return the filter for the transactions created this month
+     */
+    public static TimeWindowFilter thisMonth() {
+        LocalDate today = LocalDate.now();
+        return between(today.withDayOfMonth(1), today.with(TemporalAdjusters.lastDayOfMonth()));
+    }
+
+    public long getFromMillis() {
+        return fromMillis;
+    }
+
+    public long getToMillis() {
+        return toMillis;
+    }
+
+    @Override
+    public boolean matches(TransactionColumns columns, int row) {
+        long timestamp = columns.getTimestamp(row);
+        return timestamp >= fromMillis && timestamp < toMillis;
+    }
+
+    @Override
+    public IntPredicate compile(TransactionColumns columns) {
+        long from = fromMillis;
+        long to = toMillis;
+        return row -> {
+            long timestamp = columns.getTimestamp(row);
+            return timestamp >= from && timestamp < to;
+        };
+    }
+
+    @Override
+    public BitSet filterRows(TransactionColumns columns) {
+        // Binary search the timestamps when the rows have an index, instead of checking every row
+        TransactionIndex index = columns.getIndex();
+        if (index != null) {
+            return index.rowsWithTimestampBetween(fromMillis, toMillis);
+        }
+        return TransactionFilter.super.filterRows(columns);
+    }
+}
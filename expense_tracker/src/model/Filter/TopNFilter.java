@@ -0,0 +1,174 @@
+package model.Filter;
+
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+import model.TransactionColumns;
+import model.TransactionSnapshot;
+
+/**
+ * Filter for the N transactions with the largest amounts among those passing the wrapped filter.
+ * Among equal amounts the earlier transactions are kept.
+ *
+ * The rows are selected in one pass over the candidate rows with a bounded heap,
+ * without sorting or copying the transactions. The rows selected in a snapshot are kept until
+ * another snapshot is filtered, so checking its rows one at a time does not select them again.
+ */
+public class TopNFilter implements TransactionFilter {
+    private TransactionFilter filter;
+    private int n;
+    // Rows selected in the last snapshot filtered (null until one is)
+    private volatile Selection last;
+
+    public TopNFilter(TransactionFilter filter, int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Invalid top-N filter");
+        }
+        this.filter = filter;
+        this.n = n;
+    }
+
+    public TopNFilter(int n) {
+        this(null, n);
+    }
+
+    @Override
+    public boolean matches(TransactionColumns columns, int row) {
+        // Whether a row is in the top N depends on all the other rows
+        return select(columns).get(row);
+    }
+
+    @Override
+    public IntPredicate compile(TransactionColumns columns) {
+        BitSet rows = select(columns);
+        return rows::get;
+    }
+
+    @Override
+    public int cost() {
+        // Every candidate row is checked by the wrapped filter and then ranked against a heap of N rows
+        int rankCost = 32 - Integer.numberOfLeadingZeros(n);
+        return (filter == null ? 0 : filter.cost()) + rankCost;
+    }
+
+    @Override
+    public boolean isRowLocal() {
+        return false;
+    }
+
+    @Override
+    public double selectivity(TransactionColumns columns) {
+        return columns.size() == 0 ? 0 : Math.min(1.0, (double) n / columns.size());
+    }
+
+    @Override
+    public BitSet filterRows(TransactionColumns columns) {
+        // The selected rows are kept, so the caller gets its own copy
+        return (BitSet) select(columns).clone();
+    }
+
+    /**
+     * Function to get the rows in the top N, reusing the ones selected for the same snapshot
+     * @return the selected rows (not to be modified)
+     */
+    private BitSet select(TransactionColumns columns) {
+        Selection selection = last;
+        if (selection != null && selection.columns == columns) {
+            return selection.rows;
+        }
+        BitSet rows = selectRows(columns);
+        // Only a snapshot is known not to change; any other columns are selected again on every call
+        if (columns instanceof TransactionSnapshot.Columns) {
+            last = new Selection(columns, rows);
+        }
+        return rows;
+    }
+
+    private BitSet selectRows(TransactionColumns columns) {
+        BitSet candidates;
+        if (filter != null) {
+            candidates = filter.filterRows(columns);
+        } else {
+            candidates = new BitSet(columns.size());
+            candidates.set(0, columns.size());
+        }
+
+        // Min-heap (by amount) of the best rows seen so far; the root is the weakest one kept
+        int[] heap = new int[Math.min(n, candidates.cardinality())];
+        int heapSize = 0;
+        for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1)) {
+            if (heapSize < heap.length) {
+                heap[heapSize] = row;
+                siftUp(columns, heap, heapSize++);
+            } else if (columns.getAmount(row) > columns.getAmount(heap[0])) {
+                // Rows are visited in order, so a later row only replaces a strictly smaller amount
+                heap[0] = row;
+                siftDown(columns, heap, heapSize);
+            }
+        }
+
+        BitSet rows = new BitSet(columns.size());
+        for (int i = 0; i < heapSize; i++) {
+            rows.set(heap[i]);
+        }
+        return rows;
+    }
+
+    /**
+     * @return true if row a ranks below row b (smaller amount, or the same amount and a later row)
+     */
+    private static boolean weaker(TransactionColumns columns, int a, int b) {
+        int comparison = Double.compare(columns.getAmount(a), columns.getAmount(b));
+        return comparison < 0 || (comparison == 0 && a > b);
+    }
+
+    private static void siftUp(TransactionColumns columns, int[] heap, int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (!weaker(columns, heap[position], heap[parent])) {
+                return;
+            }
+            swap(heap, position, parent);
+            position = parent;
+        }
+    }
+
+    private static void siftDown(TransactionColumns columns, int[] heap, int size) {
+        int position = 0;
+        while (true) {
+            int weakest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < size && weaker(columns, heap[left], heap[weakest])) {
+                weakest = left;
+            }
+            if (right < size && weaker(columns, heap[right], heap[weakest])) {
+                weakest = right;
+            }
+            if (weakest == position) {
+                return;
+            }
+            swap(heap, position, weakest);
+            position = weakest;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+
+    /**
+     * The rows selected in one snapshot
+     */
+    private static final class Selection {
+        private final TransactionColumns columns;
+        private final BitSet rows;
+
+        Selection(TransactionColumns columns, BitSet rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+}
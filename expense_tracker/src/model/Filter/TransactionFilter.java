@@ -1,8 +1,14 @@
 package model.Filter;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.function.IntPredicate;
 
+import model.ParallelScan;
 import model.Transaction;
+import model.TransactionAggregates;
+import model.TransactionColumns;
 
 /**
  * The TransactionFilter supports filtering the transaction list.
@@ -11,6 +17,94 @@ import model.Transaction;
  */
 public interface TransactionFilter {
 
-  public List<Transaction> filter(List<Transaction> transactions);
+  /**
+   * Function to filter a plain list of transactions.
+   * By default the list is read through the same row-based code as the stored columns.
+   * @param transactions Transactions to be filtered
+   * @return the matching transactions, in list order
+   */
+  public default List<Transaction> filter(List<Transaction> transactions) {
+    return filter(new TransactionListColumns(transactions));
+  }
+
+  /**
+   * Function to check a single stored row against the filter, reading the columns directly
+   * @param columns Columnar view of the stored transactions
+   * @param row Row index to check
+   * @return true if the row passes the filter
+   */
+  public boolean matches(TransactionColumns columns, int row);
+
+  /**
+   * Function to prepare the filter for a scan over the given columns.
+   * Anything that does not depend on the row (category codes, bounds, ...) is resolved once
+   * here, and composite filters fuse the predicates of their parts into a single predicate.
+   * @param columns Columnar view of the stored transactions
+   * @return predicate over the row indexes of the columns
+   */
+  public default IntPredicate compile(TransactionColumns columns) {
+    return row -> matches(columns, row);
+  }
+
+  /**
+   * @return true if whether a row passes the filter only depends on that row, so the filter can be
+   *     compiled for any part of the rows on its own (e.g. one storage chunk); false for filters ranking the rows
+   */
+  public default boolean isRowLocal() {
+    return true;
+  }
+
+  /**
+   * @return relative cost of checking one row, used to order the parts of a composite filter
+   */
+  public default int cost() {
+    return 1;
+  }
+
+  /**
+   * Function to estimate the fraction of rows passing the filter, used to order the parts of a composite filter
+   * @param columns Columnar view of the stored transactions
+   * @return estimated fraction of matching rows, between 0 and 1
+   */
+  public default double selectivity(TransactionColumns columns) {
+    return 0.5;
+  }
+
+  /**
+   * Function to find the positions of the matching rows in a single scan of the columns.
+   * Large scans are split into storage chunks checked in parallel (see ParallelScan).
+   * @param columns Columnar view of the stored transactions
+   * @return the indexes of the matching rows, as a bitmap over the row indexes
+   */
+  public default BitSet filterRows(TransactionColumns columns) {
+    if (!isRowLocal()) {
+      return ParallelScan.filterRows(columns.size(), cost(), compile(columns));
+    }
+    return ParallelScan.filterRows(columns, cost(), this::compile);
+  }
+
+  /**
+   * Function to add up the amounts of the rows selected by this filter
+   * @param columns Columnar view of the stored transactions
+   * @param rows The rows selected by this filter (as returned by filterRows)
+   * @return total amount of the selected rows
+   */
+  public default double subtotal(TransactionColumns columns, BitSet rows) {
+    return TransactionAggregates.sum(columns, rows);
+  }
+
+  /**
+   * Function to filter the stored rows without materializing the ones that do not match
+   * @param columns Columnar view of the stored transactions
+   * @return the matching transactions, in row order
+   */
+  public default List<Transaction> filter(TransactionColumns columns) {
+    BitSet rows = filterRows(columns);
+    List<Transaction> filteredTransactions = new ArrayList<>(rows.cardinality());
+    for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+      filteredTransactions.add(columns.getTransaction(row));
+    }
+    return filteredTransactions;
+  }
 
 }
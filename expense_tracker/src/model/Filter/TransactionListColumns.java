@@ -0,0 +1,70 @@
+package model.Filter;
+
+import java.util.List;
+
+import model.CategoryDictionary;
+import model.Transaction;
+import model.TransactionColumns;
+
+/**
+ * Adapter that presents a plain list of transactions as columns,
+ * so that filters only need the row-based implementation.
+ */
+class TransactionListColumns implements TransactionColumns {
+    private final List<Transaction> transactions;
+
+    TransactionListColumns(List<Transaction> transactions) {
+        this.transactions = transactions;
+    }
+
+    @Override
+    public int size() {
+        return transactions.size();
+    }
+
+    @Override
+    public double getAmount(int row) {
+        return transactions.get(row).getAmount();
+    }
+
+    @Override
+    public int getCategoryCode(int row) {
+        return transactions.get(row).getCategoryCode();
+    }
+
+    @Override
+    public String getCategory(int row) {
+        return transactions.get(row).getCategory();
+    }
+
+    @Override
+    public long getTimestamp(int row) {
+        return transactions.get(row).getEpochMillis();
+    }
+
+    @Override
+    public long getId(int row) {
+        return transactions.get(row).getId();
+    }
+
+    @Override
+    public int rowOf(long id) {
+        // A plain list may hold transactions in any order, or without ids
+        for (int row = 0; row < transactions.size(); row++) {
+            if (transactions.get(row).getId() == id) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int findCategoryCode(String category) {
+        return CategoryDictionary.codeOf(category);
+    }
+
+    @Override
+    public Transaction getTransaction(int row) {
+        return transactions.get(row);
+    }
+}
@@ -0,0 +1,627 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A TransactionStore serving its rows straight from a memory-mapped snapshot file.
+ *
+ * Opening a snapshot only reads its header and maps the four columns, so it takes the same
+ * time whatever the number of rows: no row is parsed or copied, and the operating system pages
+ * the columns in as they are read. The category codes of the file are translated into the codes of
+ * the CategoryDictionary (registering the categories it does not know yet) through a table of at
+ * most 256 entries. Rows added after opening go to an in-memory columnar store
+ * behind the mapped rows.
+ *
+ * The mapped rows cannot be changed in place, so removing them only marks them in a bitmap of
+ * removed rows, one block of 4096 mapped rows at a time, with a Fenwick tree of the number of live
+ * rows per block to map a row index to its mapped row. Removing a row costs O(log blocks) plus a
+ * copy of its bitmap block if a snapshot still shares it; the first removal after a snapshot also
+ * copies the block directory (a reference and an int per 4096 mapped rows). Once rows are removed,
+ * finding a mapped row costs O(log blocks) and reads have to skip the removed rows: once an eighth
+ * of the mapped rows are removed, every row is copied into an in-memory store on a background
+ * thread, from a snapshot, and the next change (which replays the changes made during the copy)
+ * switches to it.
+ *
+ * File layout (big-endian): a header holding a 4-byte magic number, an 8-byte generation,
+ * the 8-byte next id, the row count (4 bytes), the category count (2 bytes) and the category names
+ * (a length byte followed by the UTF-8 name, in code order), padded to 8 bytes. It is followed by
+ * the columns: every amount (8-byte double), then every epoch-millis timestamp (8-byte long), then
+ * every id (8-byte long), then every category code (1 byte). Files of the first version ("ETS1")
+ * have neither the next id nor the id column; their rows get their row index as id.
+ */
+public class MappedTransactionStore implements TransactionStore {
+
+  private static final int MAGIC = 0x45545332; // "ETS2"
+  private static final int MAGIC_WITHOUT_IDS = 0x45545331; // "ETS1"
+  private static final int MAX_CATEGORIES = 256;
+  private static final int WRITE_BUFFER_SIZE = 1 << 16;
+  // Mapped rows per block of the removed-row bitmap
+  private static final int BLOCK_SHIFT = 12;
+  private static final int BLOCK_WORDS = (1 << BLOCK_SHIFT) / 64;
+
+  private final long generation;
+  private final int mappedSize;
+  private final DoubleBuffer amounts;
+  private final LongBuffer timestamps;
+  // Null for a file without ids, whose row indexes are the ids
+  private final LongBuffer ids;
+  private final ByteBuffer categoryCodes;
+  // Category code in the file -> code in the CategoryDictionary
+  private final int[] dictionaryCodes;
+
+  // Rows after the mapped ones (read-only in a snapshot)
+  private final TransactionColumns appended;
+  // Writable store behind appended, or null in a snapshot
+  private final ColumnarTransactionStore appendStore;
+  // Bitmap of the removed mapped rows per block (a null block has no removed row), or null if
+  // no mapped row is removed. Shared with snapshots, and copied on write like the chunks of a
+  // ColumnarTransactionStore
+  private long[][] removedRows;
+  // Fenwick tree (1-based) of the number of live mapped rows per block, shared along with the directory
+  private int[] liveCounts;
+  private int liveMapped;
+  // Copy-on-write bookkeeping, as in ColumnarTransactionStore: the epoch is advanced whenever a
+  // snapshot is taken, and a block (or the directory) may only be changed in place in the current epoch
+  private int epoch;
+  private int[] blockEpochs;
+  private int directoryEpoch;
+  // Copy of every row being made in the background, or null
+  private Compaction compaction;
+  // Every row, copied in memory once enough mapped rows are removed
+  private ColumnarTransactionStore copied;
+
+  /**
+   * Function to map a snapshot file
+   * @param file Snapshot file, as written by write()
+   * @return a store serving the rows of the file
+   * @throws IOException if the file cannot be read or is not a snapshot
+   */
+  public static MappedTransactionStore open(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      // The header is at most 26 bytes plus 256 names of up to 256 bytes each
+      MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fileSize, 26 + MAX_CATEGORIES * 256));
+      int magic = header.remaining() < 26 ? 0 : header.getInt();
+      if (magic != MAGIC && magic != MAGIC_WITHOUT_IDS) {
+        throw new IOException("Not a transaction snapshot: " + file);
+      }
+      boolean withIds = magic == MAGIC;
+      long generation = header.getLong();
+      long nextId = withIds ? header.getLong() : -1;
+      int rows = header.getInt();
+      int categories = header.getShort() & 0xFFFF;
+      if (rows < 0 || categories > MAX_CATEGORIES || (withIds && nextId < rows)) {
+        throw new IOException("Damaged transaction snapshot: " + file);
+      }
+      int[] dictionaryCodes = new int[categories];
+      for (int code = 0; code < categories; code++) {
+        byte[] name = new byte[header.get() & 0xFF];
+        header.get(name);
+        try {
+          dictionaryCodes[code] = CategoryDictionary.register(new String(name, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+          throw new IOException("Damaged transaction snapshot: " + file, e);
+        }
+      }
+
+      long amountsStart = align(header.position());
+      long timestampsStart = amountsStart + (long) rows * Double.BYTES;
+      long idsStart = timestampsStart + (long) rows * Long.BYTES;
+      long codesStart = withIds ? idsStart + (long) rows * Long.BYTES : idsStart;
+      if (codesStart + rows > fileSize) {
+        throw new IOException("Truncated transaction snapshot: " + file);
+      }
+      // The mappings stay valid after the channel is closed
+      DoubleBuffer amounts = channel.map(FileChannel.MapMode.READ_ONLY, amountsStart, (long) rows * Double.BYTES).asDoubleBuffer();
+      LongBuffer timestamps = channel.map(FileChannel.MapMode.READ_ONLY, timestampsStart, (long) rows * Long.BYTES).asLongBuffer();
+      LongBuffer ids = withIds ? channel.map(FileChannel.MapMode.READ_ONLY, idsStart, (long) rows * Long.BYTES).asLongBuffer() : null;
+      ByteBuffer codes = channel.map(FileChannel.MapMode.READ_ONLY, codesStart, rows);
+      return new MappedTransactionStore(generation, rows, amounts, timestamps, ids, codes, dictionaryCodes, withIds ? nextId : rows);
+    }
+  }
+
+  /**
+   * Function to write the given rows as a snapshot file
+   * @param columns Rows to be written
+   * @param file Snapshot file (replaced if it exists)
+   * @param generation Number stored in the header, e.g. to match the snapshot with a journal
+   * @throws IOException if the file cannot be written
+   */
+  public static void write(TransactionColumns columns, Path file, long generation) throws IOException {
+    BitSet rows = new BitSet(columns.size());
+    rows.set(0, columns.size());
+    write(columns, rows, file, generation);
+  }
+
+  /**
+   * Function to write some of the given rows as a snapshot file, streaming them in constant memory
+   * @param columns Columnar view of the transactions
+   * @param rows Bitmap of the row indexes to be written
+   * @param file Snapshot file (replaced if it exists)
+   * @param generation Number stored in the header, e.g. to match the snapshot with a journal
+   * @throws IOException if the file cannot be written
+   */
+  public static void write(TransactionColumns columns, BitSet rows, Path file, long generation) throws IOException {
+    int rowCount = rows.cardinality();
+    // Number the categories in use densely, in the order of their current codes
+    String[] names = new String[MAX_CATEGORIES];
+    for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+      int code = columns.getCategoryCode(row);
+      if (names[code] == null) {
+        names[code] = columns.getCategory(row);
+      }
+    }
+    byte[] newCodes = new byte[MAX_CATEGORIES];
+    int categories = 0;
+    for (int code = 0; code < MAX_CATEGORIES; code++) {
+      if (names[code] != null) {
+        newCodes[code] = (byte) categories;
+        names[categories++] = names[code];
+      }
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      // The next id of the columns, so that the ids of removed rows are not given out again
+      buffer.putInt(MAGIC).putLong(generation).putLong(columns.getNextId()).putInt(rowCount).putShort((short) categories);
+      for (int code = 0; code < categories; code++) {
+        byte[] name = names[code].getBytes(StandardCharsets.UTF_8);
+        if (name.length > 255) {
+          throw new IOException("The category cannot be written: " + names[code]);
+        }
+        ensureRoom(channel, buffer, 1 + name.length);
+        buffer.put((byte) name.length).put(name);
+      }
+      long position = channel.position() + buffer.position();
+      ensureRoom(channel, buffer, Long.BYTES);
+      for (long padding = align(position) - position; padding > 0; padding--) {
+        buffer.put((byte) 0);
+      }
+
+      for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+        ensureRoom(channel, buffer, Double.BYTES);
+        buffer.putDouble(columns.getAmount(row));
+      }
+      for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+        ensureRoom(channel, buffer, Long.BYTES);
+        buffer.putLong(columns.getTimestamp(row));
+      }
+      for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+        ensureRoom(channel, buffer, Long.BYTES);
+        buffer.putLong(columns.getId(row));
+      }
+      for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+        ensureRoom(channel, buffer, 1);
+        buffer.put(newCodes[columns.getCategoryCode(row)]);
+      }
+      ensureRoom(channel, buffer, WRITE_BUFFER_SIZE);
+      channel.force(false);
+    }
+  }
+
+  private MappedTransactionStore(long generation, int rows, DoubleBuffer amounts, LongBuffer timestamps, LongBuffer ids,
+      ByteBuffer codes, int[] dictionaryCodes, long nextId) {
+    this.generation = generation;
+    this.mappedSize = rows;
+    this.amounts = amounts;
+    this.timestamps = timestamps;
+    this.ids = ids;
+    this.categoryCodes = codes;
+    this.dictionaryCodes = dictionaryCodes;
+    // Added rows are numbered on from the ids of the file
+    this.appendStore = new ColumnarTransactionStore(nextId);
+    this.appended = appendStore;
+    this.liveMapped = rows;
+  }
+
+  /**
+   * Constructor for a read-only snapshot sharing the mapped rows of the given store
+   * @param source Store to take the snapshot of
+   */
+  private MappedTransactionStore(MappedTransactionStore source) {
+    this.generation = source.generation;
+    this.mappedSize = source.mappedSize;
+    this.amounts = source.amounts;
+    this.timestamps = source.timestamps;
+    this.ids = source.ids;
+    this.categoryCodes = source.categoryCodes;
+    this.dictionaryCodes = source.dictionaryCodes;
+    this.appendStore = null;
+    this.appended = source.appendStore.snapshot();
+    this.removedRows = source.removedRows;
+    this.liveCounts = source.liveCounts;
+    this.liveMapped = source.liveMapped;
+  }
+
+  /**
+   * @return the generation stored in the header of the snapshot file
+   */
+  public long getGeneration() {
+    return generation;
+  }
+
+  @Override
+  public int size() {
+    if (copied != null) {
+      return copied.size();
+    }
+    return liveMapped + appended.size();
+  }
+
+  @Override
+  public double getAmount(int row) {
+    if (copied != null) {
+      return copied.getAmount(row);
+    }
+    return row >= 0 && row < liveMapped ? amounts.get(mappedRow(row)) : appended.getAmount(appendedRow(row));
+  }
+
+  @Override
+  public int getCategoryCode(int row) {
+    if (copied != null) {
+      return copied.getCategoryCode(row);
+    }
+    return row >= 0 && row < liveMapped ? dictionaryCodes[categoryCodes.get(mappedRow(row)) & 0xFF] : appended.getCategoryCode(appendedRow(row));
+  }
+
+  @Override
+  public String getCategory(int row) {
+    return CategoryDictionary.nameOf(getCategoryCode(row));
+  }
+
+  @Override
+  public long getTimestamp(int row) {
+    if (copied != null) {
+      return copied.getTimestamp(row);
+    }
+    return row >= 0 && row < liveMapped ? timestamps.get(mappedRow(row)) : appended.getTimestamp(appendedRow(row));
+  }
+
+  @Override
+  public long getId(int row) {
+    if (copied != null) {
+      return copied.getId(row);
+    }
+    if (row >= 0 && row < liveMapped) {
+      int mapped = mappedRow(row);
+      return ids == null ? mapped : ids.get(mapped);
+    }
+    return appended.getId(appendedRow(row));
+  }
+
+  @Override
+  public long getNextId() {
+    return copied != null ? copied.getNextId() : appended.getNextId();
+  }
+
+  @Override
+  public int findCategoryCode(String category) {
+    return CategoryDictionary.codeOf(category);
+  }
+
+  @Override
+  public Transaction getTransaction(int row) {
+    return new Transaction(getAmount(row), getCategoryCode(row), getTimestamp(row), getId(row));
+  }
+
+  @Override
+  public void add(Transaction t) {
+    checkWritable();
+    finishCompaction();
+    if (copied != null) {
+      copied.add(t);
+      return;
+    }
+    appendStore.add(t);
+    if (compaction != null) {
+      compaction.changes.add(new Change(t, appendStore.getId(appendStore.size() - 1), null));
+    }
+  }
+
+  @Override
+  public void remove(int row) {
+    removeAll(new int[] {row});
+  }
+
+  @Override
+  public void removeAll(int[] rows) {
+    checkWritable();
+    if (rows.length == 0) {
+      return;
+    }
+    finishCompaction();
+    if (copied != null) {
+      copied.removeAll(rows);
+      return;
+    }
+    if (rows[0] < 0 || rows[rows.length - 1] >= size()) {
+      throw new IndexOutOfBoundsException("Index: " + rows[rows.length - 1] + ", Size: " + size());
+    }
+    // The rows are sorted, so the mapped ones come first
+    int mappedCount = 0;
+    while (mappedCount < rows.length && rows[mappedCount] < liveMapped) {
+      mappedCount++;
+    }
+    if (mappedCount < rows.length) {
+      int[] appendedRows = new int[rows.length - mappedCount];
+      for (int i = 0; i < appendedRows.length; i++) {
+        appendedRows[i] = rows[mappedCount + i] - liveMapped;
+      }
+      appendStore.removeAll(appendedRows);
+    }
+    if (mappedCount > 0) {
+      markRemoved(rows, mappedCount);
+    }
+    if (compaction != null) {
+      compaction.changes.add(new Change(null, 0, rows.clone()));
+    } else if (mappedSize - liveMapped >= Math.max(1, mappedSize / 8)) {
+      startCompaction();
+    }
+  }
+
+  /**
+   * Function to mark mapped rows as removed, copying the bitmap blocks it changes if a snapshot shares them
+   * @param rows Sorted row indexes, the first mappedCount of them mapped rows
+   * @param mappedCount Number of mapped rows to remove
+   */
+  private void markRemoved(int[] rows, int mappedCount) {
+    // Every index refers to the rows before the removal, so they are all translated first
+    int[] mapped = new int[mappedCount];
+    for (int i = 0; i < mappedCount; i++) {
+      mapped[i] = mappedRow(rows[i]);
+    }
+    ensureDirectoryWritable();
+    int changedBlock = -1;
+    for (int row : mapped) {
+      int block = row >>> BLOCK_SHIFT;
+      if (block != changedBlock) {
+        ensureBlockWritable(block);
+        changedBlock = block;
+      }
+      removedRows[block][(row >>> 6) & (BLOCK_WORDS - 1)] |= 1L << row;
+      // One live row less in the block, and in every node of the tree covering it
+      for (int node = block + 1; node < liveCounts.length; node += node & -node) {
+        liveCounts[node]--;
+      }
+    }
+    liveMapped -= mappedCount;
+  }
+
+  /**
+   * Function to create the bitmap directory on the first removal, or copy it if it is still shared with a snapshot
+   */
+  private void ensureDirectoryWritable() {
+    if (removedRows == null) {
+      int blocks = (mappedSize + (1 << BLOCK_SHIFT) - 1) >>> BLOCK_SHIFT;
+      removedRows = new long[blocks][];
+      blockEpochs = new int[blocks];
+      // Every block is full but the last one; each node holds the rows of the blocks it covers
+      liveCounts = new int[blocks + 1];
+      for (int node = 1; node <= blocks; node++) {
+        liveCounts[node] += Math.min(1 << BLOCK_SHIFT, mappedSize - ((node - 1) << BLOCK_SHIFT));
+        int parent = node + (node & -node);
+        if (parent <= blocks) {
+          liveCounts[parent] += liveCounts[node];
+        }
+      }
+      directoryEpoch = epoch;
+    } else if (directoryEpoch != epoch) {
+      removedRows = removedRows.clone();
+      liveCounts = liveCounts.clone();
+      directoryEpoch = epoch;
+    }
+  }
+
+  /**
+   * Function to create a bitmap block, or copy it if it is still shared with a snapshot
+   * @param block Index of the block about to be changed
+   */
+  private void ensureBlockWritable(int block) {
+    long[] bits = removedRows[block];
+    if (bits == null) {
+      removedRows[block] = new long[BLOCK_WORDS];
+    } else if (blockEpochs[block] != epoch) {
+      removedRows[block] = bits.clone();
+    }
+    blockEpochs[block] = epoch;
+  }
+
+  /**
+   * Function to find the mapped row holding a row index
+   * @param row Row index, below the number of live mapped rows
+   * @return index of the row in the mapped columns
+   */
+  private int mappedRow(int row) {
+    if (removedRows == null) {
+      return row;
+    }
+    // Descend the tree to the block holding the row: the number of blocks whose live rows all come before it
+    int block = 0;
+    int rank = row;
+    for (int step = Integer.highestOneBit(liveCounts.length - 1); step > 0; step >>>= 1) {
+      int node = block + step;
+      if (node < liveCounts.length && liveCounts[node] <= rank) {
+        block = node;
+        rank -= liveCounts[node];
+      }
+    }
+    long[] bits = removedRows[block];
+    int base = block << BLOCK_SHIFT;
+    if (bits == null) {
+      return base + rank;
+    }
+    // The rank-th live row of the block
+    for (int word = 0; ; word++) {
+      long live = ~bits[word];
+      int count = Long.bitCount(live);
+      if (rank < count) {
+        for (; rank > 0; rank--) {
+          live &= live - 1;
+        }
+        return base + (word << 6) + Long.numberOfTrailingZeros(live);
+      }
+      rank -= count;
+    }
+  }
+
+  private boolean isRemoved(int mapped) {
+    if (removedRows == null) {
+      return false;
+    }
+    long[] bits = removedRows[mapped >>> BLOCK_SHIFT];
+    return bits != null && (bits[(mapped >>> 6) & (BLOCK_WORDS - 1)] & (1L << mapped)) != 0;
+  }
+
+  @Override
+  public int indexOf(Transaction t) {
+    if (copied != null) {
+      return copied.indexOf(t);
+    }
+    if (t == null) {
+      return -1;
+    }
+    int code = t.getCategoryCode();
+    int live = 0;
+    for (int row = 0; row < mappedSize; row++) {
+      if (isRemoved(row)) {
+        continue;
+      }
+      if (dictionaryCodes[categoryCodes.get(row) & 0xFF] == code
+          && timestamps.get(row) == t.getEpochMillis()
+          && Double.compare(amounts.get(row), t.getAmount()) == 0) {
+        return live;
+      }
+      live++;
+    }
+    int row = appendStore.indexOf(t);
+    return row == -1 ? -1 : liveMapped + row;
+  }
+
+  @Override
+  public TransactionColumns snapshot() {
+    if (appendStore == null) {
+      return this;
+    }
+    if (copied != null) {
+      return copied.snapshot();
+    }
+    // The removed-row bitmap is now shared with the snapshot
+    epoch++;
+    return new MappedTransactionStore(this);
+  }
+
+  /**
+   * Function to start copying every row into an in-memory store on a background thread.
+   * The copy is made from a snapshot, so it does not hold up the changes made meanwhile, which are
+   * recorded and replayed on the copy by finishCompaction().
+   */
+  private void startCompaction() {
+    Compaction started = new Compaction();
+    TransactionColumns rows = snapshot();
+    compaction = started;
+    ForkJoinPool.commonPool().execute(() -> {
+      try {
+        ColumnarTransactionStore store = new ColumnarTransactionStore(rows.getNextId());
+        for (int row = 0; row < rows.size(); row++) {
+          store.add(rows.getTransaction(row), rows.getId(row));
+        }
+        started.result = store;
+      } finally {
+        started.done = true;
+      }
+    });
+  }
+
+  /**
+   * Function to switch to the in-memory copy once the background copy is done, before a change.
+   * Only the changes made during the copy are replayed, so the switch takes the same time whatever the size of the store.
+   */
+  private void finishCompaction() {
+    if (compaction == null || !compaction.done) {
+      return;
+    }
+    ColumnarTransactionStore store = compaction.result;
+    if (store != null) {
+      for (Change change : compaction.changes) {
+        if (change.rows == null) {
+          store.add(change.transaction, change.id);
+        } else {
+          store.removeAll(change.rows);
+        }
+      }
+      copied = store;
+    }
+    // A failed copy is retried by the next removal
+    compaction = null;
+  }
+
+  private int appendedRow(int row) {
+    if (row < 0) {
+      throw new IndexOutOfBoundsException("Index: " + row + ", Size: " + size());
+    }
+    return row - liveMapped;
+  }
+
+  private void checkWritable() {
+    if (appendStore == null) {
+      throw new UnsupportedOperationException("A snapshot cannot be modified.");
+    }
+  }
+
+  /**
+   * Function to write the buffer out when it cannot take the given number of bytes
+   */
+  private static void ensureRoom(FileChannel channel, ByteBuffer buffer, int length) throws IOException {
+    if (buffer.remaining() < length) {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+
+  private static long align(long position) {
+    return (position + Long.BYTES - 1) & ~(long) (Long.BYTES - 1);
+  }
+
+  /**
+   * A copy of the rows into memory, made in the background, and the changes made since it started
+   */
+  private static final class Compaction {
+    // Only used by the thread making changes
+    private final List<Change> changes = new ArrayList<>();
+    private volatile ColumnarTransactionStore result;
+    // Set after result, once the copy has finished or failed
+    private volatile boolean done;
+  }
+
+  /**
+   * A change made during a compaction: an added transaction and its id, or removed rows
+   */
+  private static final class Change {
+    private final Transaction transaction;
+    private final long id;
+    private final int[] rows;
+
+    Change(Transaction transaction, long id, int[] rows) {
+      this.transaction = transaction;
+      this.id = id;
+      this.rows = rows;
+    }
+  }
+
+}
@@ -0,0 +1,423 @@
+package model;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+/**
+ * Scans over the rows of the model that run in parallel on a fork-join pool (the common pool by default).
+ *
+ * When the columns are stored in chunks (see TransactionColumns.chunks()), the rows are split into
+ * tasks of whole chunks, at the real chunk boundaries: the predicate is compiled for each chunk and
+ * reads that chunk's arrays directly, so tasks share no lookup state. Chunks do not start at a multiple
+ * of 64 rows once rows have been removed, so the first and last words of a task's part of the result
+ * bitmap are merged with an atomic OR, and every other word is written by its task alone. Other
+ * columns, and the candidates of refine, are split into tasks of TASK_ROWS rows.
+ *
+ * Scans too small to gain from more threads (rows times the cost of the predicate below
+ * PARALLEL_THRESHOLD), or on a pool of one thread, run sequentially on the calling thread.
+ * Predicates are called from several threads at once, so they must only read the columns, as the
+ * predicates compiled by the filters do.
+ */
+public final class ParallelScan {
+
+  // Rows per task: up to four full chunks of the store, i.e. about 100 KB of amounts, codes and timestamps
+  static final int TASK_ROWS = 4 * ColumnarTransactionStore.CHUNK_SIZE;
+  private static final int TASK_WORDS = TASK_ROWS / 64;
+  // Smallest scan (in rows times cost) worth splitting across threads
+  static final long PARALLEL_THRESHOLD = 1 << 17;
+  // Atomic access to the words of a result bitmap that two tasks write to
+  private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+  private ParallelScan() {
+  }
+
+  /**
+   * @param rows Number of rows to be scanned
+   * @param cost Relative cost of checking one row, as returned by TransactionFilter.cost()
+   * @return whether a scan of the rows is split across threads
+   */
+  public static boolean isParallel(int rows, int cost) {
+    return isParallel(rows, cost, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * @param rows Number of rows to be scanned
+   * @param cost Relative cost of checking one row, as returned by TransactionFilter.cost()
+   * @param pool Pool the scan would run on
+   * @return whether a scan of the rows is split across the threads of the pool
+   */
+  public static boolean isParallel(int rows, int cost, ForkJoinPool pool) {
+    return pool.getParallelism() > 1 && (long) rows * Math.max(cost, 1) >= PARALLEL_THRESHOLD;
+  }
+
+  /**
+   * Function to find the rows matching a predicate that is compiled for the chunks of the columns
+   * @param columns Columnar view of the transactions
+   * @param cost Relative cost of checking one row
+   * @param compiler Function compiling the predicate for some columns, e.g. TransactionFilter::compile.
+   *     It is applied to each chunk, so the predicate must only depend on the row it checks
+   * @return bitmap of the matching row indexes
+   */
+  public static BitSet filterRows(TransactionColumns columns, int cost, Function<TransactionColumns, IntPredicate> compiler) {
+    return filterRows(columns, cost, compiler, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Function to find the rows matching a predicate that is compiled for the chunks of the columns
+   * @param columns Columnar view of the transactions
+   * @param cost Relative cost of checking one row
+   * @param compiler Function compiling the predicate for some columns (applied to each chunk)
+   * @param pool Pool to run the scan on
+   * @return bitmap of the matching row indexes
+   */
+  public static BitSet filterRows(TransactionColumns columns, int cost, Function<TransactionColumns, IntPredicate> compiler,
+      ForkJoinPool pool) {
+    List<ColumnChunk> chunks = columns.chunks();
+    if (chunks == null) {
+      return filterRows(columns.size(), cost, compiler.apply(columns), pool);
+    }
+    long[] words = new long[(columns.size() + 63) >>> 6];
+    if (isParallel(columns.size(), cost, pool)) {
+      pool.invoke(new ChunkScanTask(words, chunks, 0, chunks.size(), compiler));
+    } else if (!chunks.isEmpty()) {
+      scan(words, chunks, 0, chunks.size(), compiler);
+    }
+    return BitSet.valueOf(words);
+  }
+
+  /**
+   * Function to find the rows matching a predicate
+   * @param size Number of rows, checked from row 0
+   * @param cost Relative cost of checking one row
+   * @param predicate Predicate over the row indexes (called from several threads)
+   * @return bitmap of the matching row indexes
+   */
+  public static BitSet filterRows(int size, int cost, IntPredicate predicate) {
+    return filterRows(size, cost, predicate, ForkJoinPool.commonPool());
+  }
+
+  private static BitSet filterRows(int size, int cost, IntPredicate predicate, ForkJoinPool pool) {
+    long[] words = new long[(size + 63) >>> 6];
+    if (isParallel(size, cost, pool)) {
+      pool.invoke(new ScanTask(words, 0, words.length, size, predicate, null));
+    } else {
+      scan(words, 0, words.length, size, predicate, null);
+    }
+    return BitSet.valueOf(words);
+  }
+
+  /**
+   * Function to keep only the candidate rows that match a predicate
+   * @param candidates Bitmap of the candidate row indexes (not changed)
+   * @param cost Relative cost of checking one row
+   * @param predicate Predicate over the row indexes (called from several threads)
+   * @return bitmap of the candidates matching the predicate
+   */
+  public static BitSet refine(BitSet candidates, int cost, IntPredicate predicate) {
+    long[] candidateWords = candidates.toLongArray();
+    long[] words = new long[candidateWords.length];
+    if (isParallel(candidates.cardinality(), cost)) {
+      ForkJoinPool.commonPool().invoke(new ScanTask(words, 0, words.length, Integer.MAX_VALUE, predicate, candidateWords));
+    } else {
+      scan(words, 0, words.length, Integer.MAX_VALUE, predicate, candidateWords);
+    }
+    return BitSet.valueOf(words);
+  }
+
+  /**
+   * Function to add up the amounts of some rows with compensated summation.
+   * In parallel, every task sums its own rows and the partial sums are combined in row order, so the
+   * result does not depend on how the tasks are scheduled.
+   * @param columns Columnar view of the transactions
+   * @param rows Bitmap of the row indexes to add up
+   * @return total amount of the rows
+   */
+  public static double sum(TransactionColumns columns, BitSet rows) {
+    return sum(columns, rows, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Function to add up the amounts of some rows with compensated summation
+   * @param columns Columnar view of the transactions
+   * @param rows Bitmap of the row indexes to add up
+   * @param pool Pool to run the sum on
+   * @return total amount of the rows
+   */
+  public static double sum(TransactionColumns columns, BitSet rows, ForkJoinPool pool) {
+    long[] words = rows.toLongArray();
+    List<ColumnChunk> chunks = columns.chunks();
+    boolean parallel = isParallel(rows.cardinality(), 1, pool);
+    if (chunks == null) {
+      return parallel ? pool.invoke(new SumTask(columns, words, 0, words.length)).get() : sum(columns, words, 0, words.length).get();
+    }
+    if (chunks.isEmpty()) {
+      return 0;
+    }
+    return parallel ? pool.invoke(new ChunkSumTask(chunks, words, 0, chunks.size())).get() : sum(chunks, words, 0, chunks.size()).get();
+  }
+
+  /**
+   * Function to fill words of the result bitmap, 64 rows at a time
+   * @param words Result bitmap
+   * @param fromWord First word to fill
+   * @param toWord Word after the last one to fill
+   * @param size Number of rows
+   * @param predicate Predicate over the row indexes
+   * @param candidates Bitmap of the only rows to check, or null to check every row
+   */
+  private static void scan(long[] words, int fromWord, int toWord, int size, IntPredicate predicate, long[] candidates) {
+    for (int word = fromWord; word < toWord; word++) {
+      int base = word << 6;
+      long matches = 0;
+      if (candidates == null) {
+        int end = Math.min(base + 64, size);
+        for (int row = base; row < end; row++) {
+          if (predicate.test(row)) {
+            matches |= 1L << row;
+          }
+        }
+      } else {
+        for (long bits = candidates[word]; bits != 0; bits &= bits - 1) {
+          int row = base + Long.numberOfTrailingZeros(bits);
+          if (predicate.test(row)) {
+            matches |= 1L << row;
+          }
+        }
+      }
+      words[word] = matches;
+    }
+  }
+
+  /**
+   * Function to check the rows of consecutive chunks, compiling the predicate for each chunk
+   * @param words Result bitmap
+   * @param chunks Chunks of the columns
+   * @param fromChunk First chunk to check
+   * @param toChunk Chunk after the last one to check
+   * @param compiler Function compiling the predicate for a chunk
+   */
+  private static void scan(long[] words, List<ColumnChunk> chunks, int fromChunk, int toChunk,
+      Function<TransactionColumns, IntPredicate> compiler) {
+    int firstWord = chunks.get(fromChunk).getFirstRow() >>> 6;
+    int lastWord = (endRow(chunks, toChunk) - 1) >>> 6;
+    int word = firstWord;
+    long matches = 0;
+    for (int index = fromChunk; index < toChunk; index++) {
+      ColumnChunk chunk = chunks.get(index);
+      IntPredicate predicate = compiler.apply(chunk);
+      int firstRow = chunk.getFirstRow();
+      int chunkSize = chunk.size();
+      for (int offset = 0; offset < chunkSize; offset++) {
+        int row = firstRow + offset;
+        if (row >>> 6 != word) {
+          store(words, word, matches, firstWord, lastWord);
+          word = row >>> 6;
+          matches = 0;
+        }
+        if (predicate.test(offset)) {
+          matches |= 1L << row;
+        }
+      }
+    }
+    store(words, word, matches, firstWord, lastWord);
+  }
+
+  /**
+   * Function to write a word of the result bitmap; the first and last words of a task may also hold rows of the tasks next to it
+   */
+  private static void store(long[] words, int word, long matches, int firstWord, int lastWord) {
+    if (word == firstWord || word == lastWord) {
+      WORDS.getAndBitwiseOr(words, word, matches);
+    } else {
+      words[word] = matches;
+    }
+  }
+
+  private static CompensatedSum sum(List<ColumnChunk> chunks, long[] words, int fromChunk, int toChunk) {
+    CompensatedSum sum = new CompensatedSum();
+    for (int index = fromChunk; index < toChunk; index++) {
+      ColumnChunk chunk = chunks.get(index);
+      int firstRow = chunk.getFirstRow();
+      int endRow = firstRow + chunk.size();
+      int lastWord = Math.min((endRow - 1) >>> 6, words.length - 1);
+      for (int word = firstRow >>> 6; word <= lastWord; word++) {
+        int base = word << 6;
+        long bits = words[word];
+        // Only the rows of this chunk
+        if (base < firstRow) {
+          bits &= -1L << (firstRow - base);
+        }
+        if (endRow - base < 64) {
+          bits &= (1L << (endRow - base)) - 1;
+        }
+        for (; bits != 0; bits &= bits - 1) {
+          sum.add(chunk.getAmount(base + Long.numberOfTrailingZeros(bits) - firstRow));
+        }
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * @return the row after the last row of the chunk before toChunk
+   */
+  private static int endRow(List<ColumnChunk> chunks, int toChunk) {
+    ColumnChunk last = chunks.get(toChunk - 1);
+    return last.getFirstRow() + last.size();
+  }
+
+  /**
+   * @return whether a range of chunks is small enough for a single task
+   */
+  private static boolean isLeaf(List<ColumnChunk> chunks, int fromChunk, int toChunk) {
+    return toChunk - fromChunk == 1 || endRow(chunks, toChunk) - chunks.get(fromChunk).getFirstRow() <= TASK_ROWS;
+  }
+
+  private static CompensatedSum sum(TransactionColumns columns, long[] words, int fromWord, int toWord) {
+    CompensatedSum sum = new CompensatedSum();
+    for (int word = fromWord; word < toWord; word++) {
+      int base = word << 6;
+      for (long bits = words[word]; bits != 0; bits &= bits - 1) {
+        sum.add(columns.getAmount(base + Long.numberOfTrailingZeros(bits)));
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * @return the word splitting a range of words in two halves of whole tasks
+   */
+  private static int middleWord(int fromWord, int toWord) {
+    int tasks = (toWord - fromWord + TASK_WORDS - 1) / TASK_WORDS;
+    return fromWord + tasks / 2 * TASK_WORDS;
+  }
+
+  private static final class ScanTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final long[] words;
+    private final int fromWord;
+    private final int toWord;
+    private final int size;
+    private final IntPredicate predicate;
+    private final long[] candidates;
+
+    ScanTask(long[] words, int fromWord, int toWord, int size, IntPredicate predicate, long[] candidates) {
+      this.words = words;
+      this.fromWord = fromWord;
+      this.toWord = toWord;
+      this.size = size;
+      this.predicate = predicate;
+      this.candidates = candidates;
+    }
+
+    @Override
+    protected void compute() {
+      if (toWord - fromWord <= TASK_WORDS) {
+        scan(words, fromWord, toWord, size, predicate, candidates);
+        return;
+      }
+      int middle = middleWord(fromWord, toWord);
+      invokeAll(new ScanTask(words, fromWord, middle, size, predicate, candidates),
+          new ScanTask(words, middle, toWord, size, predicate, candidates));
+    }
+  }
+
+  private static final class ChunkScanTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final long[] words;
+    private final List<ColumnChunk> chunks;
+    private final int fromChunk;
+    private final int toChunk;
+    private final Function<TransactionColumns, IntPredicate> compiler;
+
+    ChunkScanTask(long[] words, List<ColumnChunk> chunks, int fromChunk, int toChunk, Function<TransactionColumns, IntPredicate> compiler) {
+      this.words = words;
+      this.chunks = chunks;
+      this.fromChunk = fromChunk;
+      this.toChunk = toChunk;
+      this.compiler = compiler;
+    }
+
+    @Override
+    protected void compute() {
+      if (fromChunk == toChunk) {
+        return;
+      }
+      if (isLeaf(chunks, fromChunk, toChunk)) {
+        scan(words, chunks, fromChunk, toChunk, compiler);
+        return;
+      }
+      int middle = (fromChunk + toChunk) >>> 1;
+      invokeAll(new ChunkScanTask(words, chunks, fromChunk, middle, compiler),
+          new ChunkScanTask(words, chunks, middle, toChunk, compiler));
+    }
+  }
+
+  private static final class ChunkSumTask extends RecursiveTask<CompensatedSum> {
+    private static final long serialVersionUID = 1L;
+
+    private final List<ColumnChunk> chunks;
+    private final long[] words;
+    private final int fromChunk;
+    private final int toChunk;
+
+    ChunkSumTask(List<ColumnChunk> chunks, long[] words, int fromChunk, int toChunk) {
+      this.chunks = chunks;
+      this.words = words;
+      this.fromChunk = fromChunk;
+      this.toChunk = toChunk;
+    }
+
+    @Override
+    protected CompensatedSum compute() {
+      if (isLeaf(chunks, fromChunk, toChunk)) {
+        return sum(chunks, words, fromChunk, toChunk);
+      }
+      int middle = (fromChunk + toChunk) >>> 1;
+      ChunkSumTask right = new ChunkSumTask(chunks, words, middle, toChunk);
+      right.fork();
+      CompensatedSum left = new ChunkSumTask(chunks, words, fromChunk, middle).compute();
+      left.add(right.join());
+      return left;
+    }
+  }
+
+  private static final class SumTask extends RecursiveTask<CompensatedSum> {
+    private static final long serialVersionUID = 1L;
+
+    private final TransactionColumns columns;
+    private final long[] words;
+    private final int fromWord;
+    private final int toWord;
+
+    SumTask(TransactionColumns columns, long[] words, int fromWord, int toWord) {
+      this.columns = columns;
+      this.words = words;
+      this.fromWord = fromWord;
+      this.toWord = toWord;
+    }
+
+    @Override
+    protected CompensatedSum compute() {
+      if (toWord - fromWord <= TASK_WORDS) {
+        return sum(columns, words, fromWord, toWord);
+      }
+      int middle = middleWord(fromWord, toWord);
+      SumTask right = new SumTask(columns, words, middle, toWord);
+      right.fork();
+      CompensatedSum left = new SumTask(columns, words, fromWord, middle).compute();
+      left.add(right.join());
+      return left;
+    }
+  }
+
+}
@@ -0,0 +1,168 @@
+package model.Persistence;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import model.MappedTransactionStore;
+import model.TransactionColumns;
+import model.Filter.TransactionFilter;
+
+/**
+ * Streaming exporter of transactions to CSV or to the binary snapshot format.
+ *
+ * Rows are read straight from the columns and encoded into one reusable direct buffer that is
+ * written to a FileChannel whenever it fills up, so an export runs in constant memory: neither
+ * Transaction objects nor table rows are created. Exports read an immutable snapshot of the model,
+ * so they can run in the background while the model keeps changing.
+ *
+ * CSV files hold one "amount,category,timestamp" line per row after a header line, with the
+ * timestamp in epoch milliseconds (Transaction.getTimestamp() only shows the minute), so that
+ * TransactionImporter reads every row back exactly.
+ * Binary files use the format of MappedTransactionStore and keep every value exactly; they can be
+ * opened without parsing with MappedTransactionStore.open.
+ */
+public class TransactionExporter {
+
+  /**
+   * Format of an exported file
+   */
+  public enum Format {
+    CSV,
+    BINARY;
+
+    /**
+     * Function to choose the format from the extension of a file
+     * @param file Exported file (.csv files are CSV, all others binary)
+     * @return the format of the file
+     */
+    public static Format forFile(Path file) {
+      return file.getFileName().toString().toLowerCase().endsWith(".csv") ? CSV : BINARY;
+    }
+  }
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final byte[] CSV_HEADER = "amount,category,timestamp\n".getBytes(StandardCharsets.US_ASCII);
+
+  // Background exports run one at a time on a daemon thread, so they never keep the application alive
+  private static final ExecutorService backgroundExports = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "transaction-export");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private TransactionExporter() {
+  }
+
+  /**
+   * Function to export every row
+   * @param columns Columnar view of the transactions (a snapshot, if the model may change meanwhile)
+   * @param file Exported file (replaced if it exists)
+   * @param format Format of the file
+   * @return number of exported rows
+   * @throws IOException if the file cannot be written
+   */
+  public static int export(TransactionColumns columns, Path file, Format format) throws IOException {
+    BitSet rows = new BitSet(columns.size());
+    rows.set(0, columns.size());
+    return export(columns, rows, file, format);
+  }
+
+  /**
+   * Function to export the rows matching a filter
+   * @param columns Columnar view of the transactions (a snapshot, if the model may change meanwhile)
+   * @param filter Filter selecting the rows to be exported
+   * @param file Exported file (replaced if it exists)
+   * @param format Format of the file
+   * @return number of exported rows
+   * @throws IOException if the file cannot be written
+   */
+  public static int export(TransactionColumns columns, TransactionFilter filter, Path file, Format format) throws IOException {
+    return export(columns, filter.filterRows(columns), file, format);
+  }
+
+  /**
+   * Function to export some rows
+   * @param columns Columnar view of the transactions (a snapshot, if the model may change meanwhile)
+   * @param rows Bitmap of the row indexes to be exported
+   * @param file Exported file (replaced if it exists)
+   * @param format Format of the file
+   * @return number of exported rows
+   * @throws IOException if the file cannot be written
+   */
+  public static int export(TransactionColumns columns, BitSet rows, Path file, Format format) throws IOException {
+    if (columns == null || rows == null || file == null || format == null) {
+      throw new IllegalArgumentException("Invalid export settings.");
+    }
+    if (format == Format.BINARY) {
+      MappedTransactionStore.write(columns, rows, file, 0);
+    } else {
+      writeCsv(columns, rows, file);
+    }
+    return rows.cardinality();
+  }
+
+  /**
+   * Function to run an export on the background export thread
+   * @param columns Columnar view of the transactions; it must not change, so pass a snapshot
+   * @param rows Bitmap of the row indexes to be exported (it must not change either)
+   * @param file Exported file (replaced if it exists)
+   * @param format Format of the file
+   * @return a future completed with the number of exported rows, or with the failure of the export
+   */
+  public static CompletableFuture<Integer> exportInBackground(TransactionColumns columns, BitSet rows, Path file, Format format) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return export(columns, rows, file, format);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }, backgroundExports);
+  }
+
+  private static void writeCsv(TransactionColumns columns, BitSet rows, Path file) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      buffer.put(CSV_HEADER);
+      for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+        // A line is at most a few dozen bytes (categories are at most 32 letters)
+        if (buffer.remaining() < 256) {
+          flush(channel, buffer);
+        }
+        putAscii(buffer, Double.toString(columns.getAmount(row)));
+        buffer.put((byte) ',');
+        putAscii(buffer, columns.getCategory(row));
+        buffer.put((byte) ',');
+        putAscii(buffer, Long.toString(columns.getTimestamp(row)));
+        buffer.put((byte) '\n');
+      }
+      flush(channel, buffer);
+    }
+  }
+
+  /**
+   * Function to append a string that only holds ASCII characters (numbers and category names)
+   */
+  private static void putAscii(ByteBuffer buffer, String text) {
+    for (int i = 0; i < text.length(); i++) {
+      buffer.put((byte) text.charAt(i));
+    }
+  }
+
+  private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+}
@@ -0,0 +1,323 @@
+package model.Persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+import model.Transaction;
+
+/**
+ * Bulk importer for CSV and TSV files (e.g. bank exports).
+ *
+ * Every line holds an amount, a category and optionally a timestamp, either in the format of
+ * Transaction.getTimestamp() or in epoch milliseconds; rows without a timestamp get the time of
+ * the import. Fields may be enclosed in double quotes (a doubled quote inside stands for one quote),
+ * but a field cannot span lines. A first line whose amount is not a number is taken as a header.
+ * Lines with an invalid amount or category are rejected and reported, the other lines are imported.
+ *
+ * The file is memory-mapped one window at a time, each window is split at line boundaries into
+ * chunks, and the chunks are parsed and validated in parallel on a fork-join pool. The parsed rows
+ * are handed to the caller in file order, in batches, so that the model and the view are updated
+ * once per batch instead of once per row. Memory use is bounded by the window, whatever the file size.
+ */
+public class TransactionImporter {
+
+  /**
+   * Outcome of an import
+   */
+  public static class ImportResult {
+    private final long importedCount;
+    private final long rejectedCount;
+    private final long[] rejectedLines;
+
+    ImportResult(long importedCount, long rejectedCount, long[] rejectedLines) {
+      this.importedCount = importedCount;
+      this.rejectedCount = rejectedCount;
+      this.rejectedLines = rejectedLines;
+    }
+
+    public long getImportedCount() {
+      return importedCount;
+    }
+
+    public long getRejectedCount() {
+      return rejectedCount;
+    }
+
+    /**
+     * @return the (1-based) numbers of the first rejected lines, at most MAX_REPORTED_LINES of them
+     */
+    public long[] getRejectedLines() {
+      return rejectedLines.clone();
+    }
+  }
+
+  public static final int DEFAULT_BATCH_SIZE = 1 << 16;
+  public static final int MAX_REPORTED_LINES = 100;
+
+  // Bytes mapped at a time, and the smallest chunk worth a parallel task
+  private static final int WINDOW_SIZE = 1 << 26;
+  private static final int MIN_CHUNK_SIZE = 1 << 16;
+
+  private final char separator;
+  private final ForkJoinPool pool;
+  private final int batchSize;
+
+  /**
+   * Constructor for an importer parsing on the common fork-join pool, with the default batch size
+   * @param separator Field separator, e.g. ',' or '\t'
+   */
+  public TransactionImporter(char separator) {
+    this(separator, ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * @param separator Field separator, e.g. ',' or '\t'
+   * @param pool Pool parsing the chunks of the file
+   * @param batchSize Number of rows handed to the caller at a time
+   */
+  public TransactionImporter(char separator, ForkJoinPool pool, int batchSize) {
+    if (separator == '"' || separator == '\n' || separator == '\r' || pool == null || batchSize <= 0) {
+      throw new IllegalArgumentException("Invalid importer settings.");
+    }
+    this.separator = separator;
+    this.pool = pool;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Function to create an importer for a file, choosing the separator from its extension
+   * @param file File to be imported (.tsv or .tab files are tab-separated, all others comma-separated)
+   * @return an importer for the file
+   */
+  public static TransactionImporter forFile(Path file) {
+    String name = file.getFileName().toString().toLowerCase();
+    return new TransactionImporter(name.endsWith(".tsv") || name.endsWith(".tab") ? '\t' : ',');
+  }
+
+  /**
+   * Function to import a file
+   * @param file File to be imported
+   * @param batchConsumer Receives the valid rows, in file order, in batches of at most the batch size
+   * @return the number of imported and rejected rows
+   * @throws IOException if the file cannot be read
+   */
+  public ImportResult importFile(Path file, Consumer<List<Transaction>> batchConsumer) throws IOException {
+    long importTime = System.currentTimeMillis();
+    long imported = 0;
+    long rejected = 0;
+    long[] rejectedLines = new long[MAX_REPORTED_LINES];
+    int reportedLines = 0;
+    List<Transaction> batch = new ArrayList<>(batchSize);
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long position = 0;
+      // Number of the first line of the next chunk
+      long firstLine = 1;
+      while (position < size) {
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+        int end = window.limit();
+        if (position + end < size) {
+          // Only parse complete lines; the rest of the window starts the next one
+          end = lastLineEnd(window, 0, end);
+          if (end == 0) {
+            throw new IOException("Line " + firstLine + " is too long to be imported.");
+          }
+        }
+
+        // Parse the chunks in parallel, and collect their rows in order while the later chunks are still being parsed
+        List<ForkJoinTask<ParsedChunk>> tasks = new ArrayList<>();
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, end / (pool.getParallelism() * 4) + 1);
+        for (int start = 0; start < end; ) {
+          int chunkEnd = start + chunkSize >= end ? end : lastLineEnd(window, start, start + chunkSize);
+          if (chunkEnd == start) {
+            // A line longer than the chunk size
+            chunkEnd = nextLineEnd(window, start + chunkSize, end);
+          }
+          int from = start;
+          int to = chunkEnd;
+          boolean mayHaveHeader = position == 0 && from == 0;
+          tasks.add(pool.submit(() -> parseChunk(window, from, to, mayHaveHeader, importTime)));
+          start = chunkEnd;
+        }
+
+        for (ForkJoinTask<ParsedChunk> task : tasks) {
+          ParsedChunk chunk = task.join();
+          for (int i = 0; i < Math.min(chunk.rejectedCount, MAX_REPORTED_LINES) && reportedLines < MAX_REPORTED_LINES; i++) {
+            rejectedLines[reportedLines++] = firstLine + chunk.rejectedLines[i];
+          }
+          rejected += chunk.rejectedCount;
+          for (Transaction t : chunk.transactions) {
+            batch.add(t);
+            if (batch.size() == batchSize) {
+              batchConsumer.accept(batch);
+              imported += batch.size();
+              batch = new ArrayList<>(batchSize);
+            }
+          }
+          firstLine += chunk.lineCount;
+        }
+        position += end;
+      }
+    }
+    if (!batch.isEmpty()) {
+      batchConsumer.accept(batch);
+      imported += batch.size();
+    }
+    return new ImportResult(imported, rejected, Arrays.copyOf(rejectedLines, reportedLines));
+  }
+
+  /**
+   * Function to parse and validate the complete lines between two offsets of a window
+   * @param mayHaveHeader Whether the chunk starts the file, so that its first line may be a header
+   * @param importTime Timestamp of the rows without one
+   */
+  private ParsedChunk parseChunk(ByteBuffer window, int from, int to, boolean mayHaveHeader, long importTime) {
+    ParsedChunk chunk = new ParsedChunk();
+    List<String> fields = new ArrayList<>(3);
+    int lineStart = from;
+    while (lineStart < to) {
+      int lineEnd = nextLineEnd(window, lineStart, to);
+      int contentEnd = lineEnd;
+      while (contentEnd > lineStart && (window.get(contentEnd - 1) == '\n' || window.get(contentEnd - 1) == '\r')) {
+        contentEnd--;
+      }
+      int line = chunk.lineCount++;
+      if (contentEnd > lineStart) {
+        Transaction t = parseLine(window, lineStart, contentEnd, fields, importTime);
+        if (t != null) {
+          chunk.transactions.add(t);
+        } else if (!(mayHaveHeader && line == 0 && isHeader(fields))) {
+          chunk.reject(line);
+        }
+      }
+      lineStart = lineEnd;
+    }
+    return chunk;
+  }
+
+  /**
+   * @return the transaction of the line, or null if the line is not a valid row
+   */
+  private Transaction parseLine(ByteBuffer window, int start, int end, List<String> fields, long importTime) {
+    if (!splitFields(window, start, end, fields) || fields.size() < 2 || fields.size() > 3) {
+      return null;
+    }
+    try {
+      double amount = Double.parseDouble(fields.get(0).trim());
+      long epochMillis = fields.size() == 3 ? parseTime(fields.get(2).trim()) : importTime;
+      return Transaction.restore(amount, fields.get(1).trim(), epochMillis);
+    } catch (IllegalArgumentException | ParseException e) {
+      // Unreadable number or timestamp, or invalid amount or category
+      return null;
+    }
+  }
+
+  private static long parseTime(String text) throws ParseException {
+    boolean digits = !text.isEmpty();
+    for (int i = 0; i < text.length() && digits; i++) {
+      digits = Character.isDigit(text.charAt(i));
+    }
+    return digits ? Long.parseLong(text) : Transaction.parseTimestamp(text);
+  }
+
+  private static boolean isHeader(List<String> fields) {
+    if (fields.isEmpty()) {
+      return false;
+    }
+    try {
+      Double.parseDouble(fields.get(0).trim());
+      return false;
+    } catch (NumberFormatException e) {
+      return true;
+    }
+  }
+
+  /**
+   * Function to split a line into its fields, removing the quotes
+   * @return false if a quoted field is not closed
+   */
+  private boolean splitFields(ByteBuffer window, int start, int end, List<String> fields) {
+    fields.clear();
+    byte[] field = new byte[end - start];
+    int length = 0;
+    boolean quoted = false;
+    for (int i = start; i < end; i++) {
+      byte b = window.get(i);
+      if (quoted) {
+        if (b != '"') {
+          field[length++] = b;
+        } else if (i + 1 < end && window.get(i + 1) == '"') {
+          field[length++] = '"';
+          i++;
+        } else {
+          quoted = false;
+        }
+      } else if (b == '"') {
+        quoted = true;
+      } else if (b == separator) {
+        fields.add(new String(field, 0, length, StandardCharsets.UTF_8));
+        length = 0;
+      } else {
+        field[length++] = b;
+      }
+    }
+    fields.add(new String(field, 0, length, StandardCharsets.UTF_8));
+    return !quoted;
+  }
+
+  /**
+   * @return the offset just after the last line break between the given offsets, or from if there is none
+   */
+  private static int lastLineEnd(ByteBuffer window, int from, int before) {
+    for (int i = before - 1; i >= from; i--) {
+      if (window.get(i) == '\n') {
+        return i + 1;
+      }
+    }
+    return from;
+  }
+
+  /**
+   * @return the offset just after the first line break at or after the given offset, or limit if there is none
+   */
+  private static int nextLineEnd(ByteBuffer window, int from, int limit) {
+    for (int i = from; i < limit; i++) {
+      if (window.get(i) == '\n') {
+        return i + 1;
+      }
+    }
+    return limit;
+  }
+
+  /**
+   * Rows parsed from one chunk of the file
+   */
+  private static class ParsedChunk {
+    final List<Transaction> transactions = new ArrayList<>();
+    int lineCount;
+    // Line numbers within the chunk (0-based) of the first rejected lines
+    final int[] rejectedLines = new int[MAX_REPORTED_LINES];
+    int rejectedCount;
+
+    void reject(int line) {
+      if (rejectedCount < MAX_REPORTED_LINES) {
+        rejectedLines[rejectedCount] = line;
+      }
+      rejectedCount++;
+    }
+  }
+
+}
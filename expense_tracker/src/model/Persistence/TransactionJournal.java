@@ -0,0 +1,844 @@
+package model.Persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import model.CategoryDictionary;
+import model.ColumnarTransactionStore;
+import model.MappedTransactionStore;
+import model.Transaction;
+import model.TransactionColumns;
+import model.TransactionStore;
+
+/**
+ * Write-ahead, append-only journal of the changes made to the transactions.
+ *
+ * Every add and remove is appended to the journal as a small binary record before it is
+ * applied to the store. Records are collected in a buffer and written to the file in groups
+ * (group commit); the SyncPolicy decides when they are forced to disk.
+ *
+ * The journal only holds the changes made since the last snapshot: when it holds at least as many
+ * records as there are live transactions, it is compacted on a background thread by writing every
+ * live transaction to a memory-mapped snapshot file (see MappedTransactionStore) and starting a new
+ * journal. On startup the snapshot is mapped, without reading its rows, and the journal is replayed
+ * on top of it.
+ *
+ * Every change is journaled and applied to the store under the journal's lock, so the store can be
+ * snapshotted between two changes. Compaction writes such a snapshot without holding the lock, while
+ * changes go on; the new journal then starts with the records written after the snapshot was taken.
+ * Snapshot and journal carry a generation number: the new journal replaces the old one before the new
+ * snapshot replaces the old one, and a crash in between is finished on the next start.
+ *
+ * File layout: a 4-byte magic number and the 8-byte generation, followed by records. Each record
+ * is a type byte, a payload and a CRC32 of the type and payload. A batch of adds or removes made as
+ * one change is a single record (a row count followed by the rows), written with a single commit, so
+ * a batch is replayed whole or not at all. Replay stops at the first incomplete or damaged record
+ * (e.g. a write torn by a crash) and the file is truncated there.
+ * A record that is intact but cannot be applied (e.g. the removal of a row that does not exist)
+ * fails the replay with an IOException naming its offset, and the file is left untouched.
+ */
+public class TransactionJournal implements Closeable {
+
+  /**
+   * When the journal forces its writes to disk.
+   */
+  public enum SyncPolicy {
+    // Force after every record: nothing is lost on a crash, but every change waits for the disk
+    EVERY_WRITE,
+    // Write and force the buffered records together at a fixed interval (group commit);
+    // a crash loses at most the changes of the last interval
+    GROUP_COMMIT,
+    // Write the buffered records at the interval and let the operating system decide when they reach the disk
+    NO_SYNC
+  }
+
+  private static final int MAGIC = 0x45544A32; // "ETJ2"
+  private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+  // Record types and payload sizes
+  private static final byte CATEGORY = 1; // code (1 byte), name length (1 byte), name
+  private static final byte ADD = 2;      // amount (8 bytes), epoch millis (8 bytes), category code (1 byte)
+  private static final byte REMOVE = 3;   // row index (4 bytes)
+  private static final byte ADD_BATCH = 4;    // row count (4 bytes), then the payload of an add record per row
+  private static final byte REMOVE_BATCH = 5; // row count (4 bytes), then the row indexes (4 bytes each, ascending)
+  private static final int ADD_PAYLOAD = 17;
+  private static final int REMOVE_PAYLOAD = 4;
+  private static final int COUNT_SIZE = 4;
+  private static final int CRC_SIZE = 4;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 10;
+  // The journal is compacted once it holds this many (and at least as many) records as live transactions
+  private static final long MIN_COMPACTION_RECORDS = 4096;
+
+  private final Path file;
+  private final Path snapshotFile;
+  // Generation of the snapshot the journal applies to (0 before the first snapshot)
+  private long generation;
+  private final SyncPolicy policy;
+  private FileChannel channel;
+  private final ByteBuffer buffer;
+  private final CRC32 crc;
+  // Category name -> code used in this journal file
+  private final Map<String, Integer> categoryCodes;
+  // Number of add and remove records in the journal file (and its buffer) since the snapshot
+  private long records;
+  // Records were written to the channel but not forced yet
+  private boolean unforced;
+  // Position of the batch record being written, in the buffer returned by reserveBatch
+  private int batchStart;
+  private final ScheduledExecutorService committer;
+  // Runs the compactions, away from the threads making changes
+  private final ExecutorService compactor;
+  // Only one compaction at a time
+  private final Object compactionLock = new Object();
+  private boolean compactionScheduled;
+  // Failure of a background commit or compaction, reported by the next change
+  private IOException commitFailure;
+  private final JournaledStore store;
+
+  /**
+   * Function to open (or create) a journal with the default group-commit interval
+   * @param file Journal file
+   * @param policy When the journal forces its writes to disk
+   * @return the opened journal, with its transactions replayed
+   * @throws IOException if the file cannot be read or written
+   */
+  public static TransactionJournal open(Path file, SyncPolicy policy) throws IOException {
+    return open(file, policy, DEFAULT_COMMIT_INTERVAL_MILLIS);
+  }
+
+  /**
+   * Function to open (or create) a journal
+   * @param file Journal file
+   * @param policy When the journal forces its writes to disk
+   * @param commitIntervalMillis Interval of the group commits (ignored with EVERY_WRITE)
+   * @return the opened journal, with its transactions replayed
+   * @throws IOException if the file cannot be read or written
+   */
+  public static TransactionJournal open(Path file, SyncPolicy policy, long commitIntervalMillis) throws IOException {
+    if (file == null || policy == null || commitIntervalMillis <= 0) {
+      throw new IllegalArgumentException("Invalid journal settings.");
+    }
+    return new TransactionJournal(file, policy, commitIntervalMillis);
+  }
+
+  private TransactionJournal(Path file, SyncPolicy policy, long commitIntervalMillis) throws IOException {
+    this.file = file;
+    this.snapshotFile = file.resolveSibling(file.getFileName() + ".snapshot");
+    this.policy = policy;
+    this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    this.crc = new CRC32();
+    this.categoryCodes = new HashMap<>();
+
+    finishCompaction(file, snapshotFile);
+    TransactionStore replayed;
+    if (Files.exists(snapshotFile)) {
+      MappedTransactionStore mapped = MappedTransactionStore.open(snapshotFile);
+      generation = mapped.getGeneration();
+      replayed = mapped;
+    } else {
+      replayed = new ColumnarTransactionStore();
+    }
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    long validLength;
+    try {
+      validLength = replay(replayed);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    if (validLength == 0) {
+      buffer.putInt(MAGIC).putLong(generation);
+      validLength = HEADER_SIZE;
+      flushBuffer();
+      channel.force(false);
+    }
+    // Drop a torn tail left by a crash, and append after the last good record
+    if (validLength < channel.size()) {
+      channel.truncate(validLength);
+    }
+    channel.position(validLength);
+    this.store = new JournaledStore(replayed);
+
+    if (policy == SyncPolicy.EVERY_WRITE) {
+      committer = null;
+    } else {
+      committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "transaction-journal-commit");
+        thread.setDaemon(true);
+        return thread;
+      });
+      committer.scheduleWithFixedDelay(this::backgroundCommit, commitIntervalMillis, commitIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+    compactor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "transaction-journal-compact");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Function to complete a compaction stopped by a crash, before the files are opened.
+   * The new snapshot is written first but only replaces the old one once the new journal has replaced
+   * the old journal: if the journal has the generation of the new snapshot, the snapshot is moved into
+   * place, and otherwise the old snapshot and journal still hold every change and the new snapshot is dropped.
+   */
+  private static void finishCompaction(Path file, Path snapshotFile) throws IOException {
+    Path snapshotCopy = compactedFile(snapshotFile);
+    if (!Files.exists(snapshotCopy)) {
+      return;
+    }
+    long snapshotGeneration = readGeneration(snapshotCopy);
+    if (snapshotGeneration >= 0 && Files.exists(file) && readGeneration(file) == snapshotGeneration) {
+      Files.move(snapshotCopy, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } else {
+      Files.delete(snapshotCopy);
+    }
+  }
+
+  /**
+   * Function to read the generation of a journal or snapshot file, which both store it right after their magic number
+   * @return the generation, or -1 if the file is too short to have one
+   */
+  private static long readGeneration(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+        // Read the whole header
+      }
+      return header.hasRemaining() ? -1 : header.getLong(Integer.BYTES);
+    }
+  }
+
+  /**
+   * @return the file a compaction writes before moving it to the given name
+   */
+  private static Path compactedFile(Path file) {
+    return file.resolveSibling(file.getFileName() + ".compact");
+  }
+
+  /**
+   * @return the store holding the replayed transactions; every change made through it is journaled
+   */
+  public TransactionStore getStore() {
+    return store;
+  }
+
+  /**
+   * Function to write and force every buffered record now, whatever the policy
+   * @throws IOException if the records cannot be written
+   */
+  public synchronized void commit() throws IOException {
+    flushBuffer();
+    if (unforced) {
+      channel.force(false);
+      unforced = false;
+    }
+  }
+
+  /**
+   * Function to write every live transaction to a new snapshot and start a new journal with the changes made since.
+   * The rows are written from a snapshot of the store, while changes go on.
+   * @throws IOException if the snapshot or the journal cannot be written
+   */
+  public void compact() throws IOException {
+    synchronized (compactionLock) {
+      TransactionColumns columns;
+      long cutoff;
+      long cutoffRecords;
+      long newGeneration;
+      synchronized (this) {
+        if (!channel.isOpen()) {
+          return;
+        }
+        // Everything journaled so far is in the snapshot, and everything after the cutoff is not
+        flushBuffer();
+        cutoff = channel.position();
+        cutoffRecords = records;
+        columns = store.store.snapshot();
+        newGeneration = generation + 1;
+      }
+      Path snapshotCopy = compactedFile(snapshotFile);
+      MappedTransactionStore.write(columns, snapshotCopy, newGeneration);
+      synchronized (this) {
+        if (!channel.isOpen()) {
+          Files.deleteIfExists(snapshotCopy);
+          return;
+        }
+        replaceJournal(cutoff, newGeneration);
+        // A store still mapping the old snapshot keeps reading it: replacing the file does not change its contents
+        Files.move(snapshotCopy, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        generation = newGeneration;
+        records -= cutoffRecords;
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (committer != null) {
+      committer.shutdown();
+      try {
+        committer.awaitTermination(1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    // A compaction still writing its snapshot gives up once the journal is closed
+    compactor.shutdown();
+    synchronized (this) {
+      if (channel.isOpen()) {
+        commit();
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * Function to read the journal file into a store
+   * @param target Store receiving the replayed transactions
+   * @return length of the valid part of the file (0 for a new, empty file or a journal older than the snapshot)
+   * @throws IOException if the file cannot be read, is not a journal, does not match the snapshot
+   *     or holds an intact record that cannot be applied
+   */
+  private long replay(TransactionStore target) throws IOException {
+    long size = channel.size();
+    if (size < HEADER_SIZE) {
+      return 0;
+    }
+    MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    if (data.getInt() != MAGIC) {
+      throw new IOException("Not a transaction journal: " + file);
+    }
+    long journalGeneration = data.getLong();
+    if (journalGeneration < generation) {
+      // Compaction wrote the snapshot but stopped before replacing the journal: the snapshot already holds these changes
+      return 0;
+    }
+    if (journalGeneration > generation) {
+      throw new IOException("The transaction journal does not match its snapshot: " + file);
+    }
+
+    String[] categoryNames = new String[256];
+    long validLength = data.position();
+    while (data.hasRemaining()) {
+      int start = data.position();
+      byte type = data.get();
+      int payload;
+      if (type == CATEGORY) {
+        payload = data.remaining() < 2 ? -1 : 2 + (data.get(start + 2) & 0xFF);
+      } else if (type == ADD) {
+        payload = ADD_PAYLOAD;
+      } else if (type == REMOVE) {
+        payload = REMOVE_PAYLOAD;
+      } else if (type == ADD_BATCH || type == REMOVE_BATCH) {
+        payload = data.remaining() < COUNT_SIZE ? -1 : batchPayload(type, data.getInt(start + 1));
+      } else {
+        break;
+      }
+      if (payload < 0 || data.remaining() < payload + CRC_SIZE || !checksumMatches(data, start, 1 + payload)) {
+        break;
+      }
+
+      if (type == CATEGORY) {
+        int code = data.get() & 0xFF;
+        byte[] name = new byte[data.get() & 0xFF];
+        data.get(name);
+        categoryNames[code] = new String(name, StandardCharsets.UTF_8);
+        categoryCodes.put(categoryNames[code], code);
+        // Categories registered in an earlier session have to be known before their rows are restored
+        try {
+          CategoryDictionary.register(categoryNames[code]);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+          throw unappliedRecord(start, "its category cannot be registered", e);
+        }
+      } else if (type == ADD) {
+        double amount = data.getDouble();
+        long epochMillis = data.getLong();
+        String category = categoryNames[data.get() & 0xFF];
+        if (category == null) {
+          throw unappliedRecord(start, "its category is not defined", null);
+        }
+        try {
+          target.add(Transaction.restore(amount, category, epochMillis));
+        } catch (IllegalArgumentException e) {
+          throw unappliedRecord(start, "the transaction is invalid", e);
+        }
+        records++;
+      } else if (type == REMOVE) {
+        int row = data.getInt();
+        if (row < 0 || row >= target.size()) {
+          throw unappliedRecord(start, "row " + row + " does not exist", null);
+        }
+        target.remove(row);
+        records++;
+      } else if (type == ADD_BATCH) {
+        // Every row is checked before any is added, so the batch is applied whole
+        int count = data.getInt();
+        List<Transaction> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          double amount = data.getDouble();
+          long epochMillis = data.getLong();
+          String category = categoryNames[data.get() & 0xFF];
+          if (category == null) {
+            throw unappliedRecord(start, "the category of row " + i + " is not defined", null);
+          }
+          try {
+            batch.add(Transaction.restore(amount, category, epochMillis));
+          } catch (IllegalArgumentException e) {
+            throw unappliedRecord(start, "transaction " + i + " is invalid", e);
+          }
+        }
+        target.addAll(batch);
+        records += count;
+      } else {
+        int count = data.getInt();
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) {
+          rows[i] = data.getInt();
+          if (rows[i] < 0 || rows[i] >= target.size() || (i > 0 && rows[i] <= rows[i - 1])) {
+            throw unappliedRecord(start, "row " + rows[i] + " does not exist or is out of order", null);
+          }
+        }
+        target.removeAll(rows);
+        records += count;
+      }
+      data.position(data.position() + CRC_SIZE);
+      validLength = data.position();
+    }
+    return validLength;
+  }
+
+  /**
+   * @return length of the payload of a batch record of the given row count, or -1 if the count cannot be right
+   */
+  private static int batchPayload(byte type, int count) {
+    long length = COUNT_SIZE + (long) count * (type == ADD_BATCH ? ADD_PAYLOAD : REMOVE_PAYLOAD);
+    return count <= 0 || length > Integer.MAX_VALUE - 1 - CRC_SIZE ? -1 : (int) length;
+  }
+
+  /**
+   * Function to report an intact record that cannot be replayed: unlike a torn tail, it is not dropped,
+   * since the records after it are intact too
+   */
+  private IOException unappliedRecord(int offset, String reason, Exception cause) {
+    return new IOException("The transaction journal record at offset " + offset + " cannot be replayed (" + reason + "): " + file, cause);
+  }
+
+  private boolean checksumMatches(ByteBuffer data, int start, int length) {
+    ByteBuffer record = data.duplicate();
+    record.limit(start + length).position(start);
+    crc.reset();
+    crc.update(record);
+    return data.getInt(start + length) == (int) crc.getValue();
+  }
+
+  private synchronized void logAdd(Transaction t) throws IOException {
+    checkCommitFailure();
+    int code = categoryCode(t.getCategory());
+    int start = reserve(1 + ADD_PAYLOAD + CRC_SIZE);
+    buffer.put(ADD).putDouble(t.getAmount()).putLong(t.getEpochMillis()).put((byte) code);
+    endRecord(start);
+    records++;
+  }
+
+  private synchronized void logRemove(int row) throws IOException {
+    checkCommitFailure();
+    int start = reserve(1 + REMOVE_PAYLOAD + CRC_SIZE);
+    buffer.put(REMOVE).putInt(row);
+    endRecord(start);
+    records++;
+  }
+
+  /**
+   * Function to journal several adds made as one change, as a single record
+   */
+  private synchronized void logAddAll(Collection<Transaction> transactions) throws IOException {
+    checkCommitFailure();
+    // The categories are defined before the record, which only holds their codes
+    int[] codes = new int[transactions.size()];
+    int i = 0;
+    for (Transaction t : transactions) {
+      codes[i++] = categoryCode(t.getCategory());
+    }
+    ByteBuffer record = reserveBatch(ADD_BATCH, codes.length);
+    i = 0;
+    for (Transaction t : transactions) {
+      record.putDouble(t.getAmount()).putLong(t.getEpochMillis()).put((byte) codes[i++]);
+    }
+    endBatch(record);
+    records += codes.length;
+  }
+
+  /**
+   * Function to journal several removes made as one change, as a single record
+   * @param rows Row indexes, distinct and in ascending order
+   */
+  private synchronized void logRemoveAll(int[] rows) throws IOException {
+    checkCommitFailure();
+    ByteBuffer record = reserveBatch(REMOVE_BATCH, rows.length);
+    for (int row : rows) {
+      record.putInt(row);
+    }
+    endBatch(record);
+    records += rows.length;
+  }
+
+  /**
+   * Function to start a batch record, in the buffer if it fits there and otherwise in a buffer of its own
+   * (written after the buffered records)
+   * @return the buffer to write the rows to, positioned after the type and the row count
+   */
+  private ByteBuffer reserveBatch(byte type, int count) throws IOException {
+    int length = 1 + batchPayload(type, count) + CRC_SIZE;
+    ByteBuffer record;
+    if (length <= BUFFER_SIZE) {
+      reserve(length);
+      record = buffer;
+    } else {
+      flushBuffer();
+      record = ByteBuffer.allocate(length);
+    }
+    batchStart = record.position();
+    return record.put(type).putInt(count);
+  }
+
+  private void endBatch(ByteBuffer record) throws IOException {
+    writeChecksum(record, batchStart);
+    if (record != buffer) {
+      record.flip();
+      while (record.hasRemaining()) {
+        channel.write(record);
+      }
+      unforced = true;
+    }
+    if (policy == SyncPolicy.EVERY_WRITE) {
+      commit();
+    }
+  }
+
+  /**
+   * Function to look up the journal code of a category, defining it in the journal the first time it is used
+   */
+  private int categoryCode(String category) throws IOException {
+    Integer code = categoryCodes.get(category);
+    if (code != null) {
+      return code;
+    }
+    byte[] name = category.getBytes(StandardCharsets.UTF_8);
+    if (categoryCodes.size() == 256 || name.length > 255) {
+      throw new IOException("The category cannot be journaled: " + category);
+    }
+    int newCode = categoryCodes.size();
+    int start = reserve(3 + name.length + CRC_SIZE);
+    buffer.put(CATEGORY).put((byte) newCode).put((byte) name.length).put(name);
+    // A category is always defined right before the add record using it, which completes the write
+    writeChecksum(buffer, start);
+    categoryCodes.put(category, newCode);
+    return newCode;
+  }
+
+  /**
+   * Function to make room for a record in the buffer
+   * @return position of the record in the buffer
+   */
+  private int reserve(int length) throws IOException {
+    if (buffer.remaining() < length) {
+      flushBuffer();
+    }
+    return buffer.position();
+  }
+
+  private void endRecord(int start) throws IOException {
+    writeChecksum(buffer, start);
+    if (policy == SyncPolicy.EVERY_WRITE) {
+      commit();
+    }
+  }
+
+  /**
+   * Function to append the CRC32 of the record starting at the given position of a buffer
+   */
+  private void writeChecksum(ByteBuffer target, int start) {
+    ByteBuffer record = target.duplicate();
+    record.limit(target.position()).position(start);
+    crc.reset();
+    crc.update(record);
+    target.putInt((int) crc.getValue());
+  }
+
+  private void flushBuffer() throws IOException {
+    if (buffer.position() == 0) {
+      return;
+    }
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+    unforced = true;
+  }
+
+  private synchronized void backgroundCommit() {
+    try {
+      if (!channel.isOpen()) {
+        return;
+      }
+      if (policy == SyncPolicy.GROUP_COMMIT) {
+        commit();
+      } else {
+        flushBuffer();
+      }
+    } catch (IOException e) {
+      commitFailure = e;
+    }
+  }
+
+  private void checkCommitFailure() throws IOException {
+    if (commitFailure != null) {
+      IOException failure = commitFailure;
+      commitFailure = null;
+      throw failure;
+    }
+  }
+
+  /**
+   * Function to start a compaction in the background once the journal is about as long as the store
+   * (writing the snapshot reads every row). Called with the journal's lock held.
+   */
+  private void maybeCompact(TransactionColumns columns) {
+    if (!compactionScheduled && records >= MIN_COMPACTION_RECORDS && records >= columns.size()) {
+      compactionScheduled = true;
+      compactor.execute(this::backgroundCompact);
+    }
+  }
+
+  private void backgroundCompact() {
+    try {
+      compact();
+    } catch (IOException e) {
+      synchronized (this) {
+        commitFailure = e;
+      }
+    } finally {
+      synchronized (this) {
+        compactionScheduled = false;
+      }
+    }
+  }
+
+  /**
+   * Function to replace the journal with a new one of the given generation, holding the definitions
+   * of the categories in use and every record written after the cutoff. The new file is written next
+   * to the journal and atomically moved over it.
+   * @param cutoff Position in the journal of the first record that is not in the new snapshot
+   * @param newGeneration Generation of the new snapshot
+   */
+  private void replaceJournal(long cutoff, long newGeneration) throws IOException {
+    flushBuffer();
+    long end = channel.position();
+    Path compacted = compactedFile(file);
+    try (FileChannel newJournal = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      // The records after the cutoff may use categories defined before it
+      String[] names = new String[categoryCodes.size()];
+      categoryCodes.forEach((name, code) -> names[code] = name);
+      buffer.putInt(MAGIC).putLong(newGeneration);
+      for (int code = 0; code < names.length; code++) {
+        byte[] name = names[code].getBytes(StandardCharsets.UTF_8);
+        if (buffer.remaining() < 3 + name.length + CRC_SIZE) {
+          writeBuffer(newJournal);
+        }
+        int start = buffer.position();
+        buffer.put(CATEGORY).put((byte) code).put((byte) name.length).put(name);
+        writeChecksum(buffer, start);
+      }
+      writeBuffer(newJournal);
+      for (long position = cutoff; position < end; ) {
+        position += channel.transferTo(position, end - position, newJournal);
+      }
+      newJournal.force(false);
+    }
+    channel.close();
+    Files.move(compacted, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    channel.position(channel.size());
+    unforced = false;
+  }
+
+  /**
+   * Function to write the buffered bytes to another file than the journal
+   */
+  private void writeBuffer(FileChannel target) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      target.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * The store handed out by the journal: every change is journaled before it is applied, and both
+   * happen under the journal's lock, so a compaction never sees a change journaled but not applied.
+   */
+  private class JournaledStore implements TransactionStore {
+    private final TransactionStore store;
+
+    JournaledStore(TransactionStore store) {
+      this.store = store;
+    }
+
+    @Override
+    public void add(Transaction t) {
+      if (t == null) {
+        throw new IllegalArgumentException("The new transaction must be non-null.");
+      }
+      try {
+        synchronized (TransactionJournal.this) {
+          logAdd(t);
+          store.add(t);
+          maybeCompact(store);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void addAll(Collection<Transaction> transactions) {
+      if (transactions.contains(null)) {
+        throw new IllegalArgumentException("The new transactions must be non-null.");
+      }
+      if (transactions.isEmpty()) {
+        return;
+      }
+      try {
+        synchronized (TransactionJournal.this) {
+          logAddAll(transactions);
+          store.addAll(transactions);
+          maybeCompact(store);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void remove(int row) {
+      if (row < 0 || row >= store.size()) {
+        throw new IndexOutOfBoundsException("Index: " + row + ", Size: " + store.size());
+      }
+      try {
+        synchronized (TransactionJournal.this) {
+          logRemove(row);
+          store.remove(row);
+          maybeCompact(store);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void removeAll(int[] rows) {
+      if (rows.length == 0) {
+        return;
+      }
+      if (rows[0] < 0 || rows[rows.length - 1] >= store.size()) {
+        throw new IndexOutOfBoundsException("Index: " + rows[rows.length - 1] + ", Size: " + store.size());
+      }
+      try {
+        synchronized (TransactionJournal.this) {
+          logRemoveAll(rows);
+          store.removeAll(rows);
+          maybeCompact(store);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public int indexOf(Transaction t) {
+      return store.indexOf(t);
+    }
+
+    @Override
+    public TransactionColumns snapshot() {
+      // Taking a snapshot changes the copy-on-write state of the store, like a change does
+      synchronized (TransactionJournal.this) {
+        return store.snapshot();
+      }
+    }
+
+    @Override
+    public int size() {
+      return store.size();
+    }
+
+    @Override
+    public double getAmount(int row) {
+      return store.getAmount(row);
+    }
+
+    @Override
+    public int getCategoryCode(int row) {
+      return store.getCategoryCode(row);
+    }
+
+    @Override
+    public String getCategory(int row) {
+      return store.getCategory(row);
+    }
+
+    @Override
+    public long getTimestamp(int row) {
+      return store.getTimestamp(row);
+    }
+
+    @Override
+    public long getId(int row) {
+      return store.getId(row);
+    }
+
+    @Override
+    public int rowOf(long id) {
+      return store.rowOf(id);
+    }
+
+    @Override
+    public long getNextId() {
+      return store.getNextId();
+    }
+
+    @Override
+    public int findCategoryCode(String category) {
+      return store.findCategoryCode(category);
+    }
+
+    @Override
+    public Transaction getTransaction(int row) {
+      return store.getTransaction(row);
+    }
+  }
+
+}
@@ -2,18 +2,49 @@ package model;
 
 import controller.InputValidation;
 
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 
 public class Transaction {
 
+  /**
+   * @deprecated SimpleDateFormat is not thread-safe, so this instance must not be shared by several threads;
+   *     use formatTimestamp() and parseTimestamp(), or TIMESTAMP_FORMATTER, instead
+   */
+  @Deprecated
   public static final SimpleDateFormat dateFormatter = new SimpleDateFormat("dd-MM-yyyy HH:mm");
+
+  /**
+   * Time zone timestamps are shown in
+   */
+  public static final ZoneId TIMESTAMP_ZONE = ZoneId.systemDefault();
+
+  // DateTimeFormatter is immutable, so it can be shared by every thread
+  public static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm").withZone(TIMESTAMP_ZONE);
+
+  // The format has minute resolution, so the text of recently formatted minutes is cached
+  // (indexed by epoch minute; entries are immutable, so racing threads at worst format a minute twice)
+  private static final int MINUTE_CACHE_SIZE = 1024;
+  private static final MinuteText[] minuteCache = new MinuteText[MINUTE_CACHE_SIZE];
+
+  /**
+   * Id of a transaction that is not stored in a model (yet)
+   */
+  public static final long NO_ID = -1;
     
   //final means that the variable cannot be changed
   private final double amount;
-  private final String category;
-  private final String timestamp;
+  // Code of the category in the CategoryDictionary
+  private final int categoryCode;
+  private final long epochMillis;
+  // Stable id given by the store, which never changes or gets reused (NO_ID until the transaction is stored)
+  private final long id;
 
   public Transaction(double amount, String category) {
     // Since this is a public constructor, perform input validation
@@ -21,13 +52,51 @@ public class Transaction {
     if (InputValidation.isValidAmount(amount) == false) {
 	throw new IllegalArgumentException("The amount is not valid.");
     }
-    if (InputValidation.isValidCategory(category) == false) {
+    // Categories are case-insensitive and interned, so only the code of the category is kept
+    int categoryCode = CategoryDictionary.codeOf(category);
+    if (categoryCode == -1) {
 	throw new IllegalArgumentException("The category is not valid.");
     }
       
     this.amount = amount;
-    this.category = category;
-    this.timestamp = generateTimestamp();
+    this.categoryCode = categoryCode;
+    // The timestamp is only formatted when it is read
+    this.epochMillis = System.currentTimeMillis();
+    this.id = NO_ID;
+  }
+
+  /**
+   * Constructor used by the storage engines to materialize a stored row.
+   * The values were validated when the row was added, so they are not validated again.
+   * @param amount Stored amount
+   * @param categoryCode Stored category code
+   * @param epochMillis Stored creation time in epoch milliseconds
+   * @param id Id of the stored row (NO_ID for a transaction that is not stored yet)
+   */
+  Transaction(double amount, int categoryCode, long epochMillis, long id) {
+    this.amount = amount;
+    this.categoryCode = categoryCode;
+    this.epochMillis = epochMillis;
+    this.id = id;
+  }
+
+  /**
+   * Function to recreate a transaction that was persisted earlier, keeping its original timestamp.
+   * The values come from outside the model, so they are validated again.
+   * @param amount Persisted amount
+   * @param category Persisted category name
+   * @param epochMillis Persisted creation time in epoch milliseconds
+   * @return the restored transaction
+   */
+  public static Transaction restore(double amount, String category, long epochMillis) {
+    if (InputValidation.isValidAmount(amount) == false) {
+	throw new IllegalArgumentException("The amount is not valid.");
+    }
+    int categoryCode = CategoryDictionary.codeOf(category);
+    if (categoryCode == -1) {
+	throw new IllegalArgumentException("The category is not valid.");
+    }
+    return new Transaction(amount, categoryCode, epochMillis, NO_ID);
   }
 
   public double getAmount() {
@@ -40,7 +109,14 @@ public class Transaction {
   // }
 
   public String getCategory() {
-    return category;
+    return CategoryDictionary.nameOf(categoryCode);
+  }
+
+  /**
+   * @return the code of the category in the CategoryDictionary
+   */
+  public int getCategoryCode() {
+    return categoryCode;
   }
 
   // public void setCategory(String category) {
@@ -48,11 +124,90 @@ public class Transaction {
   // }
   
   public String getTimestamp() {
-    return timestamp;
+    return formatTimestamp(epochMillis);
+  }
+
+  /**
+   * @return the creation time of the transaction in epoch milliseconds
+   */
+  public long getEpochMillis() {
+    return epochMillis;
   }
-  //private helper method to generate timestamp
-  private String generateTimestamp() {
-     return dateFormatter.format(new Date());
+
+  /**
+   * @return the stable id the store gave the transaction, or NO_ID if it was not read from a store
+   */
+  public long getId() {
+    return id;
+  }
+
+  /**
+   * Function to format an epoch-millis timestamp the same way as getTimestamp()
+   * @param epochMillis Time in epoch milliseconds
+   * @return the formatted timestamp
+   */
+  public static String formatTimestamp(long epochMillis) {
+    long minute = Math.floorDiv(epochMillis, 60000L);
+    int slot = (int) Math.floorMod(minute, (long) MINUTE_CACHE_SIZE);
+    MinuteText cached = minuteCache[slot];
+    if (cached != null && cached.minute == minute) {
+      return cached.text;
+    }
+    String text = TIMESTAMP_FORMATTER.format(Instant.ofEpochMilli(epochMillis));
+    minuteCache[slot] = new MinuteText(minute, text);
+    return text;
+  }
+
+  /**
+   * Function to parse a timestamp formatted by getTimestamp()
+   * @param timestamp Formatted timestamp
+   * @return the start of the minute it names, in epoch milliseconds
+   * @throws ParseException if the text is not a valid timestamp
+   */
+  public static long parseTimestamp(String timestamp) throws ParseException {
+    try {
+      return LocalDateTime.parse(timestamp, TIMESTAMP_FORMATTER).atZone(TIMESTAMP_ZONE).toInstant().toEpochMilli();
+    } catch (DateTimeParseException e) {
+      throw new ParseException(e.getMessage(), e.getErrorIndex());
+    }
+  }
+
+  /**
+   * A formatted minute, kept in the minute cache
+   */
+  private static class MinuteText {
+    private final long minute;
+    private final String text;
+
+    MinuteText(long minute, String text) {
+      this.minute = minute;
+      this.text = text;
+    }
+  }
+
+  // Transactions are immutable values: two transactions holding the same values are equal.
+  // A stored row is materialized as a new object, so identity cannot be used to find it again;
+  // the id is left out, so that a transaction read back from the model equals the one that was added.
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Transaction)) {
+      return false;
+    }
+    Transaction other = (Transaction) o;
+    return Double.compare(amount, other.amount) == 0
+        && epochMillis == other.epochMillis
+        && categoryCode == other.categoryCode;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = Double.hashCode(amount);
+    result = 31 * result + categoryCode;
+    result = 31 * result + Long.hashCode(epochMillis);
+    return result;
   }
 
 }
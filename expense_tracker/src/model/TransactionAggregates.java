@@ -0,0 +1,177 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Running aggregates over the transactions of the model: count, total, minimum and maximum
+ * amount, the total and count per category, and the same per category and day or month.
+ *
+ * The model updates them on every add and remove, so reading any of them is O(1)
+ * (minimum and maximum come from the count of every distinct amount, in O(log n), and the
+ * rollups of a period are read in O(buckets)).
+ */
+public class TransactionAggregates {
+
+  private int count;
+  private CompensatedSum total;
+  // Indexed by category code
+  private CompensatedSum[] categoryTotals;
+  private int[] categoryCounts;
+  // Distinct amount -> number of transactions with it, for the minimum and maximum
+  private TreeMap<Double, int[]> amountCounts;
+  private TransactionRollup dailyRollup;
+  private TransactionRollup monthlyRollup;
+
+  TransactionAggregates() {
+    clear();
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public double getTotal() {
+    return total.get();
+  }
+
+  /**
+   * @return the smallest amount, or NaN if there are no transactions
+   */
+  public double getMinAmount() {
+    return amountCounts.isEmpty() ? Double.NaN : amountCounts.firstKey();
+  }
+
+  /**
+   * @return the largest amount, or NaN if there are no transactions
+   */
+  public double getMaxAmount() {
+    return amountCounts.isEmpty() ? Double.NaN : amountCounts.lastKey();
+  }
+
+  /**
+   * @param categoryCode Category code, as stored in the category column
+   * @return total amount of the transactions using the category
+   */
+  public double getCategoryTotal(int categoryCode) {
+    if (categoryCode < 0 || categoryCode >= categoryTotals.length || categoryTotals[categoryCode] == null) {
+      return 0;
+    }
+    return categoryTotals[categoryCode].get();
+  }
+
+  /**
+   * @param categoryCode Category code, as stored in the category column
+   * @return number of transactions using the category
+   */
+  public int getCategoryCount(int categoryCode) {
+    if (categoryCode < 0 || categoryCode >= categoryCounts.length) {
+      return 0;
+    }
+    return categoryCounts[categoryCode];
+  }
+
+  /**
+   * Function to read the spend per category over a period, e.g. for a dashboard
+   * @param granularity Size of the time buckets
+   * @param first First day of the period (its whole bucket is included)
+   * @param last Last day of the period (its whole bucket is included)
+   * @return the total and count of every category in every bucket of the period with transactions
+   */
+  public List<TransactionRollup.Row> getRollup(TransactionRollup.Granularity granularity, LocalDate first, LocalDate last) {
+    if (granularity == null || first == null || last == null) {
+      throw new IllegalArgumentException("The granularity and the period must be non-null.");
+    }
+    return rollup(granularity).rows(first, last);
+  }
+
+  /**
+   * @param granularity Size of the time buckets
+   * @param date Any day of the bucket
+   * @param categoryCode Category code, as stored in the category column
+   * @return total amount of the transactions using the category in the bucket
+   */
+  public double getBucketTotal(TransactionRollup.Granularity granularity, LocalDate date, int categoryCode) {
+    return rollup(granularity).total(date, categoryCode);
+  }
+
+  /**
+   * @param granularity Size of the time buckets
+   * @param date Any day of the bucket
+   * @param categoryCode Category code, as stored in the category column
+   * @return number of transactions using the category in the bucket
+   */
+  public int getBucketCount(TransactionRollup.Granularity granularity, LocalDate date, int categoryCode) {
+    return rollup(granularity).count(date, categoryCode);
+  }
+
+  private TransactionRollup rollup(TransactionRollup.Granularity granularity) {
+    return granularity == TransactionRollup.Granularity.DAY ? dailyRollup : monthlyRollup;
+  }
+
+  void add(double amount, int categoryCode, long timestamp) {
+    if (categoryCode >= categoryTotals.length) {
+      int newLength = Math.max(categoryCode + 1, categoryTotals.length * 2);
+      categoryTotals = Arrays.copyOf(categoryTotals, newLength);
+      categoryCounts = Arrays.copyOf(categoryCounts, newLength);
+    }
+    if (categoryTotals[categoryCode] == null) {
+      categoryTotals[categoryCode] = new CompensatedSum();
+    }
+    count++;
+    total.add(amount);
+    categoryTotals[categoryCode].add(amount);
+    categoryCounts[categoryCode]++;
+    amountCounts.computeIfAbsent(amount, a -> new int[1])[0]++;
+    dailyRollup.add(timestamp, amount, categoryCode);
+    monthlyRollup.add(timestamp, amount, categoryCode);
+  }
+
+  void remove(double amount, int categoryCode, long timestamp) {
+    count--;
+    total.subtract(amount);
+    categoryTotals[categoryCode].subtract(amount);
+    categoryCounts[categoryCode]--;
+    int[] amountCount = amountCounts.get(amount);
+    if (--amountCount[0] == 0) {
+      amountCounts.remove(amount);
+    }
+    dailyRollup.remove(timestamp, amount, categoryCode);
+    monthlyRollup.remove(timestamp, amount, categoryCode);
+  }
+
+  /**
+   * Function to recompute the aggregates from the rows currently in the store
+   * @param columns Rows to be aggregated
+   */
+  void rebuild(TransactionColumns columns) {
+    clear();
+    for (int row = 0; row < columns.size(); row++) {
+      add(columns.getAmount(row), columns.getCategoryCode(row), columns.getTimestamp(row));
+    }
+  }
+
+  private void clear() {
+    count = 0;
+    total = new CompensatedSum();
+    categoryTotals = new CompensatedSum[0];
+    categoryCounts = new int[0];
+    amountCounts = new TreeMap<>();
+    dailyRollup = new TransactionRollup(TransactionRollup.Granularity.DAY);
+    monthlyRollup = new TransactionRollup(TransactionRollup.Granularity.MONTH);
+  }
+
+  /**
+   * Function to add up the amounts of some rows with compensated summation (in parallel for many rows)
+   * @param columns Columnar view of the transactions
+   * @param rows Bitmap of the row indexes to add up
+   * @return total amount of the rows
+   */
+  public static double sum(TransactionColumns columns, BitSet rows) {
+    return ParallelScan.sum(columns, rows);
+  }
+
+}
@@ -0,0 +1,126 @@
+package model;
+
+/**
+ * One change to the transactions of the model, as reported in a TransactionChangeEvent:
+ * either a range of rows appended at the end, or a set of deleted rows.
+ *
+ * Row indexes are those of the model right after an insertion, and right before a deletion,
+ * so applying the changes of an event in order to a copy of the rows brings it up to date.
+ */
+public final class TransactionChange {
+
+  public enum Type { INSERTED, DELETED }
+
+  private final Type type;
+  // INSERTED: the appended rows and their ids
+  private final int firstRow;
+  private final int lastRow;
+  private final long firstId;
+  private final long lastId;
+  // DELETED: the rows and what they held, in ascending row order
+  private final long[] ids;
+  private final int[] rows;
+  private final double[] amounts;
+  private final int[] categoryCodes;
+
+  private TransactionChange(Type type, int firstRow, int lastRow, long firstId, long lastId,
+      long[] ids, int[] rows, double[] amounts, int[] categoryCodes) {
+    this.type = type;
+    this.firstRow = firstRow;
+    this.lastRow = lastRow;
+    this.firstId = firstId;
+    this.lastId = lastId;
+    this.ids = ids;
+    this.rows = rows;
+    this.amounts = amounts;
+    this.categoryCodes = categoryCodes;
+  }
+
+  static TransactionChange inserted(int firstRow, int lastRow, long firstId, long lastId) {
+    return new TransactionChange(Type.INSERTED, firstRow, lastRow, firstId, lastId, null, null, null, null);
+  }
+
+  static TransactionChange deleted(long[] ids, int[] rows, double[] amounts, int[] categoryCodes) {
+    return new TransactionChange(Type.DELETED, -1, -1, Transaction.NO_ID, Transaction.NO_ID, ids, rows, amounts, categoryCodes);
+  }
+
+  /**
+   * Function to extend an insertion with the rows appended right after it
+   * @param next Insertion following this one
+   * @return the merged insertion, or null if the rows of next do not directly follow these
+   */
+  TransactionChange mergeInserted(TransactionChange next) {
+    if (type != Type.INSERTED || next.type != Type.INSERTED || next.firstRow != lastRow + 1) {
+      return null;
+    }
+    return inserted(firstRow, next.lastRow, firstId, next.lastId);
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * @return number of inserted or deleted rows
+   */
+  public int getCount() {
+    return type == Type.INSERTED ? lastRow - firstRow + 1 : rows.length;
+  }
+
+  /**
+   * @return index of the first inserted row (INSERTED only)
+   */
+  public int getFirstRow() {
+    return firstRow;
+  }
+
+  /**
+   * @return index of the last inserted row (INSERTED only)
+   */
+  public int getLastRow() {
+    return lastRow;
+  }
+
+  /**
+   * @return id of the first inserted row (INSERTED only); the other rows have greater ids
+   */
+  public long getFirstId() {
+    return firstId;
+  }
+
+  /**
+   * @return id of the last inserted row (INSERTED only)
+   */
+  public long getLastId() {
+    return lastId;
+  }
+
+  /**
+   * @return ids of the deleted rows, in ascending order (DELETED only)
+   */
+  public long[] getDeletedIds() {
+    return ids.clone();
+  }
+
+  /**
+   * @return indexes the deleted rows had, in ascending order (DELETED only)
+   */
+  public int[] getDeletedRows() {
+    return rows.clone();
+  }
+
+  /**
+   * @return amounts of the deleted rows, in the order of getDeletedRows() (DELETED only)
+   */
+  public double[] getDeletedAmounts() {
+    return amounts.clone();
+  }
+
+  /**
+   * @return category codes of the deleted rows, in the order of getDeletedRows() (DELETED only)
+   */
+  public int[] getDeletedCategoryCodes() {
+    return categoryCodes.clone();
+  }
+
+}
@@ -0,0 +1,46 @@
+package model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A batch of changes to the transactions of the model, delivered to every TransactionListener.
+ *
+ * A batch holds every change made since the previous one, in the order they were made
+ * (consecutive insertions are merged into one range), along with a snapshot of the model
+ * after the last of them.
+ */
+public class TransactionChangeEvent {
+
+  private final ExpenseTrackerModel source;
+  private final List<TransactionChange> changes;
+  private final TransactionSnapshot snapshot;
+
+  TransactionChangeEvent(ExpenseTrackerModel source, List<TransactionChange> changes, TransactionSnapshot snapshot) {
+    this.source = source;
+    this.changes = Collections.unmodifiableList(changes);
+    this.snapshot = snapshot;
+  }
+
+  /**
+   * @return the model that changed
+   */
+  public ExpenseTrackerModel getSource() {
+    return source;
+  }
+
+  /**
+   * @return the changes, in the order they were made
+   */
+  public List<TransactionChange> getChanges() {
+    return changes;
+  }
+
+  /**
+   * @return the transactions right after the last change of the batch
+   */
+  public TransactionSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+}
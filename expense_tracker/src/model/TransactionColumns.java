@@ -0,0 +1,109 @@
+package model;
+
+import java.util.List;
+
+/**
+ * Read-only, column-oriented access to the stored transactions.
+ *
+ * Filters, totals and the view read rows through this interface so that they can
+ * work on the primitive columns directly instead of materializing Transaction objects.
+ */
+public interface TransactionColumns {
+
+  /**
+   * @return number of rows currently stored
+   */
+  public int size();
+
+  public double getAmount(int row);
+
+  /**
+   * @param row Row index
+   * @return the code of the row's category in the CategoryDictionary
+   */
+  public int getCategoryCode(int row);
+
+  public String getCategory(int row);
+
+  /**
+   * @param row Row index
+   * @return the creation time of the row in epoch milliseconds
+   */
+  public long getTimestamp(int row);
+
+  /**
+   * @param row Row index
+   * @return the stable id of the row; ids only grow from one row to the next
+   */
+  public long getId(int row);
+
+  /**
+   * Function to find the row holding an id, by binary search (ids are in ascending row order)
+   * @param id Id of the transaction
+   * @return the row index of the transaction, or -1 if no row has the id
+   */
+  public default int rowOf(long id) {
+    int low = 0;
+    int high = size() - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      long middleId = getId(middle);
+      if (middleId < id) {
+        low = middle + 1;
+      } else if (middleId > id) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the id the next added row gets, greater than the id of every row ever stored
+   */
+  public default long getNextId() {
+    // Stores know the ids of removed rows as well, and override this
+    return size() == 0 ? 0 : getId(size() - 1) + 1;
+  }
+
+  /**
+   * Function to translate a category name into the code used by the category column
+   * @param category Category name (case-insensitive)
+   * @return the category code in the CategoryDictionary, or -1 if the category is unknown
+   */
+  public int findCategoryCode(String category);
+
+  /**
+   * Function to materialize a single row as a Transaction object
+   * @param row Row index
+   * @return a new Transaction holding the values of the row
+   */
+  public Transaction getTransaction(int row);
+
+  /**
+   * Function to get secondary indexes that are consistent with these rows
+   * @return the indexes, or null if none are available (filters then scan the columns)
+   */
+  public default TransactionIndex getIndex() {
+    return null;
+  }
+
+  /**
+   * Function to get running aggregates that are consistent with these rows
+   * @return the aggregates, or null if none are available (totals are then computed from the columns)
+   */
+  public default TransactionAggregates getAggregates() {
+    return null;
+  }
+
+  /**
+   * Function to split the rows into the chunks they are stored in, so that a scan can read the
+   * arrays of each chunk directly. The chunks share the storage and are only valid while the rows do not change.
+   * @return the chunks in row order, or null if the rows are not stored in chunks (scans then read the rows one by one)
+   */
+  public default List<ColumnChunk> chunks() {
+    return null;
+  }
+
+}
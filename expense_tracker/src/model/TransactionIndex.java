@@ -0,0 +1,540 @@
+package model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.TreeMap;
+
+/**
+ * Secondary indexes over the rows of the model: a posting list of rows per category,
+ * an amount index sorted by amount, and a timestamp index for time ranges.
+ *
+ * The model keeps the indexes up to date on every add and remove, so filters can look up
+ * the matching rows directly instead of scanning every transaction.
+ *
+ * The posting lists hold the stable ids of the rows rather than their indexes, so removing a row
+ * does not renumber the rows after it: the removed id is only marked in its two lists (a tombstone),
+ * and a list drops its marked ids in one pass once they make up half of it. Ids grow with the row
+ * index, so a list is turned into row indexes by walking it and the rows together.
+ *
+ * Transactions are stamped when they are created, so rows are normally appended in timestamp order
+ * and the timestamp column itself is sorted: a time range is then found by binary search over the
+ * column, and no timestamp index is kept. Only once a row arrives out of order (e.g. an imported
+ * history older than the current rows) are the ids sorted by timestamp in a TimeList.
+ */
+public class TransactionIndex {
+
+  // Rows the ids are looked up in
+  private final TransactionColumns columns;
+  // Category code -> ids of the rows using that category, in ascending order
+  private IdList[] categoryRows;
+  // Amount -> ids of the rows holding that amount, sorted by amount
+  private final TreeMap<Double, IdList> amountRows;
+  // Ids sorted by timestamp, once the rows are not in timestamp order (null while they are)
+  private TimeList timeRows;
+  // Largest timestamp indexed so far, to notice the first row out of order
+  private long lastTimestamp;
+  private int size;
+
+  /**
+   * @param columns Rows being indexed; the model keeps them in step with the indexes
+   */
+  TransactionIndex(TransactionColumns columns) {
+    this.columns = columns;
+    categoryRows = new IdList[0];
+    amountRows = new TreeMap<>();
+    lastTimestamp = Long.MIN_VALUE;
+  }
+
+  /**
+   * Function to find the rows using a category
+   * @param categoryCode Category code, as stored in the category column
+   * @return bitmap of the row indexes using the category
+   */
+  public BitSet rowsWithCategory(int categoryCode) {
+    BitSet rows = new BitSet(size);
+    if (categoryCode >= 0 && categoryCode < categoryRows.length && categoryRows[categoryCode] != null) {
+      categoryRows[categoryCode].addTo(rows, columns);
+    }
+    return rows;
+  }
+
+  /**
+   * Function to find the rows holding exactly the given amount
+   * @param amount Amount to look for
+   * @return bitmap of the row indexes holding the amount
+   */
+  public BitSet rowsWithAmount(double amount) {
+    BitSet rows = new BitSet(size);
+    IdList list = amountRows.get(amount);
+    if (list != null) {
+      list.addTo(rows, columns);
+    }
+    return rows;
+  }
+
+  /**
+   * Function to find the rows holding an amount within the given bounds
+   * @param min Lower bound (inclusive)
+   * @param max Upper bound (inclusive)
+   * @return bitmap of the row indexes holding an amount between min and max
+   */
+  public BitSet rowsWithAmountBetween(double min, double max) {
+    BitSet rows = new BitSet(size);
+    if (min <= max) {
+      for (IdList list : amountRows.subMap(min, true, max, true).values()) {
+        list.addTo(rows, columns);
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Function to find the rows created within a time window: in O(log n + k) while the rows are in
+   * timestamp order, and in O(log n + k log k) otherwise
+   * @param from Start of the window in epoch milliseconds (inclusive)
+   * @param to End of the window in epoch milliseconds (exclusive)
+   * @return bitmap of the row indexes whose timestamp lies within the window
+   */
+  public BitSet rowsWithTimestampBetween(long from, long to) {
+    BitSet rows = new BitSet(size);
+    if (from >= to) {
+      return rows;
+    }
+    if (timeRows != null) {
+      timeRows.addTo(rows, columns, from, to);
+    } else {
+      // The rows are in timestamp order, so the window is a contiguous range of rows
+      rows.set(firstRowAtOrAfter(from), firstRowAtOrAfter(to));
+    }
+    return rows;
+  }
+
+  /**
+   * @return whether the rows are in timestamp order, so that time ranges are contiguous ranges of rows
+   */
+  public boolean isTimeOrdered() {
+    return timeRows == null;
+  }
+
+  /**
+   * Function to find the first row with a timestamp at or after the given time, by binary search over the sorted timestamp column
+   */
+  private int firstRowAtOrAfter(long timestamp) {
+    int low = 0;
+    int high = columns.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (columns.getTimestamp(middle) < timestamp) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @param categoryCode Category code, as stored in the category column
+   * @return number of rows using the category
+   */
+  public int countWithCategory(int categoryCode) {
+    if (categoryCode >= 0 && categoryCode < categoryRows.length && categoryRows[categoryCode] != null) {
+      return categoryRows[categoryCode].liveCount();
+    }
+    return 0;
+  }
+
+  /**
+   * @param amount Amount to look for
+   * @return number of rows holding exactly the given amount
+   */
+  public int countWithAmount(double amount) {
+    IdList list = amountRows.get(amount);
+    return list == null ? 0 : list.liveCount();
+  }
+
+  /**
+   * @return the smallest indexed amount, or NaN if there are no rows
+   */
+  public double minAmount() {
+    return amountRows.isEmpty() ? Double.NaN : amountRows.firstKey();
+  }
+
+  /**
+   * @return the largest indexed amount, or NaN if there are no rows
+   */
+  public double maxAmount() {
+    return amountRows.isEmpty() ? Double.NaN : amountRows.lastKey();
+  }
+
+  /**
+   * @return number of indexed rows
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Function to index a row appended at the end of the store
+   * @param id Id of the new row
+   * @param amount Amount of the new row
+   * @param categoryCode Category code of the new row
+   * @param timestamp Timestamp of the new row
+   */
+  void add(long id, double amount, int categoryCode, long timestamp) {
+    if (categoryCode >= categoryRows.length) {
+      categoryRows = Arrays.copyOf(categoryRows, Math.max(categoryCode + 1, categoryRows.length * 2));
+    }
+    if (categoryRows[categoryCode] == null) {
+      categoryRows[categoryCode] = new IdList();
+    }
+    categoryRows[categoryCode].add(id);
+    amountRows.computeIfAbsent(amount, a -> new IdList()).add(id);
+    if (timeRows == null && timestamp < lastTimestamp) {
+      // The first row out of order: sort the ids from now on, starting with the rows indexed so far
+      timeRows = new TimeList(columns, size);
+    }
+    if (timeRows != null) {
+      timeRows.add(id, timestamp);
+    }
+    lastTimestamp = Math.max(lastTimestamp, timestamp);
+    size++;
+  }
+
+  /**
+   * Function to drop a removed row from the indexes; the other rows keep their ids
+   * @param id Id of the removed row
+   * @param amount Amount of the removed row
+   * @param categoryCode Category code of the removed row
+   * @param timestamp Timestamp of the removed row
+   */
+  void remove(long id, double amount, int categoryCode, long timestamp) {
+    categoryRows[categoryCode].remove(id);
+    IdList list = amountRows.get(amount);
+    list.remove(id);
+    if (list.liveCount() == 0) {
+      // The smallest and largest keys are the minimum and maximum amounts
+      amountRows.remove(amount);
+    }
+    if (timeRows != null) {
+      timeRows.remove(id, timestamp);
+    }
+    size--;
+  }
+
+  /**
+   * Function to rebuild the indexes from the rows currently in the store
+   */
+  void rebuild() {
+    categoryRows = new IdList[0];
+    amountRows.clear();
+    timeRows = null;
+    lastTimestamp = Long.MIN_VALUE;
+    size = 0;
+    for (int row = 0; row < columns.size(); row++) {
+      add(columns.getId(row), columns.getAmount(row), columns.getCategoryCode(row), columns.getTimestamp(row));
+    }
+  }
+
+  /**
+   * A growable, sorted list of row ids, where removed ids are only marked until they make up half of the list
+   */
+  private static class IdList {
+    private long[] ids = new long[4];
+    private int size;
+    // Positions of the removed ids (null while there are none)
+    private BitSet removed;
+    private int removedCount;
+
+    int liveCount() {
+      return size - removedCount;
+    }
+
+    void add(long id) {
+      // Ids are appended in ascending order
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      ids[size++] = id;
+    }
+
+    void remove(long id) {
+      int position = Arrays.binarySearch(ids, 0, size, id);
+      if (position < 0 || (removed != null && removed.get(position))) {
+        return;
+      }
+      if (removed == null) {
+        removed = new BitSet();
+      }
+      removed.set(position);
+      removedCount++;
+      if (removedCount * 2 > size) {
+        compact();
+      }
+    }
+
+    /**
+     * Function to drop the removed ids, in one pass
+     */
+    private void compact() {
+      int kept = 0;
+      for (int i = 0; i < size; i++) {
+        if (!removed.get(i)) {
+          ids[kept++] = ids[i];
+        }
+      }
+      size = kept;
+      removed = null;
+      removedCount = 0;
+    }
+
+    /**
+     * Function to mark the rows holding the live ids of the list
+     * @param rows Bitmap receiving the row indexes
+     * @param columns Rows holding the ids, in ascending order
+     */
+    void addTo(BitSet rows, TransactionColumns columns) {
+      int rowCount = columns.size();
+      int row = -1;
+      long previousId = 0;
+      for (int i = 0; i < size; i++) {
+        if (removed != null && removed.get(i)) {
+          continue;
+        }
+        long id = ids[i];
+        if (row == -1) {
+          row = columns.rowOf(id);
+        } else {
+          row = nextRowOf(columns, id, row + 1, (int) Math.min(rowCount - 1, row + (id - previousId)));
+        }
+        rows.set(row);
+        previousId = id;
+      }
+    }
+
+    /**
+     * Function to find the row of an id between two rows. Each row has a greater id than the one before,
+     * so the row of an id lies at most (id - previous id) rows after the previous row.
+     * @param columns Rows holding the ids, in ascending order
+     * @param id Id to look for
+     * @param low First row it can be on
+     * @param high Last row it can be on
+     * @return the row index of the id
+     */
+    private static int nextRowOf(TransactionColumns columns, long id, int low, int high) {
+      // Without removed rows in between, the id is on the last row it can be on
+      if (columns.getId(high) == id) {
+        return high;
+      }
+      // Otherwise gallop forward from the first row, then search the last step
+      int step = 1;
+      while (low + step < high && columns.getId(low + step) < id) {
+        low += step;
+        step *= 2;
+      }
+      high = Math.min(high, low + step);
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (columns.getId(middle) < id) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      return low;
+    }
+  }
+
+  /**
+   * Ids sorted by timestamp (then by id), where removed ids are only marked until they make up half of the list.
+   * Ids arriving in order are appended; the others wait in a small unsorted tail, which is sorted and
+   * merged into the list once it reaches an eighth of it, so an out-of-order add costs O(1) amortized.
+   */
+  private static class TimeList {
+    private static final int MIN_TAIL = 64;
+
+    private long[] timestamps;
+    private long[] ids;
+    private int size;
+    // Positions of the removed ids (null while there are none)
+    private BitSet removed;
+    private int removedCount;
+    private long[] tailTimestamps = new long[MIN_TAIL];
+    private long[] tailIds = new long[MIN_TAIL];
+    private int tailSize;
+
+    /**
+     * @param columns Rows in timestamp order
+     * @param count Number of rows to take, from the first one
+     */
+    TimeList(TransactionColumns columns, int count) {
+      timestamps = new long[Math.max(count, 4)];
+      ids = new long[timestamps.length];
+      for (int row = 0; row < count; row++) {
+        timestamps[row] = columns.getTimestamp(row);
+        ids[row] = columns.getId(row);
+      }
+      size = count;
+    }
+
+    void add(long id, long timestamp) {
+      // New ids are greater than every id in the list, so an id in timestamp order goes last
+      if (size == 0 || timestamp >= timestamps[size - 1]) {
+        if (size == ids.length) {
+          timestamps = Arrays.copyOf(timestamps, size * 2);
+          ids = Arrays.copyOf(ids, size * 2);
+        }
+        timestamps[size] = timestamp;
+        ids[size++] = id;
+        return;
+      }
+      if (tailSize == tailIds.length) {
+        tailTimestamps = Arrays.copyOf(tailTimestamps, tailSize * 2);
+        tailIds = Arrays.copyOf(tailIds, tailSize * 2);
+      }
+      tailTimestamps[tailSize] = timestamp;
+      tailIds[tailSize++] = id;
+      if (tailSize > Math.max(MIN_TAIL, size / 8)) {
+        merge();
+      }
+    }
+
+    void remove(long id, long timestamp) {
+      int position = find(timestamp, id);
+      if (position >= 0) {
+        if (removed != null && removed.get(position)) {
+          return;
+        }
+        if (removed == null) {
+          removed = new BitSet();
+        }
+        removed.set(position);
+        removedCount++;
+        if (removedCount * 2 > size) {
+          merge();
+        }
+        return;
+      }
+      for (int i = 0; i < tailSize; i++) {
+        if (tailIds[i] == id) {
+          // The tail is unsorted, so the last id takes the place of the removed one
+          tailSize--;
+          tailTimestamps[i] = tailTimestamps[tailSize];
+          tailIds[i] = tailIds[tailSize];
+          return;
+        }
+      }
+    }
+
+    /**
+     * @return the position of an id in the sorted part of the list, or -1 if it is not there
+     */
+    private int find(long timestamp, long id) {
+      int low = 0;
+      int high = size - 1;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        int order = timestamps[middle] != timestamp ? Long.compare(timestamps[middle], timestamp) : Long.compare(ids[middle], id);
+        if (order < 0) {
+          low = middle + 1;
+        } else if (order > 0) {
+          high = middle - 1;
+        } else {
+          return middle;
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Function to sort the tail into the list and drop the removed ids, in one pass over the list
+     */
+    private void merge() {
+      // The tail holds ids in ascending order, so a stable sort by timestamp keeps equal timestamps in id order
+      Integer[] order = new Integer[tailSize];
+      for (int i = 0; i < tailSize; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> Long.compare(tailTimestamps[a], tailTimestamps[b]));
+
+      int capacity = Math.max(size - removedCount + tailSize, 4);
+      long[] mergedTimestamps = new long[capacity];
+      long[] mergedIds = new long[capacity];
+      int merged = 0;
+      int next = 0;
+      for (int i = 0; i < size; i++) {
+        if (removed != null && removed.get(i)) {
+          continue;
+        }
+        while (next < tailSize && comesBefore(tailTimestamps[order[next]], tailIds[order[next]], timestamps[i], ids[i])) {
+          mergedTimestamps[merged] = tailTimestamps[order[next]];
+          mergedIds[merged++] = tailIds[order[next++]];
+        }
+        mergedTimestamps[merged] = timestamps[i];
+        mergedIds[merged++] = ids[i];
+      }
+      for (; next < tailSize; next++) {
+        mergedTimestamps[merged] = tailTimestamps[order[next]];
+        mergedIds[merged++] = tailIds[order[next]];
+      }
+      timestamps = mergedTimestamps;
+      ids = mergedIds;
+      size = merged;
+      removed = null;
+      removedCount = 0;
+      tailSize = 0;
+    }
+
+    private static boolean comesBefore(long timestamp, long id, long otherTimestamp, long otherId) {
+      return timestamp < otherTimestamp || (timestamp == otherTimestamp && id < otherId);
+    }
+
+    /**
+     * Function to mark the rows holding the live ids with a timestamp within a window
+     * @param rows Bitmap receiving the row indexes
+     * @param columns Rows holding the ids, in ascending order
+     * @param from Start of the window (inclusive)
+     * @param to End of the window (exclusive)
+     */
+    void addTo(BitSet rows, TransactionColumns columns, long from, long to) {
+      // Find the first id of the window by binary search, and collect the ids up to its end
+      int low = 0;
+      int high = size;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (timestamps[middle] < from) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      long[] found = new long[16];
+      int count = 0;
+      for (int i = low; i < size && timestamps[i] < to; i++) {
+        if (removed != null && removed.get(i)) {
+          continue;
+        }
+        if (count == found.length) {
+          found = Arrays.copyOf(found, count * 2);
+        }
+        found[count++] = ids[i];
+      }
+      for (int i = 0; i < tailSize; i++) {
+        if (tailTimestamps[i] >= from && tailTimestamps[i] < to) {
+          if (count == found.length) {
+            found = Arrays.copyOf(found, count * 2);
+          }
+          found[count++] = tailIds[i];
+        }
+      }
+      // In id order, the rows are found by walking the ids and the rows together
+      Arrays.sort(found, 0, count);
+      IdList window = new IdList();
+      for (int i = 0; i < count; i++) {
+        window.add(found[i]);
+      }
+      window.addTo(rows, columns);
+    }
+  }
+
+}
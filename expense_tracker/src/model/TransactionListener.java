@@ -0,0 +1,15 @@
+package model;
+
+/**
+ * Observer of the changes made to an ExpenseTrackerModel.
+ */
+public interface TransactionListener {
+
+  /**
+   * Function called after the model changed, outside of its lock, with the changes made since the previous call.
+   * Calls are made one at a time and in the order of the changes, by one of the threads that changed the model.
+   * @param event Changes and the resulting snapshot of the transactions
+   */
+  public void transactionsChanged(TransactionChangeEvent event);
+
+}
@@ -0,0 +1,223 @@
+package model;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A rollup table of the transactions by (time bucket, category): the total and count of the
+ * transactions of every category in every day or month, in the time zone timestamps are shown in.
+ *
+ * The table is part of the running aggregates, so the model updates it on every add and remove,
+ * and reading the spend per category over a period costs O(buckets) whatever the number of
+ * transactions. Buckets without transactions are dropped.
+ */
+public class TransactionRollup {
+
+  /**
+   * Size of the time buckets
+   */
+  public enum Granularity {
+    DAY,
+    MONTH;
+
+    /**
+     * @param date Any day
+     * @return the first day of the bucket holding the day
+     */
+    public LocalDate bucketOf(LocalDate date) {
+      return this == DAY ? date : date.withDayOfMonth(1);
+    }
+
+    private LocalDate nextBucket(LocalDate start) {
+      return this == DAY ? start.plusDays(1) : start.plusMonths(1);
+    }
+  }
+
+  /**
+   * The total and count of one category in one bucket
+   */
+  public static final class Row {
+    private final LocalDate bucket;
+    private final int categoryCode;
+    private final double total;
+    private final int count;
+
+    Row(LocalDate bucket, int categoryCode, double total, int count) {
+      this.bucket = bucket;
+      this.categoryCode = categoryCode;
+      this.total = total;
+      this.count = count;
+    }
+
+    /**
+     * @return the first day of the bucket
+     */
+    public LocalDate getBucket() {
+      return bucket;
+    }
+
+    public int getCategoryCode() {
+      return categoryCode;
+    }
+
+    public String getCategory() {
+      return CategoryDictionary.nameOf(categoryCode);
+    }
+
+    public double getTotal() {
+      return total;
+    }
+
+    public int getCount() {
+      return count;
+    }
+
+    @Override
+    public String toString() {
+      return bucket + " " + getCategory() + ": " + total + " (" + count + ")";
+    }
+  }
+
+  private final Granularity granularity;
+  private final ZoneId zone;
+  // Epoch day of the first day of a bucket -> totals of the bucket
+  private final TreeMap<Long, Bucket> buckets = new TreeMap<>();
+  // Time range and key of the last bucket looked up; consecutive transactions mostly fall into the same bucket
+  private long cachedFrom = Long.MAX_VALUE;
+  private long cachedTo = Long.MIN_VALUE;
+  private long cachedKey;
+  // Bucket of cachedKey, if it has been created (null otherwise)
+  private Bucket cachedBucket;
+
+  TransactionRollup(Granularity granularity) {
+    this.granularity = granularity;
+    this.zone = Transaction.TIMESTAMP_ZONE;
+  }
+
+  void add(long timestamp, double amount, int categoryCode) {
+    long key = keyOf(timestamp);
+    if (cachedBucket == null) {
+      cachedBucket = buckets.computeIfAbsent(key, k -> new Bucket());
+    }
+    cachedBucket.add(amount, categoryCode);
+  }
+
+  void remove(long timestamp, double amount, int categoryCode) {
+    long key = keyOf(timestamp);
+    if (cachedBucket == null) {
+      cachedBucket = buckets.get(key);
+    }
+    cachedBucket.remove(amount, categoryCode);
+    if (cachedBucket.count == 0) {
+      buckets.remove(key);
+      cachedBucket = null;
+    }
+  }
+
+  /**
+   * Function to list the totals of every category in the buckets of a period
+   * @param first First day of the period (its whole bucket is included)
+   * @param last Last day of the period (its whole bucket is included)
+   * @return one row per bucket and category with transactions, by bucket and then by category code
+   */
+  List<Row> rows(LocalDate first, LocalDate last) {
+    List<Row> rows = new ArrayList<>();
+    long from = granularity.bucketOf(first).toEpochDay();
+    long to = granularity.bucketOf(last).toEpochDay();
+    if (from > to) {
+      return rows;
+    }
+    for (Map.Entry<Long, Bucket> entry : buckets.subMap(from, true, to, true).entrySet()) {
+      LocalDate start = LocalDate.ofEpochDay(entry.getKey());
+      Bucket bucket = entry.getValue();
+      for (int categoryCode = 0; categoryCode < bucket.counts.length; categoryCode++) {
+        if (bucket.counts[categoryCode] > 0) {
+          rows.add(new Row(start, categoryCode, bucket.totals[categoryCode].get(), bucket.counts[categoryCode]));
+        }
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * @param date Any day of the bucket
+   * @param categoryCode Category code, as stored in the category column
+   * @return total amount of the category in the bucket
+   */
+  double total(LocalDate date, int categoryCode) {
+    Bucket bucket = buckets.get(granularity.bucketOf(date).toEpochDay());
+    if (bucket == null || categoryCode < 0 || categoryCode >= bucket.counts.length || bucket.counts[categoryCode] == 0) {
+      return 0;
+    }
+    return bucket.totals[categoryCode].get();
+  }
+
+  /**
+   * @param date Any day of the bucket
+   * @param categoryCode Category code, as stored in the category column
+   * @return number of transactions of the category in the bucket
+   */
+  int count(LocalDate date, int categoryCode) {
+    Bucket bucket = buckets.get(granularity.bucketOf(date).toEpochDay());
+    if (bucket == null || categoryCode < 0 || categoryCode >= bucket.counts.length) {
+      return 0;
+    }
+    return bucket.counts[categoryCode];
+  }
+
+  /**
+   * Function to find the bucket of a timestamp, as the epoch day of the bucket's first day
+   */
+  private long keyOf(long timestamp) {
+    if (timestamp >= cachedFrom && timestamp < cachedTo) {
+      return cachedKey;
+    }
+    LocalDate start = granularity.bucketOf(Instant.ofEpochMilli(timestamp).atZone(zone).toLocalDate());
+    cachedFrom = start.atStartOfDay(zone).toInstant().toEpochMilli();
+    cachedTo = granularity.nextBucket(start).atStartOfDay(zone).toInstant().toEpochMilli();
+    cachedKey = start.toEpochDay();
+    cachedBucket = null;
+    return cachedKey;
+  }
+
+  /**
+   * The totals and counts of one bucket, indexed by category code
+   */
+  private static class Bucket {
+    private int count;
+    private CompensatedSum[] totals = new CompensatedSum[0];
+    private int[] counts = new int[0];
+
+    void add(double amount, int categoryCode) {
+      if (categoryCode >= counts.length) {
+        int newLength = Math.max(categoryCode + 1, counts.length * 2);
+        totals = Arrays.copyOf(totals, newLength);
+        counts = Arrays.copyOf(counts, newLength);
+      }
+      if (totals[categoryCode] == null) {
+        totals[categoryCode] = new CompensatedSum();
+      }
+      count++;
+      totals[categoryCode].add(amount);
+      counts[categoryCode]++;
+    }
+
+    void remove(double amount, int categoryCode) {
+      count--;
+      counts[categoryCode]--;
+      if (counts[categoryCode] == 0) {
+        // Start from an exact 0 if the category comes back
+        totals[categoryCode] = null;
+      } else {
+        totals[categoryCode].subtract(amount);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,182 @@
+package model;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable, point-in-time view of the transactions held by the model.
+ *
+ * Taking a snapshot does not copy the transactions: the snapshot shares the storage of
+ * the model, and the storage engine only copies data when a later write would change rows
+ * the snapshot can see. The rows are read either as columns (asColumns(), for filters, totals
+ * and the view) or as a list of Transaction objects materialized when they are read (asList()).
+ */
+public class TransactionSnapshot {
+
+  private final TransactionColumns columns;
+  private final long version;
+  private final ExpenseTrackerModel model;
+  // Both views are created once, so every reader of the snapshot gets the same objects
+  private final Columns columnsView = new Columns();
+  private final List<Transaction> listView = new TransactionList();
+  // Views of the indexes and aggregates of the model, built once per snapshot (null until asked for)
+  private volatile TransactionIndex index;
+  private volatile TransactionAggregates aggregates;
+
+  TransactionSnapshot(TransactionColumns columns, long version, ExpenseTrackerModel model) {
+    this.columns = columns;
+    this.version = version;
+    this.model = model;
+  }
+
+  /**
+   * @return the model version this snapshot was taken at (it changes with every add and remove)
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * @return number of transactions in the snapshot
+   */
+  public int size() {
+    return columns.size();
+  }
+
+  /**
+   * @return the rows of the snapshot as columns, e.g. to be filtered without materializing the transactions
+   */
+  public Columns asColumns() {
+    return columnsView;
+  }
+
+  /**
+   * @return the rows of the snapshot as a read-only list of transactions
+   */
+  public List<Transaction> asList() {
+    return listView;
+  }
+
+  /**
+   * The rows of a snapshot as columns. They never change, and lookups are answered by the
+   * indexes and running aggregates of the model while the snapshot is current.
+   */
+  public final class Columns implements TransactionColumns {
+
+    private Columns() {
+    }
+
+    /**
+     * @return the snapshot these columns belong to
+     */
+    public TransactionSnapshot getSnapshot() {
+      return TransactionSnapshot.this;
+    }
+
+    @Override
+    public int size() {
+      return columns.size();
+    }
+
+    @Override
+    public double getAmount(int row) {
+      return columns.getAmount(row);
+    }
+
+    @Override
+    public int getCategoryCode(int row) {
+      return columns.getCategoryCode(row);
+    }
+
+    @Override
+    public String getCategory(int row) {
+      return columns.getCategory(row);
+    }
+
+    @Override
+    public long getTimestamp(int row) {
+      return columns.getTimestamp(row);
+    }
+
+    @Override
+    public long getId(int row) {
+      return columns.getId(row);
+    }
+
+    @Override
+    public int rowOf(long id) {
+      return columns.rowOf(id);
+    }
+
+    @Override
+    public long getNextId() {
+      return columns.getNextId();
+    }
+
+    @Override
+    public int findCategoryCode(String category) {
+      return columns.findCategoryCode(category);
+    }
+
+    @Override
+    public Transaction getTransaction(int row) {
+      return columns.getTransaction(row);
+    }
+
+    @Override
+    public TransactionIndex getIndex() {
+      // The indexes of the model always describe its latest version, so they can only be
+      // asked for while this snapshot is still current; the view then keeps answering for
+      // this snapshot, and is shared by every query on it
+      TransactionIndex current = index;
+      if (current == null) {
+        synchronized (TransactionSnapshot.this) {
+          if (index == null) {
+            index = model.getIndex(TransactionSnapshot.this);
+          }
+          current = index;
+        }
+      }
+      return current;
+    }
+
+    @Override
+    public TransactionAggregates getAggregates() {
+      // Same as the indexes: the running aggregates always describe the latest version
+      TransactionAggregates current = aggregates;
+      if (current == null) {
+        synchronized (TransactionSnapshot.this) {
+          if (aggregates == null) {
+            aggregates = model.getAggregates(TransactionSnapshot.this);
+          }
+          current = aggregates;
+        }
+      }
+      return current;
+    }
+
+    @Override
+    public List<ColumnChunk> chunks() {
+      // The chunks of a snapshot never change, so they stay valid for as long as the snapshot is used
+      return columns.chunks();
+    }
+  }
+
+  /**
+   * The rows of a snapshot as transactions, materialized when they are read
+   */
+  private final class TransactionList extends AbstractList<Transaction> implements RandomAccess {
+
+    @Override
+    public Transaction get(int row) {
+      return columns.getTransaction(row);
+    }
+
+    @Override
+    public int size() {
+      return columns.size();
+    }
+  }
+
+}
@@ -0,0 +1,55 @@
+package model;
+
+import java.util.Collection;
+
+/**
+ * The storage engine used by the ExpenseTrackerModel.
+ *
+ * NOTE) The model only talks to this interface, so the storage engine can be swapped
+ * without touching the model, the filters or the view.
+ */
+public interface TransactionStore extends TransactionColumns {
+
+  public void add(Transaction t);
+
+  /**
+   * Function to append several transactions at once, in order
+   * @param transactions Transactions to be added
+   */
+  public default void addAll(Collection<Transaction> transactions) {
+    for (Transaction t : transactions) {
+      add(t);
+    }
+  }
+
+  /**
+   * Function to delete the row at the given index, shifting the following rows up by one
+   * @param row Row index of the transaction to be removed
+   */
+  public void remove(int row);
+
+  /**
+   * Function to delete several rows at once; the remaining rows keep their order and move up
+   * @param rows Row indexes of the transactions to be removed, distinct and in ascending order
+   */
+  public default void removeAll(int[] rows) {
+    // Removing from the last row down keeps the indexes of the rows still to be removed valid
+    for (int i = rows.length - 1; i >= 0; i--) {
+      remove(rows[i]);
+    }
+  }
+
+  /**
+   * @param t Transaction to look for
+   * @return index of the first row holding the same values as t, or -1 if there is none
+   */
+  public int indexOf(Transaction t);
+
+  /**
+   * Function to take an immutable, point-in-time view of the stored rows.
+   * Writes made after the snapshot was taken are not visible through it.
+   * @return read-only columns holding the rows stored at the time of the call
+   */
+  public TransactionColumns snapshot();
+
+}
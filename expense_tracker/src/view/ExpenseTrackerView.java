@@ -1,15 +1,17 @@
 package view;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
 
 import java.awt.*;
 import java.awt.event.ActionListener;
 import java.text.NumberFormat;
 
 import model.Transaction;
+import model.TransactionColumns;
 
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 
 public class ExpenseTrackerView extends JFrame {
@@ -18,7 +20,9 @@ public class ExpenseTrackerView extends JFrame {
   private JButton addTransactionBtn;
   private JFormattedTextField amountField;
   private JTextField categoryField;
-  private DefaultTableModel model;
+  private TransactionTableModel model;
+  // Installed once; highlightRows only updates its set of rows
+  private HighlightRenderer highlightRenderer;
 
   // private JTextField dateFilterField;
   private JTextField categoryFilterField;
@@ -26,8 +30,14 @@ public class ExpenseTrackerView extends JFrame {
 
   private JTextField amountFilterField;
   private JButton amountFilterBtn;
+  // Shows the total amount of the rows matching the last applied filter
+  private JLabel filteredTotalLabel;
   // New Delete Transaction Button for Undo functionality
   private JButton deleteTransactionBtn;
+  // Imports the transactions of a CSV or TSV file
+  private JButton importBtn;
+  // Exports the transactions to a CSV or binary file
+  private JButton exportBtn;
 
   
 
@@ -35,16 +45,19 @@ public class ExpenseTrackerView extends JFrame {
     setTitle("Expense Tracker"); // Set title
     setSize(600, 400); // Make GUI larger
 
-    String[] columnNames = {"serial", "Amount", "Category", "Date"};
-    this.model = new DefaultTableModel(columnNames, 0);
+    this.model = new TransactionTableModel();
 
     
     // Create table
     transactionsTable = new JTable(model);
+    highlightRenderer = new HighlightRenderer();
+    transactionsTable.setDefaultRenderer(Object.class, highlightRenderer);
 
     addTransactionBtn = new JButton("Add Transaction");
     // Initialization of the transaction button 
     deleteTransactionBtn = new JButton("Delete");
+    importBtn = new JButton("Import");
+    exportBtn = new JButton("Export");
 
     // Create UI components
     JLabel amountLabel = new JLabel("Amount:");
@@ -65,6 +78,7 @@ public class ExpenseTrackerView extends JFrame {
     JLabel amountFilterLabel = new JLabel("Filter by Amount:");
     amountFilterField = new JTextField(10);
     amountFilterBtn = new JButton("Filter by Amount");
+    filteredTotalLabel = new JLabel();
   
 
   
@@ -83,6 +97,9 @@ public class ExpenseTrackerView extends JFrame {
     buttonPanel.add(categoryFilterBtn);
     // Adding Delete Transaction Button to the Button Layout
     buttonPanel.add(deleteTransactionBtn);
+    buttonPanel.add(importBtn);
+    buttonPanel.add(exportBtn);
+    buttonPanel.add(filteredTotalLabel);
   
     // Add panels to frame
     add(inputPanel, BorderLayout.NORTH);
@@ -97,7 +114,7 @@ public class ExpenseTrackerView extends JFrame {
   
   }
 
-  public DefaultTableModel getTableModel() {
+  public TransactionTableModel getTableModel() {
     return model;
   }
 
@@ -113,6 +130,23 @@ public class ExpenseTrackerView extends JFrame {
     return transactionsTable;
   }
 
+  /**
+   * Function to get the ids of the selected transactions, which stay valid however the table is sorted or filtered
+   * @return the ids of the selected transactions (the total row is left out)
+   */
+  public long[] getSelectedTransactionIds() {
+    int[] selectedRows = transactionsTable.getSelectedRows();
+    long[] ids = new long[selectedRows.length];
+    int count = 0;
+    for (int selectedRow : selectedRows) {
+      long id = model.getTransactionId(transactionsTable.convertRowIndexToModel(selectedRow));
+      if (id != Transaction.NO_ID) {
+        ids[count++] = id;
+      }
+    }
+    return Arrays.copyOf(ids, count);
+  }
+
   public double getAmountField() {
     if(amountField.getText().isEmpty()) {
       return 0;
@@ -159,30 +193,24 @@ public class ExpenseTrackerView extends JFrame {
     }
   }
 
-  public void refreshTable(List<Transaction> transactions) {
-      // Clear existing rows
-      model.setRowCount(0);
-      // Get row count
-      int rowNum = model.getRowCount();
-      double totalCost=0;
-      // Calculate total cost
-      for(Transaction t : transactions) {
-        totalCost+=t.getAmount();
-      }
-  
-      // Add rows from transactions list
-      for(Transaction t : transactions) {
-        model.addRow(new Object[]{rowNum+=1,t.getAmount(), t.getCategory(), t.getTimestamp()}); 
-      }
-      // Add total row
-      Object[] totalRow = {"Total", null, null, totalCost};
-      model.addRow(totalRow);
-  
-      // Fire table update
-      transactionsTable.updateUI();
-  
-    }  
-  
+  /**
+   * Function to display a new set of transactions. The table reads the columns lazily,
+   * so no rows are copied here.
+   * @param columns Columnar view of the transactions to be displayed
+   */
+  public void refreshTable(TransactionColumns columns) {
+      model.setColumns(columns);
+  }
+
+  /**
+   * Function to add the rows of newly appended transactions to the table
+   * @param columns Columnar view of the transactions, including the new ones
+   * @param firstRow Index of the first new transaction
+   * @param lastRow Index of the last new transaction
+   */
+  public void addTransactionRows(TransactionColumns columns, int firstRow, int lastRow) {
+      model.rowsInserted(columns, firstRow, lastRow);
+  }
 
   public JButton getAddTransactionBtn() {
     return addTransactionBtn;
@@ -196,33 +224,87 @@ public class ExpenseTrackerView extends JFrame {
     return deleteTransactionBtn;
   }
 
+  public JButton getImportBtn() {
+    return importBtn;
+  }
+
   /**
-   * Function to remove a row from the DefaultTableModel after a transaction is deleted from the JTable
+   * Function to ask the user for a file to import
+   * @return the chosen file, or null if the user cancelled
+   */
+  public Path getImportFileInput() {
+    JFileChooser chooser = new JFileChooser();
+    if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+      return null;
+    }
+    return chooser.getSelectedFile().toPath();
+  }
+
+  public JButton getExportBtn() {
+    return exportBtn;
+  }
+
+  /**
+   * Function to ask the user for the file to export to
+   * @return the chosen file, or null if the user cancelled
+   */
+  public Path getExportFileInput() {
+    JFileChooser chooser = new JFileChooser();
+    if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+      return null;
+    }
+    return chooser.getSelectedFile().toPath();
+  }
+
+  /**
+   * Function to remove a row from the table after a transaction is deleted from the model
+   * @param columns Columnar view of the transactions, without the deleted one
    * @param index_number provides the index of the row to be deleted
    */
-  public void deleteTransactionRow(int index_number) {
-    this.getTableModel().removeRow(index_number);
+  public void deleteTransactionRow(TransactionColumns columns, int index_number) {
+    this.getTableModel().rowsDeleted(columns, index_number, index_number);
+  }
+
+
+  /**
+   * Function to remove several rows from the table after their transactions are deleted from the model
+   * @param columns Columnar view of the transactions, without the deleted ones
+   * @param rowIndexes Indexes the deleted rows had, distinct and in ascending order
+   */
+  public void deleteTransactionRows(TransactionColumns columns, int[] rowIndexes) {
+    this.getTableModel().rowsDeleted(columns, rowIndexes);
   }
 
+  /**
+   * Function to display the total amount of the rows matching the applied filter
+   * @param filteredTotal Total amount of the filtered rows
+   */
+  public void setFilteredTotal(double filteredTotal) {
+    filteredTotalLabel.setText("Filtered total: " + filteredTotal);
+  }
 
-  public void highlightRows(List<Integer> rowIndexes) {
+  /**
+   * Function to highlight the rows selected by a filter.
+   * Only the rows whose highlight state changed are repainted.
+   * @param rowIndexes Bitmap of the row indexes to be highlighted
+   */
+  public void highlightRows(BitSet rowIndexes) {
       // The row indices are being used as hashcodes for the transactions.
       // The row index directly maps to the the transaction index in the list.
-      transactionsTable.setDefaultRenderer(Object.class, new DefaultTableCellRenderer() {
-          @Override
-          public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
-                                                        boolean hasFocus, int row, int column) {
-              Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
-              if (rowIndexes.contains(row)) {
-                  c.setBackground(new Color(173, 255, 168)); // Light green
-              } else {
-                  c.setBackground(table.getBackground());
-              }
-              return c;
+      BitSet changed = highlightRenderer.setHighlightedRows(rowIndexes);
+
+      // Repaint each run of consecutive changed rows as one rectangle
+      int lastColumn = transactionsTable.getColumnCount() - 1;
+      for (int first = changed.nextSetBit(0); first >= 0; first = changed.nextSetBit(first)) {
+          int last = changed.nextClearBit(first) - 1;
+          if (first < transactionsTable.getRowCount()) {
+              last = Math.min(last, transactionsTable.getRowCount() - 1);
+              Rectangle dirty = transactionsTable.getCellRect(first, 0, true)
+                  .union(transactionsTable.getCellRect(last, lastColumn, true));
+              transactionsTable.repaint(dirty);
           }
-      });
-
-      transactionsTable.repaint();
+          first = last + 1;
+      }
   }
 
 
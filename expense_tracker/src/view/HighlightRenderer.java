@@ -0,0 +1,52 @@
+package view;
+
+import javax.swing.JTable;
+import javax.swing.table.DefaultTableCellRenderer;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.util.BitSet;
+
+/**
+ * Cell renderer that paints the highlighted rows (e.g. the rows matching a filter) in light green.
+ *
+ * The renderer is installed once and its set of highlighted rows is updated in place;
+ * checking whether a row is highlighted is a single bitmap lookup.
+ */
+public class HighlightRenderer extends DefaultTableCellRenderer {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Color HIGHLIGHT_COLOR = new Color(173, 255, 168); // Light green
+
+  private final BitSet highlightedRows = new BitSet();
+
+  @Override
+  public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                 boolean hasFocus, int row, int column) {
+    Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+    c.setBackground(highlightedRows.get(row) ? HIGHLIGHT_COLOR : table.getBackground());
+    return c;
+  }
+
+  /**
+   * Function to replace the set of highlighted rows
+   * @param rows Bitmap of the row indexes to be highlighted
+   * @return bitmap of the rows whose highlight state changed
+   */
+  public BitSet setHighlightedRows(BitSet rows) {
+    BitSet changed = (BitSet) highlightedRows.clone();
+    changed.xor(rows);
+    highlightedRows.clear();
+    highlightedRows.or(rows);
+    return changed;
+  }
+
+  /**
+   * @return a copy of the currently highlighted rows
+   */
+  public BitSet getHighlightedRows() {
+    return (BitSet) highlightedRows.clone();
+  }
+
+}
@@ -0,0 +1,190 @@
+package view;
+
+import javax.swing.table.AbstractTableModel;
+
+import java.util.BitSet;
+
+import model.Transaction;
+import model.TransactionAggregates;
+import model.TransactionColumns;
+
+/**
+ * Table model reading the transactions straight from the model's columns.
+ *
+ * No row is copied into the table: cells are computed when the JTable paints them,
+ * and changes are reported with fine-grained insert/delete events, so updating the
+ * table costs the same no matter how many transactions there are.
+ * The last row of the table shows the total cost.
+ */
+public class TransactionTableModel extends AbstractTableModel {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final String[] COLUMN_NAMES = {"serial", "Amount", "Category", "Date"};
+
+  // Rows currently displayed (null until the first refresh, so the table starts out empty)
+  private TransactionColumns columns;
+  private double totalCost;
+
+  @Override
+  public int getRowCount() {
+    // One row per transaction, plus the total row
+    return columns == null ? 0 : columns.size() + 1;
+  }
+
+  @Override
+  public int getColumnCount() {
+    return COLUMN_NAMES.length;
+  }
+
+  @Override
+  public String getColumnName(int column) {
+    return COLUMN_NAMES[column];
+  }
+
+  @Override
+  public Object getValueAt(int row, int column) {
+    if (row == columns.size()) {
+      return column == 0 ? "Total" : column == 3 ? totalCost : null;
+    }
+    switch (column) {
+      case 0:
+        return row + 1;
+      case 1:
+        return columns.getAmount(row);
+      case 2:
+        return columns.getCategory(row);
+      default:
+        return Transaction.formatTimestamp(columns.getTimestamp(row));
+    }
+  }
+
+  /**
+   * Function to display a new set of transactions, replacing everything in the table
+   * @param columns Columnar view of the transactions to be displayed
+   */
+  public void setColumns(TransactionColumns columns) {
+    setColumns(columns, totalOf(columns));
+  }
+
+  /**
+   * Function to display a new set of transactions whose total was computed by the caller (e.g. off the event dispatch thread)
+   * @param columns Columnar view of the transactions to be displayed
+   * @param totalCost Total amount of the transactions
+   */
+  public void setColumns(TransactionColumns columns, double totalCost) {
+    this.columns = columns;
+    this.totalCost = totalCost;
+    fireTableDataChanged();
+  }
+
+  /**
+   * Function to report rows appended at the end of the transactions
+   * @param columns Columnar view of the transactions, including the new rows
+   * @param firstRow Index of the first new row
+   * @param lastRow Index of the last new row
+   */
+  public void rowsInserted(TransactionColumns columns, int firstRow, int lastRow) {
+    rowsInserted(columns, totalOf(columns), firstRow, lastRow);
+  }
+
+  /**
+   * Function to report rows appended at the end of the transactions, with a total computed by the caller
+   * @param columns Columnar view of the transactions, including the new rows
+   * @param totalCost Total amount of the transactions
+   * @param firstRow Index of the first new row
+   * @param lastRow Index of the last new row
+   */
+  public void rowsInserted(TransactionColumns columns, double totalCost, int firstRow, int lastRow) {
+    if (this.columns == null) {
+      setColumns(columns, totalCost);
+      return;
+    }
+    this.columns = columns;
+    this.totalCost = totalCost;
+    fireTableRowsInserted(firstRow, lastRow);
+    fireTableRowsUpdated(columns.size(), columns.size());
+  }
+
+  /**
+   * Function to report removed rows
+   * @param columns Columnar view of the transactions, without the removed rows
+   * @param firstRow Index the first removed row had
+   * @param lastRow Index the last removed row had
+   */
+  public void rowsDeleted(TransactionColumns columns, int firstRow, int lastRow) {
+    rowsDeleted(columns, totalOf(columns), firstRow, lastRow);
+  }
+
+  private void rowsDeleted(TransactionColumns columns, double totalCost, int firstRow, int lastRow) {
+    if (this.columns == null) {
+      setColumns(columns, totalCost);
+      return;
+    }
+    this.columns = columns;
+    this.totalCost = totalCost;
+    fireTableRowsDeleted(firstRow, lastRow);
+    // The serial numbers of the following rows and the total row have changed
+    fireTableRowsUpdated(firstRow, columns.size());
+  }
+
+  /**
+   * Function to report several removed rows with a single event
+   * @param columns Columnar view of the transactions, without the removed rows
+   * @param rows Indexes the removed rows had, distinct and in ascending order
+   */
+  public void rowsDeleted(TransactionColumns columns, int[] rows) {
+    rowsDeleted(columns, totalOf(columns), rows);
+  }
+
+  /**
+   * Function to report several removed rows with a single event, with a total computed by the caller
+   * @param columns Columnar view of the transactions, without the removed rows
+   * @param totalCost Total amount of the transactions
+   * @param rows Indexes the removed rows had, distinct and in ascending order
+   */
+  public void rowsDeleted(TransactionColumns columns, double totalCost, int[] rows) {
+    if (rows.length > 0 && rows[rows.length - 1] - rows[0] == rows.length - 1) {
+      rowsDeleted(columns, totalCost, rows[0], rows[rows.length - 1]);
+      return;
+    }
+    // Scattered rows: one data-changed event costs less than an event per row
+    setColumns(columns, totalCost);
+  }
+
+  /**
+   * Function to find the transaction shown on a row, independently of its position
+   * @param row Row index of the table model
+   * @return the stable id of the transaction, or Transaction.NO_ID for the total row
+   */
+  public long getTransactionId(int row) {
+    if (columns == null || row < 0 || row >= columns.size()) {
+      return Transaction.NO_ID;
+    }
+    return columns.getId(row);
+  }
+
+  /**
+   * @return the transactions currently displayed, or null before the first refresh
+   */
+  public TransactionColumns getColumns() {
+    return columns;
+  }
+
+  /**
+   * Function to compute the total amount shown in the last row
+   * @param columns Columnar view of the transactions
+   * @return total amount of the transactions
+   */
+  static double totalOf(TransactionColumns columns) {
+    // Read the running total of the model when the columns are current, instead of re-adding every amount
+    TransactionAggregates aggregates = columns.getAggregates();
+    if (aggregates != null) {
+      return aggregates.getTotal();
+    }
+    BitSet rows = new BitSet(columns.size());
+    rows.set(0, columns.size());
+    return TransactionAggregates.sum(columns, rows);
+  }
+
+}
@@ -0,0 +1,308 @@
+package view;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import model.TransactionChange;
+import model.TransactionChangeEvent;
+import model.TransactionColumns;
+import model.TransactionListener;
+import metrics.Metrics;
+
+/**
+ * Queue of the changes to be shown by the ExpenseTrackerView, filled by the thread working on the model.
+ *
+ * In coalescing mode, the changes posted between two frames are merged and applied on the event
+ * dispatch thread at most once per frame: appends to the end of the table become one inserted range,
+ * any other mix of changes becomes one refresh of the (lazily read) table, and only the latest
+ * highlighted rows are kept. A burst of changes therefore costs one repaint instead of one per change.
+ * The total of the table is computed on the posting thread, so the event dispatch thread never reads
+ * the model itself, only the immutable snapshots it is handed.
+ *
+ * In immediate mode (the default), every change is applied right away on the calling thread,
+ * for a model that is updated on the thread showing the view.
+ */
+public class ViewUpdateQueue implements TransactionListener {
+
+  /**
+   * Default interval between two updates of the view (about 60 per second)
+   */
+  public static final int DEFAULT_FRAME_MILLIS = 16;
+
+  private enum TableChange { NONE, INSERTED, DELETED, REFRESH }
+
+  private final ExpenseTrackerView view;
+  // 0 in immediate mode
+  private final int frameMillis;
+  // Event dispatch thread only
+  private final Timer frameTimer;
+  private long lastFlushNanos;
+
+  // Changes posted since the last flush (guarded by this)
+  private TableChange tableChange = TableChange.NONE;
+  private TransactionColumns columns;
+  private double totalCost;
+  private int firstInsertedRow;
+  private int lastInsertedRow;
+  private int[] deletedRows;
+  private BitSet highlightedRows;
+  private double filteredTotal;
+  private final List<Runnable> tasks = new ArrayList<>();
+  private boolean flushRequested;
+
+  /**
+   * Constructor for a queue applying every change right away, on the calling thread
+   * @param view View showing the changes
+   */
+  public ViewUpdateQueue(ExpenseTrackerView view) {
+    this.view = view;
+    this.frameMillis = 0;
+    this.frameTimer = null;
+  }
+
+  /**
+   * Constructor for a queue merging the changes and applying them on the event dispatch thread
+   * @param view View showing the changes
+   * @param frameMillis Shortest interval between two updates of the view, in milliseconds
+   */
+  public ViewUpdateQueue(ExpenseTrackerView view, int frameMillis) {
+    if (frameMillis <= 0) {
+      throw new IllegalArgumentException("The frame interval must be positive.");
+    }
+    this.view = view;
+    this.frameMillis = frameMillis;
+    this.frameTimer = new Timer(frameMillis, e -> flush());
+    this.frameTimer.setRepeats(false);
+  }
+
+  /**
+   * @return true if changes are applied right away on the calling thread
+   */
+  public boolean isImmediate() {
+    return frameMillis == 0;
+  }
+
+  /**
+   * Function to show a new set of transactions, replacing everything in the table
+   * @param columns Columnar view of the transactions (an immutable snapshot in coalescing mode)
+   */
+  public void refresh(TransactionColumns columns) {
+    if (isImmediate()) {
+      long start = Metrics.start();
+      view.refreshTable(columns);
+      viewUpdated(start);
+      return;
+    }
+    double total = TransactionTableModel.totalOf(columns);
+    synchronized (this) {
+      setColumns(columns, total);
+      tableChange = TableChange.REFRESH;
+      requestFlush();
+    }
+  }
+
+  /**
+   * Function to show transactions appended at the end of the table
+   * @param columns Columnar view of the transactions, including the new ones
+   * @param firstRow Index of the first new transaction
+   * @param lastRow Index of the last new transaction
+   */
+  public void rowsInserted(TransactionColumns columns, int firstRow, int lastRow) {
+    if (isImmediate()) {
+      long start = Metrics.start();
+      view.addTransactionRows(columns, firstRow, lastRow);
+      viewUpdated(start);
+      return;
+    }
+    double total = TransactionTableModel.totalOf(columns);
+    synchronized (this) {
+      setColumns(columns, total);
+      if (tableChange == TableChange.NONE) {
+        tableChange = TableChange.INSERTED;
+        firstInsertedRow = firstRow;
+        lastInsertedRow = lastRow;
+      } else if (tableChange == TableChange.INSERTED && firstRow == lastInsertedRow + 1) {
+        // Consecutive appends (e.g. the batches of an import) make one inserted range
+        lastInsertedRow = lastRow;
+      } else {
+        tableChange = TableChange.REFRESH;
+      }
+      requestFlush();
+    }
+  }
+
+  /**
+   * Function to remove the rows of deleted transactions from the table
+   * @param columns Columnar view of the transactions, without the deleted ones
+   * @param rows Indexes the deleted rows had, distinct and in ascending order
+   */
+  public void rowsDeleted(TransactionColumns columns, int[] rows) {
+    if (isImmediate()) {
+      long start = Metrics.start();
+      if (rows.length == 1) {
+        view.deleteTransactionRow(columns, rows[0]);
+      } else {
+        view.deleteTransactionRows(columns, rows);
+      }
+      viewUpdated(start);
+      return;
+    }
+    double total = TransactionTableModel.totalOf(columns);
+    synchronized (this) {
+      setColumns(columns, total);
+      if (tableChange == TableChange.NONE) {
+        tableChange = TableChange.DELETED;
+        deletedRows = rows;
+      } else {
+        tableChange = TableChange.REFRESH;
+      }
+      requestFlush();
+    }
+  }
+
+  /**
+   * Function to show a batch of changes to the model: a single insertion or deletion is applied as such,
+   * and anything else as a refresh of the table
+   * @param event Changes reported by the model
+   */
+  @Override
+  public void transactionsChanged(TransactionChangeEvent event) {
+    List<TransactionChange> changes = event.getChanges();
+    Metrics.VIEW_CHANGES.add(changes.size());
+    TransactionChange change = changes.get(0);
+    if (changes.size() > 1) {
+      refresh(event.getSnapshot().asColumns());
+    } else if (change.getType() == TransactionChange.Type.INSERTED) {
+      rowsInserted(event.getSnapshot().asColumns(), change.getFirstRow(), change.getLastRow());
+    } else {
+      rowsDeleted(event.getSnapshot().asColumns(), change.getDeletedRows());
+    }
+  }
+
+  /**
+   * Function to highlight the rows matching a filter and show their total
+   * @param rows Bitmap of the row indexes to be highlighted (not changed afterwards)
+   * @param total Total amount of the highlighted rows
+   */
+  public void highlight(BitSet rows, double total) {
+    if (isImmediate()) {
+      long start = Metrics.start();
+      view.highlightRows(rows);
+      view.setFilteredTotal(total);
+      viewUpdated(start);
+      return;
+    }
+    synchronized (this) {
+      highlightedRows = rows;
+      filteredTotal = total;
+      requestFlush();
+    }
+  }
+
+  /**
+   * Function to run some work on the view (e.g. showing a message) after the changes posted before it
+   * @param task Work to be run on the event dispatch thread (on the calling thread in immediate mode)
+   */
+  public void runOnView(Runnable task) {
+    if (isImmediate()) {
+      task.run();
+      return;
+    }
+    synchronized (this) {
+      tasks.add(task);
+      requestFlush();
+    }
+  }
+
+  private void setColumns(TransactionColumns columns, double total) {
+    this.columns = columns;
+    this.totalCost = total;
+  }
+
+  /**
+   * Function to record the time the view was blocked applying an update
+   * @param start Start of the update, as returned by Metrics.start()
+   */
+  private static void viewUpdated(long start) {
+    Metrics.VIEW_UPDATES.increment();
+    Metrics.VIEW_UPDATE.stop(start);
+  }
+
+  private void requestFlush() {
+    if (!flushRequested) {
+      flushRequested = true;
+      SwingUtilities.invokeLater(this::flushWhenDue);
+    }
+  }
+
+  /**
+   * Function to apply the pending changes now, or when the current frame is over
+   */
+  private void flushWhenDue() {
+    long waitMillis = frameMillis - (System.nanoTime() - lastFlushNanos) / 1_000_000;
+    if (lastFlushNanos != 0 && waitMillis > 0) {
+      frameTimer.setInitialDelay((int) waitMillis);
+      frameTimer.restart();
+    } else {
+      flush();
+    }
+  }
+
+  /**
+   * Function to apply every pending change to the view, on the event dispatch thread
+   */
+  private void flush() {
+    TableChange change;
+    TransactionColumns changedColumns;
+    double total;
+    int firstRow;
+    int lastRow;
+    int[] rows;
+    BitSet highlighted;
+    double highlightedTotal;
+    List<Runnable> work;
+    synchronized (this) {
+      change = tableChange;
+      changedColumns = columns;
+      total = totalCost;
+      firstRow = firstInsertedRow;
+      lastRow = lastInsertedRow;
+      rows = deletedRows;
+      highlighted = highlightedRows;
+      highlightedTotal = filteredTotal;
+      work = new ArrayList<>(tasks);
+
+      tableChange = TableChange.NONE;
+      columns = null;
+      deletedRows = null;
+      highlightedRows = null;
+      tasks.clear();
+      flushRequested = false;
+    }
+    lastFlushNanos = System.nanoTime();
+
+    long start = Metrics.start();
+    TransactionTableModel table = view.getTableModel();
+    if (change == TableChange.INSERTED) {
+      table.rowsInserted(changedColumns, total, firstRow, lastRow);
+    } else if (change == TableChange.DELETED) {
+      table.rowsDeleted(changedColumns, total, rows);
+    } else if (change == TableChange.REFRESH) {
+      table.setColumns(changedColumns, total);
+    }
+    if (highlighted != null) {
+      view.highlightRows(highlighted);
+      view.setFilteredTotal(highlightedTotal);
+    }
+    // The tasks (e.g. modal dialogs) are not part of the update
+    viewUpdated(start);
+    for (Runnable task : work) {
+      task.run();
+    }
+  }
+
+}
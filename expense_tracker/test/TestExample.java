@@ -1,6 +1,8 @@
 // package test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Date;
@@ -12,9 +14,26 @@ import org.junit.Test;
 import org.junit.After;
 
 import controller.ExpenseTrackerController;
+import controller.InputValidation;
+import model.CategoryDictionary;
 import model.ExpenseTrackerModel;
 import model.Transaction;
+import model.TransactionChange;
+import model.TransactionColumns;
+import model.TransactionChangeEvent;
+import model.MappedTransactionStore;
+import model.ParallelScan;
+import model.TransactionAggregates;
+import model.TransactionIndex;
+import model.TransactionRollup;
+import model.TransactionSnapshot;
+import model.Persistence.TransactionExporter;
+import model.Persistence.TransactionImporter;
+import model.Persistence.TransactionJournal;
 import view.ExpenseTrackerView;
+import view.ViewUpdateQueue;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
 import java.awt.Component;
 import java.awt.Container;
 import java.awt.Window;
@@ -364,9 +383,1042 @@ public class TestExample {
         assertEquals(view_total_cost - amount, getTotalCost(view.getTableModel().getRowCount()), 0.01);
     }
 
+    @Test
+    public void testColumnarStoreAcrossChunks() {
+        // Pre-condition: List of transactions is empty
+        assertEquals(0, model.getTransactions().size());
+
+        // Perform the action: Add enough transactions to fill more than one storage chunk
+        int count = 5000;
+        for (int i = 0; i < count; i++) {
+            model.addTransaction(new Transaction(1 + (i % 1000), i % 2 == 0 ? "food" : "travel"));
+        }
+        Transaction next = model.getTransactions().get(4096);
+
+        // Perform the action: Remove the last row of the first chunk
+        model.removeTransaction(4095);
+
+        // Post-condition: the following rows moved up by one, across the chunk boundary
+        assertEquals(count - 1, model.getSnapshot().size());
+        assertEquals(next, model.getTransactions().get(4095));
+        assertEquals(next.getAmount(), model.getSnapshot().asColumns().getAmount(4095), 0.01);
+        assertEquals(next.getCategory(), model.getSnapshot().asColumns().getCategory(4095));
+    }
+
+    @Test
+    public void testSnapshotIsStable() {
+        // Pre-condition: two transactions in the model
+        model.addTransaction(new Transaction(50.0, "food"));
+        model.addTransaction(new Transaction(120.0, "travel"));
+        List<Transaction> snapshot = model.getTransactions();
+
+        // Without changes, readers share the same snapshot
+        assertTrue(snapshot == model.getTransactions());
+
+        // Perform the action: Remove one transaction and add another one
+        model.removeTransaction(0);
+        model.addTransaction(new Transaction(100.0, "bills"));
+
+        // Post-condition: the old snapshot still shows the old transactions
+        assertEquals(2, snapshot.size());
+        assertEquals(50.0, snapshot.get(0).getAmount(), 0.01);
+        assertEquals("travel", snapshot.get(1).getCategory());
+        // and the new one shows the changes
+        assertEquals(2, model.getTransactions().size());
+        assertEquals("bills", model.getTransactions().get(1).getCategory());
+    }
+
+    @Test
+    public void testFilterRows() {
+        // Pre-condition: transactions of different categories in the model
+        model.addTransaction(new Transaction(50.0, "food"));
+        model.addTransaction(new Transaction(120.0, "travel"));
+        model.addTransaction(new Transaction(50.0, "food"));
+
+        // Perform the action: Ask the filters for the positions of the matching rows
+        java.util.BitSet categoryRows = new CategoryFilter("food").filterRows(model.getSnapshot().asColumns());
+        java.util.BitSet amountRows = new AmountFilter(120.0).filterRows(model.getSnapshot().asColumns());
+
+        // Post-condition: every matching row is reported once, by position
+        assertEquals(2, categoryRows.cardinality());
+        assertTrue(categoryRows.get(0) && categoryRows.get(2));
+        assertEquals(1, amountRows.cardinality());
+        assertTrue(amountRows.get(1));
+    }
+
+    @Test
+    public void testCompositeFilter() {
+        // Pre-condition: transactions of different amounts and categories in the model
+        model.addTransaction(new Transaction(50.0, "food"));
+        model.addTransaction(new Transaction(120.0, "travel"));
+        model.addTransaction(new Transaction(300.0, "food"));
+        model.addTransaction(new Transaction(80.0, "bills"));
+
+        // Perform the action: food or bills, between 60 and 500
+        TransactionFilter filter = new AndFilter(
+            new CategorySetFilter("food", "bills"),
+            new AmountRangeFilter(60.0, 500.0));
+        List<Transaction> filteredTransactions = filter.filter(model.getTransactions());
+
+        // Post-condition: only the matching transactions are returned, in order
+        assertEquals(2, filteredTransactions.size());
+        assertEquals(300.0, filteredTransactions.get(0).getAmount(), 0.01);
+        assertEquals(80.0, filteredTransactions.get(1).getAmount(), 0.01);
+
+        // The largest amount that is not food
+        java.util.BitSet rows = new TopNFilter(new NotFilter(new CategoryFilter("food")), 1).filterRows(model.getSnapshot().asColumns());
+        assertEquals(1, rows.cardinality());
+        assertTrue(rows.get(1));
+    }
+
+    @Test
+    public void testRunningAggregates() {
+        // Perform the action: Add transactions and remove one of them
+        model.addTransaction(new Transaction(50.0, "food"));
+        model.addTransaction(new Transaction(120.0, "travel"));
+        model.addTransaction(new Transaction(0.1, "food"));
+        model.addTransaction(new Transaction(0.2, "food"));
+        model.removeTransaction(0);
+
+        // Post-condition: the aggregates match the remaining transactions
+        TransactionAggregates aggregates = model.getAggregates();
+        assertEquals(3, aggregates.getCount());
+        assertEquals(getTotalCost(), aggregates.getTotal(), 1e-9);
+        assertEquals(0.1, aggregates.getMinAmount(), 1e-9);
+        assertEquals(120.0, aggregates.getMaxAmount(), 1e-9);
+        int foodCode = model.getSnapshot().asColumns().findCategoryCode("food");
+        assertEquals(2, aggregates.getCategoryCount(foodCode));
+        assertEquals(0.3, aggregates.getCategoryTotal(foodCode), 1e-12);
+
+        // The subtotal of a category filter comes from the same aggregates
+        CategoryFilter filter = new CategoryFilter("food");
+        TransactionColumns snapshot = model.getSnapshot().asColumns();
+        assertEquals(0.3, filter.subtotal(snapshot, filter.filterRows(snapshot)), 1e-12);
+    }
+
+    @Test
+    public void testJournalReplay() throws java.io.IOException {
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("transactions", ".journal");
+        try {
+            // Perform the action: Add and remove transactions through a journaled model
+            TransactionJournal journal = TransactionJournal.open(file, TransactionJournal.SyncPolicy.EVERY_WRITE);
+            ExpenseTrackerModel journaledModel = new ExpenseTrackerModel(journal.getStore());
+            journaledModel.addTransaction(new Transaction(50.0, "food"));
+            journaledModel.addTransaction(new Transaction(120.0, "travel"));
+            journaledModel.addTransaction(new Transaction(100.0, "bills"));
+            journaledModel.removeTransaction(1);
+            List<Transaction> saved = journaledModel.getTransactions();
+            journal.close();
+
+            // Post-condition: reopening the journal restores the same transactions
+            journal = TransactionJournal.open(file, TransactionJournal.SyncPolicy.EVERY_WRITE);
+            ExpenseTrackerModel restoredModel = new ExpenseTrackerModel(journal.getStore());
+            assertEquals(saved, restoredModel.getTransactions());
+            assertEquals(150.0, restoredModel.getAggregates().getTotal(), 0.01);
+            journal.close();
+        } finally {
+            java.nio.file.Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testMappedSnapshot() throws java.io.IOException {
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("transactions", ".snapshot");
+        try {
+            // Pre-condition: A model holding a few transactions
+            ExpenseTrackerModel source = new ExpenseTrackerModel();
+            source.addTransaction(new Transaction(50.0, "food"));
+            source.addTransaction(new Transaction(120.0, "travel"));
+            source.addTransaction(new Transaction(100.0, "bills"));
+
+            // Perform the action: Write the transactions to a snapshot and map it again
+            MappedTransactionStore.write(source.getSnapshot().asColumns(), file, 7);
+            MappedTransactionStore store = MappedTransactionStore.open(file);
+            ExpenseTrackerModel mappedModel = new ExpenseTrackerModel(store);
+
+            // Post-condition: The mapped rows are the written ones, and the store still accepts changes
+            assertEquals(7, store.getGeneration());
+            assertEquals(source.getTransactions(), mappedModel.getTransactions());
+            mappedModel.addTransaction(new Transaction(30.0, "food"));
+            assertEquals(store.findCategoryCode("food"), store.getCategoryCode(3));
+            List<Transaction> beforeRemove = mappedModel.getTransactions();
+            mappedModel.removeTransaction(0);
+            assertEquals(4, beforeRemove.size());
+            assertEquals(3, mappedModel.getTransactions().size());
+            assertEquals(250.0, mappedModel.getAggregates().getTotal(), 0.01);
+        } finally {
+            java.nio.file.Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testConcurrentTimestampFormatting() throws Exception {
+        // Pre-condition: Timestamps one hour apart, formatted once as a reference
+        long start = System.currentTimeMillis();
+        String[] expected = new String[2048];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = new java.text.SimpleDateFormat("dd-MM-yyyy HH:mm").format(new Date(start + i * 3600000L));
+        }
+
+        // Perform the action: Format the same timestamps from several threads at once
+        java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(4);
+        List<java.util.concurrent.Future<Boolean>> results = new java.util.ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            results.add(executor.submit(() -> {
+                for (int round = 0; round < 50; round++) {
+                    for (int i = 0; i < expected.length; i++) {
+                        if (!expected[i].equals(Transaction.formatTimestamp(start + i * 3600000L))) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }));
+        }
+
+        // Post-condition: Every thread read the right text, and it parses back to the same minute
+        for (java.util.concurrent.Future<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+        executor.shutdown();
+        assertEquals(start / 60000 * 60000, Transaction.parseTimestamp(Transaction.formatTimestamp(start)));
+    }
+
+    @Test
+    public void testBatchValidation() {
+        // Pre-condition: A batch mixing valid and invalid rows
+        double[] amounts = {50.0, -1.0, 120.0, Double.NaN, 1000.0};
+        String[] categories = {"FOOD", "food", "Trav3l", "bills", "Other"};
+
+        // Perform the action: Validate the whole batch at once
+        java.util.BitSet invalidRows = InputValidation.findInvalidRows(amounts, categories, amounts.length);
+
+        // Post-condition: Only the invalid rows are reported, and categories are matched ignoring case
+        assertEquals(java.util.BitSet.valueOf(new long[] {0b01110}), invalidRows);
+        assertTrue(InputValidation.isValidCategory("FoOd"));
+        assertFalse(InputValidation.isValidCategory("foods"));
+    }
+
+    @Test
+    public void testCustomCategory() {
+        // Pre-condition: Only names made of letters can become categories
+        assertEquals(false, InputValidation.isValidCategoryName("groceries2"));
+
+        // Perform the action: Register the category and use it
+        int code = model.addCategory("Groceries");
+        model.addTransaction(new Transaction(40.0, "groceries"));
+        model.addTransaction(new Transaction(60.0, "food"));
+        model.addTransaction(new Transaction(25.0, "GROCERIES"));
+
+        // Post-condition: Rows hold the shared code, and filters compare codes
+        assertEquals(code, model.addCategory("groceries"));
+        assertEquals(code, CategoryDictionary.codeOf("GroCeries"));
+        assertEquals(code, model.getTransactions().get(2).getCategoryCode());
+        assertEquals("groceries", model.getTransactions().get(2).getCategory());
+        assertEquals(2, new CategoryFilter("Groceries").filter(model.getTransactions()).size());
+        assertEquals(65.0, model.getAggregates().getCategoryTotal(code), 0.01);
+    }
+
+    @Test
+    public void testImportCsv() throws java.io.IOException {
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("statement", ".csv");
+        try {
+            // Pre-condition: A bank export with a header, quoted fields and one invalid line
+            java.nio.file.Files.write(file, java.util.Arrays.asList(
+                "Amount,Category,Date",
+                "50.0,food,01-03-2024 12:30",
+                "\"120\",\"Travel\"",
+                "abc,bills",
+                "100.0,bills,1700000000000"));
+
+            // Perform the action: Import the file into the model in batches
+            List<Integer> batchSizes = new java.util.ArrayList<>();
+            TransactionImporter.ImportResult result = TransactionImporter.forFile(file).importFile(file, batch -> {
+                batchSizes.add(batch.size());
+                for (Transaction t : batch) {
+                    model.addTransaction(t);
+                }
+            });
+
+            // Post-condition: The valid rows are added in file order, and the invalid line is reported
+            assertEquals(3, result.getImportedCount());
+            assertEquals(1, result.getRejectedCount());
+            assertEquals(4, result.getRejectedLines()[0]);
+            assertEquals(java.util.Collections.singletonList(3), batchSizes);
+            List<Transaction> transactions = model.getTransactions();
+            assertEquals("01-03-2024 12:30", transactions.get(0).getTimestamp());
+            assertEquals("travel", transactions.get(1).getCategory());
+            assertEquals(1700000000000L, transactions.get(2).getEpochMillis());
+            assertEquals(270.0, model.getAggregates().getTotal(), 0.01);
+        } finally {
+            java.nio.file.Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testExportFilteredTransactions() throws Exception {
+        java.nio.file.Path csvFile = java.nio.file.Files.createTempFile("export", ".csv");
+        java.nio.file.Path binaryFile = java.nio.file.Files.createTempFile("export", ".bin");
+        try {
+            // Pre-condition: A model holding food and travel transactions
+            model.addTransaction(new Transaction(50.0, "food"));
+            model.addTransaction(new Transaction(120.0, "travel"));
+            model.addTransaction(new Transaction(30.0, "food"));
+            TransactionColumns snapshot = model.getSnapshot().asColumns();
+            CategoryFilter filter = new CategoryFilter("food");
+
+            // Perform the action: Export the food transactions in both formats
+            int csvRows = TransactionExporter.export(snapshot, filter, csvFile, TransactionExporter.Format.CSV);
+            int binaryRows = TransactionExporter.exportInBackground(snapshot, filter.filterRows(snapshot), binaryFile,
+                TransactionExporter.Format.BINARY).get();
+
+            // Post-condition: Both files hold only the matching rows, and read back the same way
+            assertEquals(2, csvRows);
+            assertEquals(2, binaryRows);
+            List<String> lines = java.nio.file.Files.readAllLines(csvFile);
+            assertEquals(3, lines.size());
+            assertEquals("50.0,food," + snapshot.getTimestamp(0), lines.get(1));
+            List<Transaction> imported = new java.util.ArrayList<>();
+            TransactionImporter.forFile(csvFile).importFile(csvFile, imported::addAll);
+            assertEquals(filter.filter(model.getTransactions()), imported);
+            assertEquals(filter.filter(model.getTransactions()), new ExpenseTrackerModel(MappedTransactionStore.open(binaryFile)).getTransactions());
+        } finally {
+            java.nio.file.Files.deleteIfExists(csvFile);
+            java.nio.file.Files.deleteIfExists(binaryFile);
+        }
+    }
+
+    @Test
+    public void testBatchAddAndRemove() {
+        // Pre-condition: A batch of transactions added as one change
+        List<Transaction> batch = java.util.Arrays.asList(
+            new Transaction(50.0, "food"),
+            new Transaction(120.0, "travel"),
+            new Transaction(100.0, "bills"),
+            new Transaction(30.0, "food"));
+        model.addTransactions(batch);
+        long version = model.getVersion();
+        assertEquals(batch, model.getTransactions());
+
+        // Perform the action: Remove scattered rows, in any order, as one change
+        model.removeTransactions(new int[] {2, 0, 2});
+
+        // Post-condition: The remaining rows keep their order, and indexes and aggregates follow
+        assertEquals(version + 1, model.getVersion());
+        assertEquals(java.util.Arrays.asList(batch.get(1), batch.get(3)), model.getTransactions());
+        assertEquals(150.0, model.getAggregates().getTotal(), 0.01);
+        assertEquals(java.util.BitSet.valueOf(new long[] {0b10}), new CategoryFilter("food").filterRows(model.getSnapshot().asColumns()));
+
+        // An invalid index is rejected and leaves every transaction in place
+        boolean rejected = false;
+        try {
+            model.removeTransactions(new int[] {0, 5});
+        } catch (IndexOutOfBoundsException e) {
+            rejected = true;
+        }
+        assertTrue(rejected);
+        assertEquals(2, model.getTransactions().size());
+        assertEquals(version + 1, model.getVersion());
+    }
+
     private double getTotalCost(int row_number) {
         double total_cost = Double.parseDouble(view.getTableModel().getValueAt(row_number - 1, 3).toString());
         return total_cost;
     }
 
+    @Test
+    public void testDeleteById() {
+        // Pre-condition: Transactions read back from the model carry stable ids
+        model.addTransaction(new Transaction(50.0, "food"));
+        model.addTransaction(new Transaction(120.0, "travel"));
+        model.addTransaction(new Transaction(30.0, "food"));
+        long firstId = model.getTransactions().get(0).getId();
+        long lastId = model.getTransactions().get(2).getId();
+        assertEquals(Transaction.NO_ID, new Transaction(10.0, "food").getId());
+        assertTrue(firstId != lastId);
+
+        // Perform the action: Delete the middle transaction by its id
+        assertTrue(model.removeTransactionById(model.getTransactions().get(1).getId()));
+
+        // Post-condition: The other transactions keep their ids, and the deleted id is gone for good
+        assertEquals(2, model.getTransactions().size());
+        assertEquals(firstId, model.getTransactions().get(0).getId());
+        assertEquals(lastId, model.getTransactions().get(1).getId());
+        assertEquals(1, model.getSnapshot().asColumns().rowOf(lastId));
+        assertFalse(model.removeTransactionById(model.getTransactions().get(1).getId() - 1));
+        assertEquals(80.0, model.getAggregates().getTotal(), 0.01);
+        assertEquals(java.util.BitSet.valueOf(new long[] {0b11}), new CategoryFilter("food").filterRows(model.getSnapshot().asColumns()));
+
+        // A new transaction gets a new id, and a batch with an unknown id deletes nothing
+        model.addTransaction(new Transaction(20.0, "bills"));
+        assertTrue(model.getTransactions().get(2).getId() > lastId);
+        assertFalse(model.removeTransactionsById(new long[] {firstId, -5}));
+        assertEquals(3, model.getTransactions().size());
+    }
+
+    @Test
+    public void testCoalescedViewUpdates() throws Exception {
+        // Pre-condition: A controller running its operations in the background, counting the table updates
+        ExpenseTrackerController backgroundController = new ExpenseTrackerController(new ExpenseTrackerModel(), view,
+            new ViewUpdateQueue(view, ViewUpdateQueue.DEFAULT_FRAME_MILLIS));
+        java.util.concurrent.atomic.AtomicInteger tableEvents = new java.util.concurrent.atomic.AtomicInteger();
+        view.getTableModel().addTableModelListener(e -> tableEvents.incrementAndGet());
+
+        // Perform the action: Add 100 transactions as fast as possible
+        List<java.util.concurrent.CompletableFuture<Boolean>> results = new java.util.ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            double amount = i + 1;
+            results.add(backgroundController.submit(() -> backgroundController.addTransaction(amount, "food")));
+        }
+        for (java.util.concurrent.CompletableFuture<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+        // Let the last frame end, then wait for its update on the event dispatch thread
+        Thread.sleep(4 * ViewUpdateQueue.DEFAULT_FRAME_MILLIS);
+        SwingUtilities.invokeAndWait(() -> { });
+        SwingUtilities.invokeAndWait(() -> { });
+
+        // Post-condition: The table shows every transaction and the total, after fewer updates than changes
+        assertEquals(101, view.getTableModel().getRowCount());
+        assertEquals(5050.0, getTotalCost(101), 0.01);
+        assertTrue(tableEvents.get() < 100);
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        // Pre-condition: Several threads adding transactions while another one reads snapshots
+        int writers = 4;
+        int addsPerWriter = 5000;
+        java.util.concurrent.atomic.AtomicBoolean stop = new java.util.concurrent.atomic.AtomicBoolean();
+        java.util.concurrent.atomic.AtomicInteger inconsistent = new java.util.concurrent.atomic.AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (!stop.get()) {
+                TransactionColumns snapshot = model.getSnapshot().asColumns();
+                TransactionAggregates aggregates = snapshot.getAggregates();
+                int foodRows = 0;
+                for (int row = 0; row < snapshot.size(); row++) {
+                    if (snapshot.getCategory(row).equals("food")) {
+                        foodRows++;
+                    }
+                }
+                // Every view of a snapshot agrees with its rows, whatever the writers do meanwhile
+                if (new CategoryFilter("food").filterRows(snapshot).cardinality() != foodRows
+                    || (aggregates != null && aggregates.getCount() != snapshot.size())) {
+                    inconsistent.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+
+        // Perform the action: Add the transactions from every writer at the same time
+        List<Thread> threads = new java.util.ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            String category = w % 2 == 0 ? "food" : "travel";
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < addsPerWriter; i++) {
+                    model.addTransaction(new Transaction(1.0, category));
+                }
+            });
+            writer.start();
+            threads.add(writer);
+        }
+        for (Thread writer : threads) {
+            writer.join();
+        }
+        stop.set(true);
+        reader.join();
+
+        // Post-condition: No add is lost, and the reader only ever saw consistent snapshots
+        assertEquals(writers * addsPerWriter, model.getTransactions().size());
+        assertEquals(writers * addsPerWriter, model.getAggregates().getTotal(), 0.01);
+        assertEquals(writers * addsPerWriter / 2, new CategoryFilter("food").filterRows(model.getSnapshot().asColumns()).cardinality());
+        assertEquals(0, inconsistent.get());
+    }
+
+    @Test
+    public void testChangeEvents() {
+        // Pre-condition: A listener recording the changes of the model
+        List<TransactionChangeEvent> events = new java.util.ArrayList<>();
+        model.addTransactionListener(events::add);
+
+        // Perform the action: Add a batch and a single transaction, then delete two of them
+        model.addTransactions(java.util.Arrays.asList(new Transaction(50.0, "food"), new Transaction(120.0, "travel")));
+        model.addTransaction(new Transaction(30.0, "food"));
+        long firstId = model.getTransactions().get(0).getId();
+        long lastId = model.getTransactions().get(2).getId();
+        model.removeTransactionsById(new long[] {lastId, firstId});
+
+        // Post-condition: One event per change, each with its delta and the resulting transactions
+        assertEquals(3, events.size());
+        TransactionChange batch = events.get(0).getChanges().get(0);
+        assertEquals(TransactionChange.Type.INSERTED, batch.getType());
+        assertEquals(0, batch.getFirstRow());
+        assertEquals(1, batch.getLastRow());
+        assertEquals(firstId, batch.getFirstId());
+        assertEquals(2, events.get(0).getSnapshot().size());
+        assertEquals(2, events.get(1).getChanges().get(0).getFirstRow());
+        TransactionChange deletion = events.get(2).getChanges().get(0);
+        assertEquals(TransactionChange.Type.DELETED, deletion.getType());
+        assertTrue(java.util.Arrays.equals(new long[] {firstId, lastId}, deletion.getDeletedIds()));
+        assertTrue(java.util.Arrays.equals(new int[] {0, 2}, deletion.getDeletedRows()));
+        assertEquals(80.0, deletion.getDeletedAmounts()[0] + deletion.getDeletedAmounts()[1], 0.01);
+        assertEquals(model.getTransactions(), events.get(2).getSnapshot().asList());
+    }
+
+    @Test
+    public void testLatencyHistogram() throws java.io.IOException {
+        // Pre-condition: Latencies from 1 microsecond to 1 millisecond
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        // Perform the action: Read the percentiles, and export the metrics to a file
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Metrics.ADD_TRANSACTION.record(42);
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("metrics", ".csv");
+        Metrics.writeSnapshot(file);
+        List<String> lines = java.nio.file.Files.readAllLines(file);
+        java.nio.file.Files.delete(file);
+
+        // Post-condition: The percentiles are within the precision of the buckets, and every metric is exported
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500_500, snapshot.getMean(), 0.01);
+        assertEquals(500_000, snapshot.getPercentile(50), 500_000 * 0.04);
+        assertEquals(990_000, snapshot.getPercentile(99), 990_000 * 0.04);
+        assertEquals(1_000_000, snapshot.getPercentile(100));
+        assertEquals(1_000_000, snapshot.getMax());
+        assertEquals("name,count,mean_ns,p50_ns,p90_ns,p99_ns,p999_ns,max_ns", lines.get(0));
+        assertEquals(1 + Metrics.getTimers().size() + Metrics.getCounters().size(), lines.size());
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("controller.addTransaction,") && !line.startsWith("controller.addTransaction,0,")));
+    }
+
+    @Test
+    public void testTimeWindowFilter() {
+        // Pre-condition: Transactions created one minute apart
+        for (int minute = 0; minute < 10; minute++) {
+            model.addTransaction(Transaction.restore(10.0, "food", minute * 60_000L));
+        }
+        TimeWindowFilter window = new TimeWindowFilter(2 * 60_000L, 5 * 60_000L);
+        assertTrue(model.getSnapshot().asColumns().getIndex().isTimeOrdered());
+        assertEquals(java.util.Arrays.asList(2, 3, 4), window.filterRows(model.getSnapshot().asColumns()).stream().boxed().collect(java.util.stream.Collectors.toList()));
+
+        // Perform the action: Add an older transaction after the others, and delete one in the window
+        model.addTransaction(Transaction.restore(20.0, "travel", 3 * 60_000L + 1));
+        model.removeTransaction(2);
+
+        // Post-condition: The window is still found through the index, with the same rows as a scan
+        TransactionColumns snapshot = model.getSnapshot().asColumns();
+        assertFalse(snapshot.getIndex().isTimeOrdered());
+        java.util.BitSet scanned = new java.util.BitSet();
+        for (int row = 0; row < snapshot.size(); row++) {
+            if (window.matches(snapshot, row)) {
+                scanned.set(row);
+            }
+        }
+        assertEquals(scanned, window.filterRows(snapshot));
+        assertEquals(3, window.filter(model.getTransactions()).size());
+        assertEquals(40.0, window.subtotal(snapshot, window.filterRows(snapshot)), 0.01);
+        assertEquals(1, TimeWindowFilter.thisMonth().filter(java.util.Arrays.asList(new Transaction(5.0, "food"))).size());
+    }
+
+    @Test
+    public void testRollups() {
+        // Pre-condition: Transactions on two days of March and one day of April
+        java.time.ZoneId zone = Transaction.TIMESTAMP_ZONE;
+        java.time.LocalDate march1 = java.time.LocalDate.of(2024, 3, 1);
+        java.time.LocalDate march2 = java.time.LocalDate.of(2024, 3, 2);
+        java.time.LocalDate april5 = java.time.LocalDate.of(2024, 4, 5);
+        model.addTransaction(Transaction.restore(10.0, "food", march1.atTime(9, 0).atZone(zone).toInstant().toEpochMilli()));
+        model.addTransaction(Transaction.restore(15.0, "food", march1.atTime(23, 59).atZone(zone).toInstant().toEpochMilli()));
+        model.addTransaction(Transaction.restore(40.0, "travel", march2.atTime(12, 0).atZone(zone).toInstant().toEpochMilli()));
+        model.addTransaction(Transaction.restore(70.0, "food", april5.atTime(8, 30).atZone(zone).toInstant().toEpochMilli()));
+        TransactionAggregates aggregates = model.getAggregates();
+        int food = CategoryDictionary.codeOf("food");
+
+        // Perform the action: Delete the April transaction
+        model.removeTransaction(3);
+
+        // Post-condition: The daily and monthly totals per category reflect every add and remove
+        assertEquals(25.0, aggregates.getBucketTotal(TransactionRollup.Granularity.DAY, march1, food), 0.01);
+        assertEquals(2, aggregates.getBucketCount(TransactionRollup.Granularity.DAY, march1, food));
+        assertEquals(0, aggregates.getBucketTotal(TransactionRollup.Granularity.MONTH, april5, food), 0.01);
+        List<TransactionRollup.Row> march = aggregates.getRollup(TransactionRollup.Granularity.MONTH, march2, april5);
+        assertEquals(2, march.size());
+        assertEquals(march1, march.get(0).getBucket());
+        assertEquals(25.0, march.get(0).getTotal(), 0.01);
+        assertEquals("travel", march.get(1).getCategory());
+        assertEquals(2, aggregates.getRollup(TransactionRollup.Granularity.DAY, march1, april5).size());
+    }
+
+    @Test
+    public void testParallelScan() {
+        // Pre-condition: Enough transactions for a scan to be split into chunks, with some removed
+        for (int i = 0; i < 300_000; i++) {
+            model.addTransaction(new Transaction(1 + i % 100, i % 3 == 0 ? "food" : "travel"));
+        }
+        model.removeTransactions(new int[] {0, 1, 64, 4096, 299_999});
+        TransactionColumns snapshot = model.getSnapshot().asColumns();
+        TransactionFilter cheap = AmountRangeFilter.atLeast(50);
+
+        // Perform the action: Filter and add up the rows, through the (possibly parallel) scans
+        java.util.BitSet rows = ParallelScan.filterRows(snapshot.size(), 1, row -> cheap.matches(snapshot, row));
+        java.util.BitSet refined = ParallelScan.refine(rows, 1, row -> snapshot.getCategoryCode(row) == CategoryDictionary.codeOf("food"));
+        double total = ParallelScan.sum(snapshot, refined);
+
+        // Post-condition: The results are those of a sequential loop, whether the scans ran in parallel or not
+        java.util.BitSet expected = new java.util.BitSet();
+        double expectedTotal = 0;
+        for (int row = 0; row < snapshot.size(); row++) {
+            if (snapshot.getAmount(row) >= 50 && "food".equals(snapshot.getCategory(row))) {
+                expected.set(row);
+                expectedTotal += snapshot.getAmount(row);
+            }
+        }
+        assertEquals(expected, refined);
+        assertEquals(expectedTotal, total, 0.001);
+        assertEquals(expected.cardinality(), new AndFilter(cheap, new CategoryFilter("food")).filter(model.getTransactions()).size());
+    }
+
+    @Test
+    public void testParallelScanAfterRemoves() {
+        // Pre-condition: Rows removed all over the store, so that its chunks have different sizes
+        // and do not start at a multiple of 64 rows, then more rows added after them
+        for (int i = 0; i < 200_000; i++) {
+            model.addTransaction(new Transaction(1 + i % 97, i % 5 == 0 ? "food" : "travel"));
+        }
+        int[] removed = new int[20_000];
+        for (int i = 0; i < removed.length; i++) {
+            removed[i] = i * 10 + i % 7;
+        }
+        model.removeTransactions(removed);
+        model.removeTransactions(new int[] {5000, 5001, 5002, 100_000});
+        for (int i = 0; i < 10_000; i++) {
+            model.addTransaction(new Transaction(1 + i % 89, "food"));
+        }
+        TransactionColumns snapshot = model.getSnapshot().asColumns();
+        TransactionFilter filter = new OrFilter(AmountRangeFilter.above(80), new NotFilter(new CategoryFilter("travel")));
+
+        // Perform the action: Scan the chunks on a pool of several threads and on a pool of one thread
+        java.util.concurrent.ForkJoinPool parallel = new java.util.concurrent.ForkJoinPool(4);
+        java.util.concurrent.ForkJoinPool sequential = new java.util.concurrent.ForkJoinPool(1);
+        try {
+            assertTrue(ParallelScan.isParallel(snapshot.size(), filter.cost(), parallel));
+            java.util.BitSet parallelRows = ParallelScan.filterRows(snapshot, filter.cost(), filter::compile, parallel);
+            java.util.BitSet sequentialRows = ParallelScan.filterRows(snapshot, filter.cost(), filter::compile, sequential);
+
+            // Post-condition: Both scans find the rows of a loop over every row, and add them up to the same total
+            java.util.BitSet expected = new java.util.BitSet();
+            double expectedTotal = 0;
+            for (int row = 0; row < snapshot.size(); row++) {
+                if (filter.matches(snapshot, row)) {
+                    expected.set(row);
+                    expectedTotal += snapshot.getAmount(row);
+                }
+            }
+            assertEquals(expected, parallelRows);
+            assertEquals(expected, sequentialRows);
+            assertEquals(expectedTotal, ParallelScan.sum(snapshot, parallelRows, parallel), 0.001);
+            assertEquals(expectedTotal, ParallelScan.sum(snapshot, sequentialRows, sequential), 0.001);
+        } finally {
+            parallel.shutdown();
+            sequential.shutdown();
+        }
+    }
+
+    @Test
+    public void testJournalCompactionDuringChanges() throws Exception {
+        java.nio.file.Path directory = java.nio.file.Files.createTempDirectory("journal");
+        java.nio.file.Path file = directory.resolve("transactions.journal");
+        try {
+            // Pre-condition: A journaled model
+            TransactionJournal journal = TransactionJournal.open(file, TransactionJournal.SyncPolicy.NO_SYNC);
+            ExpenseTrackerModel journaledModel = new ExpenseTrackerModel(journal.getStore());
+
+            // Perform the action: Compact the journal again and again while two threads add and remove transactions
+            Thread[] writers = new Thread[2];
+            for (int w = 0; w < writers.length; w++) {
+                writers[w] = new Thread(() -> {
+                    for (int i = 0; i < 5000; i++) {
+                        journaledModel.addTransaction(new Transaction(1 + i % 100, i % 2 == 0 ? "food" : "bills"));
+                        if (i % 10 == 0) {
+                            journaledModel.removeTransaction(0);
+                        }
+                    }
+                });
+                writers[w].start();
+            }
+            for (int i = 0; i < 20; i++) {
+                journal.compact();
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            List<Transaction> saved = journaledModel.getTransactions();
+            journal.close();
+
+            // Post-condition: Reopening the journal restores every change, whether it came before or during a compaction
+            journal = TransactionJournal.open(file, TransactionJournal.SyncPolicy.NO_SYNC);
+            List<Transaction> restored = new ExpenseTrackerModel(journal.getStore()).getTransactions();
+            journal.close();
+            assertEquals(saved.size(), restored.size());
+            for (int i = 0; i < saved.size(); i++) {
+                assertEquals(saved.get(i).getAmount(), restored.get(i).getAmount(), 0.001);
+                assertEquals(saved.get(i).getCategory(), restored.get(i).getCategory());
+            }
+        } finally {
+            for (java.io.File leftover : directory.toFile().listFiles()) {
+                leftover.delete();
+            }
+            java.nio.file.Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testJournalRecordThatCannotBeReplayed() throws java.io.IOException {
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("transactions", ".journal");
+        try {
+            // Pre-condition: A journal holding two transactions, followed by an intact removal of a row that
+            // does not exist and an intact add of a third transaction
+            TransactionJournal journal = TransactionJournal.open(file, TransactionJournal.SyncPolicy.EVERY_WRITE);
+            ExpenseTrackerModel journaledModel = new ExpenseTrackerModel(journal.getStore());
+            journaledModel.addTransaction(new Transaction(50.0, "food"));
+            journaledModel.addTransaction(new Transaction(120.0, "food"));
+            journal.close();
+            long offset = java.nio.file.Files.size(file);
+            java.nio.ByteBuffer records = java.nio.ByteBuffer.allocate(2 * 26);
+            appendJournalRecord(records, java.nio.ByteBuffer.allocate(5).put((byte) 3).putInt(99));
+            appendJournalRecord(records, java.nio.ByteBuffer.allocate(18).put((byte) 2).putDouble(10.0).putLong(0).put((byte) 0));
+            java.nio.file.Files.write(file, java.util.Arrays.copyOf(records.array(), records.position()), java.nio.file.StandardOpenOption.APPEND);
+            long length = java.nio.file.Files.size(file);
+
+            // Perform the action: Reopen the journal
+            boolean rejected = false;
+            try {
+                TransactionJournal.open(file, TransactionJournal.SyncPolicy.EVERY_WRITE).close();
+            } catch (java.io.IOException e) {
+                rejected = true;
+                // Post-condition: The error names the offset of the record, and the records after it are kept
+                assertTrue(e.getMessage().contains("offset " + offset));
+            }
+            assertTrue(rejected);
+            assertEquals(length, java.nio.file.Files.size(file));
+        } finally {
+            java.nio.file.Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Function to append a journal record (type and payload) and its CRC32 to a buffer
+     */
+    private static void appendJournalRecord(java.nio.ByteBuffer target, java.nio.ByteBuffer record) {
+        java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+        crc.update(record.array(), 0, record.position());
+        target.put(record.array(), 0, record.position()).putInt((int) crc.getValue());
+    }
+
+    @Test
+    public void testMappedStoreRemovals() throws java.io.IOException {
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("transactions", ".snapshot");
+        try {
+            // Pre-condition: A mapped store of 10000 rows, with ids 0 to 9999, and one more row added after them
+            ExpenseTrackerModel source = new ExpenseTrackerModel();
+            for (int i = 0; i < 10_000; i++) {
+                source.addTransaction(new Transaction(1 + i % 100, "food"));
+            }
+            MappedTransactionStore.write(source.getSnapshot().asColumns(), file, 1);
+            MappedTransactionStore store = MappedTransactionStore.open(file);
+            store.add(new Transaction(100, "travel"));
+            model.Transaction kept = store.getTransaction(5000);
+
+            // Perform the action: Remove mapped rows in two blocks and the added row, taking a snapshot in between
+            store.removeAll(new int[] {0, 4095, 4096, 4097});
+            model.TransactionColumns before = store.snapshot();
+            store.removeAll(new int[] {1, 9995, 9996});
+
+            // Post-condition: The other rows keep their order and ids, and the snapshot still sees its rows
+            assertEquals(9994, store.size());
+            assertEquals(1, store.getId(0));
+            assertEquals(3, store.getId(1));
+            assertEquals(4094, store.getId(4092));
+            assertEquals(4098, store.getId(4093));
+            assertEquals(9998, store.getId(9993));
+            assertEquals(4995, store.rowOf(kept.getId()));
+            assertEquals(kept, store.getTransaction(4995));
+            assertEquals(9997, before.size());
+            assertEquals(1, before.getId(0));
+            assertEquals(10_000, before.getId(9996));
+            assertEquals(100.0, before.getAmount(9996), 0.001);
+        } finally {
+            java.nio.file.Files.deleteIfExists(file);
+        }
+    }
+
+
+    @Test
+    public void testSnapshotIndexIsBuiltOnce() {
+        // Pre-condition: A snapshot whose indexes have been asked for while it was current
+        model.addTransaction(new Transaction(10.0, "food"));
+        model.addTransaction(new Transaction(20.0, "travel"));
+        model.addTransaction(new Transaction(30.0, "food"));
+        TransactionColumns snapshot = model.getSnapshot().asColumns();
+        TransactionIndex index = snapshot.getIndex();
+        int foodCode = snapshot.findCategoryCode("food");
+
+        // Perform the action: Change the model, then query the snapshot again
+        model.addTransaction(new Transaction(40.0, "food"));
+        model.removeTransaction(0);
+
+        // Post-condition: Every query on the snapshot shares one view, which still describes the snapshot's rows
+        assertSame(index, snapshot.getIndex());
+        assertSame(snapshot.getAggregates(), snapshot.getAggregates());
+        assertEquals(2, index.countWithCategory(foodCode));
+        assertEquals(java.util.Arrays.asList(0, 2), new CategoryFilter("food").filterRows(snapshot).stream().boxed().collect(java.util.stream.Collectors.toList()));
+        assertEquals(java.util.Arrays.asList(1, 2), new CategoryFilter("food").filterRows(model.getSnapshot().asColumns()).stream().boxed().collect(java.util.stream.Collectors.toList()));
+    }
+
+
+    @Test
+    public void testMinMaxAfterRemovingExtremes() {
+        // Pre-condition: The smallest and largest amounts held by two transactions each
+        model.addTransaction(new Transaction(5.0, "food"));
+        model.addTransaction(new Transaction(500.0, "travel"));
+        model.addTransaction(new Transaction(5.0, "bills"));
+        model.addTransaction(new Transaction(50.0, "food"));
+        model.addTransaction(new Transaction(500.0, "food"));
+        TransactionAggregates latest = model.getAggregates();
+        TransactionAggregates before = model.getSnapshot().asColumns().getAggregates();
+
+        // Perform the action: Remove one and then both of the transactions with each extreme
+        model.removeTransactions(new int[] {0, 1});
+        assertEquals(5.0, latest.getMinAmount(), 1e-9);
+        assertEquals(500.0, latest.getMaxAmount(), 1e-9);
+        model.removeTransactions(new int[] {0, 2});
+
+        // Post-condition: The running minimum and maximum follow the removals, and the older snapshot keeps its own
+        assertEquals(50.0, latest.getMinAmount(), 1e-9);
+        assertEquals(50.0, latest.getMaxAmount(), 1e-9);
+        assertEquals(5.0, before.getMinAmount(), 1e-9);
+        assertEquals(500.0, before.getMaxAmount(), 1e-9);
+        model.removeTransaction(0);
+        assertTrue(Double.isNaN(latest.getMinAmount()));
+        assertTrue(Double.isNaN(latest.getMaxAmount()));
+    }
+
+
+    @Test
+    public void testTopNSelectedOncePerSnapshot() {
+        // Pre-condition: A top-3 filter over a filter counting how often the rows are selected
+        for (int i = 1; i <= 100; i++) {
+            model.addTransaction(new Transaction(i, i % 2 == 0 ? "food" : "bills"));
+        }
+        java.util.concurrent.atomic.AtomicInteger selections = new java.util.concurrent.atomic.AtomicInteger();
+        TransactionFilter food = new CategoryFilter("food") {
+            @Override
+            public java.util.BitSet filterRows(model.TransactionColumns columns) {
+                selections.incrementAndGet();
+                return super.filterRows(columns);
+            }
+        };
+        TopNFilter top = new TopNFilter(food, 3);
+        TransactionColumns snapshot = model.getSnapshot().asColumns();
+
+        // Perform the action: Check every row of the snapshot, then filter it and clear the result
+        java.util.BitSet matched = new java.util.BitSet();
+        for (int row = 0; row < snapshot.size(); row++) {
+            if (top.matches(snapshot, row)) {
+                matched.set(row);
+            }
+        }
+        top.filterRows(snapshot).clear();
+
+        // Post-condition: The rows were selected once, and the cached selection is not changed by callers
+        assertEquals(1, selections.get());
+        assertEquals(java.util.Arrays.asList(95, 97, 99), matched.stream().boxed().collect(java.util.stream.Collectors.toList()));
+        assertEquals(matched, top.filterRows(snapshot));
+        assertTrue(top.cost() > food.cost());
+    }
+
+
+    @Test
+    public void testRemoveTransactionsChecksIndexesInTheModel() {
+        // Pre-condition: Three transactions
+        model.addTransaction(new Transaction(10.0, "food"));
+        model.addTransaction(new Transaction(20.0, "travel"));
+        model.addTransaction(new Transaction(30.0, "bills"));
+
+        // Perform the action: Delete rows including one past the end, then rows that exist
+        boolean outOfRange = controller.removeTransactions(new int[] {0, 3});
+        boolean removed = controller.removeTransactions(new int[] {2, 0});
+
+        // Post-condition: The first deletion removes nothing, the second removes both rows at once
+        assertFalse(outOfRange);
+        assertTrue(removed);
+        assertFalse(controller.removeTransactions(new int[0]));
+        assertEquals(1, model.getTransactions().size());
+        assertEquals(20.0, getTotalCost(), 0.01);
+    }
+
+
+    @Test
+    public void testTimestampFormattersAgree() throws ParseException {
+        // Pre-condition: A time that is not on a minute boundary
+        long time = 1_700_000_123_456L;
+
+        // Perform the action: Format and parse it with a legacy formatter and with the shared one
+        java.text.SimpleDateFormat legacyFormatter = new java.text.SimpleDateFormat("dd-MM-yyyy HH:mm");
+        String legacy = legacyFormatter.format(new Date(time));
+        String shared = Transaction.formatTimestamp(time);
+
+        // Post-condition: Both give the same text, which parses back to the same minute
+        assertEquals(legacy, shared);
+        assertEquals(legacyFormatter.parse(legacy).getTime(), Transaction.parseTimestamp(shared));
+        assertEquals(time / 60000 * 60000, Transaction.parseTimestamp(shared));
+    }
+
+
+    @Test
+    public void testSnapshotViews() {
+        // Pre-condition: A snapshot of three transactions
+        model.addTransaction(new Transaction(10.0, "food"));
+        model.addTransaction(new Transaction(20.0, "travel"));
+        model.addTransaction(new Transaction(30.0, "food"));
+        TransactionSnapshot snapshot = model.getSnapshot();
+
+        // Perform the action: Filter the snapshot as a list and as columns
+        CategoryFilter filter = new CategoryFilter("food");
+        List<Transaction> fromList = filter.filter(snapshot.asList());
+        List<Transaction> fromColumns = filter.filter(snapshot.asColumns());
+
+        // Post-condition: Both views show the same rows, and every reader gets the same views
+        assertEquals(fromList, fromColumns);
+        assertEquals(2, fromColumns.size());
+        assertEquals(3, snapshot.size());
+        assertEquals(snapshot.asList().get(2), snapshot.asColumns().getTransaction(2));
+        assertSame(snapshot.asList(), model.getTransactions());
+        assertSame(snapshot, snapshot.asColumns().getSnapshot());
+    }
+
+
+    @Test
+    public void testJournalSettings() {
+        String journal = System.getProperty("expensetracker.journal");
+        String sync = System.getProperty("expensetracker.journal.sync");
+        try {
+            // Pre-condition: No setting, so the journal is kept under the user's home directory with group commits
+            System.clearProperty("expensetracker.journal");
+            System.clearProperty("expensetracker.journal.sync");
+            assertEquals(java.nio.file.Paths.get(System.getProperty("user.home"), ".expensetracker", "transactions.journal"), ExpenseTrackerApp.journalFile());
+            assertEquals(TransactionJournal.SyncPolicy.GROUP_COMMIT, ExpenseTrackerApp.journalSyncPolicy());
+
+            // Perform the action: Choose another file and sync policy, then turn the journal off
+            System.setProperty("expensetracker.journal", "data/expenses.journal");
+            System.setProperty("expensetracker.journal.sync", "every_write");
+            assertEquals(java.nio.file.Paths.get("data", "expenses.journal"), ExpenseTrackerApp.journalFile());
+            assertEquals(TransactionJournal.SyncPolicy.EVERY_WRITE, ExpenseTrackerApp.journalSyncPolicy());
+            System.setProperty("expensetracker.journal", "");
+            System.setProperty("expensetracker.journal.sync", "sometimes");
+
+            // Post-condition: No journal file, and an unknown sync policy is rejected
+            assertEquals(null, ExpenseTrackerApp.journalFile());
+            boolean rejected = false;
+            try {
+                ExpenseTrackerApp.journalSyncPolicy();
+            } catch (IllegalArgumentException e) {
+                rejected = true;
+            }
+            assertTrue(rejected);
+        } finally {
+            if (journal == null) {
+                System.clearProperty("expensetracker.journal");
+            } else {
+                System.setProperty("expensetracker.journal", journal);
+            }
+            if (sync == null) {
+                System.clearProperty("expensetracker.journal.sync");
+            } else {
+                System.setProperty("expensetracker.journal.sync", sync);
+            }
+        }
+    }
+
+
+    @Test
+    public void testJournalBatchIsReplayedWhole() throws java.io.IOException {
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("transactions", ".journal");
+        try {
+            // Pre-condition: A journal holding a batch of 10 adds and a batch of 2 removes
+            TransactionJournal journal = TransactionJournal.open(file, TransactionJournal.SyncPolicy.EVERY_WRITE);
+            ExpenseTrackerModel journaledModel = new ExpenseTrackerModel(journal.getStore());
+            List<Transaction> batch = new java.util.ArrayList<>();
+            for (int i = 1; i <= 10; i++) {
+                batch.add(new Transaction(i, i % 2 == 0 ? "food" : "bills"));
+            }
+            journaledModel.addTransactions(batch);
+            journaledModel.removeTransactions(new int[] {0, 9});
+            List<Transaction> saved = new java.util.ArrayList<>(journaledModel.getTransactions());
+            journal.close();
+            long savedLength = java.nio.file.Files.size(file);
+
+            // Perform the action: Add a batch larger than the journal's buffer, and tear its record as a crash would
+            journal = TransactionJournal.open(file, TransactionJournal.SyncPolicy.EVERY_WRITE);
+            journaledModel = new ExpenseTrackerModel(journal.getStore());
+            assertEquals(saved, journaledModel.getTransactions());
+            List<Transaction> large = new java.util.ArrayList<>();
+            for (int i = 0; i < 4000; i++) {
+                large.add(new Transaction(1 + i % 500, "bills"));
+            }
+            journaledModel.addTransactions(large);
+            journal.close();
+            try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(file, java.nio.file.StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() - 1);
+            }
+
+            // Post-condition: None of the torn batch is restored, and the file is cut back after the last whole record
+            journal = TransactionJournal.open(file, TransactionJournal.SyncPolicy.EVERY_WRITE);
+            assertEquals(saved, new ExpenseTrackerModel(journal.getStore()).getTransactions());
+            journal.close();
+            assertEquals(savedLength, java.nio.file.Files.size(file));
+        } finally {
+            java.nio.file.Files.deleteIfExists(file);
+            java.nio.file.Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".snapshot"));
+        }
+    }
+
+
+    @Test
+    public void testMappedStoreRemovalsOneAtATime() throws java.io.IOException {
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("transactions", ".snapshot");
+        try {
+            // Pre-condition: A mapped store of 20000 rows (five blocks, the last one partial), with ids 0 to 19999
+            ExpenseTrackerModel source = new ExpenseTrackerModel();
+            for (int i = 0; i < 20_000; i++) {
+                source.addTransaction(new Transaction(1 + i % 100, "food"));
+            }
+            MappedTransactionStore.write(source.getSnapshot().asColumns(), file, 1);
+            MappedTransactionStore store = MappedTransactionStore.open(file);
+
+            // Perform the action: Remove every tenth row, one at a time from the last one, taking a snapshot halfway
+            model.TransactionColumns halfway = null;
+            for (int row = 19_990; row >= 0; row -= 10) {
+                store.remove(row);
+                if (row == 10_000) {
+                    halfway = store.snapshot();
+                }
+            }
+
+            // Post-condition: Every other row keeps its order in every block, and the snapshot still sees its rows
+            assertEquals(18_000, store.size());
+            for (int row = 0; row < store.size(); row++) {
+                assertEquals(row + row / 9 + 1, store.getId(row));
+            }
+            assertEquals(19_000, halfway.size());
+            assertEquals(9_999, halfway.getId(9_999));
+            assertEquals(10_001, halfway.getId(10_000));
+            assertEquals(19_999, halfway.getId(18_999));
+        } finally {
+            java.nio.file.Files.deleteIfExists(file);
+        }
+    }
+
 }
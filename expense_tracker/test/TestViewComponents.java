@@ -0,0 +1,105 @@
+// package test;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import javax.swing.JTable;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import model.ExpenseTrackerModel;
+import model.Transaction;
+import view.HighlightRenderer;
+import view.TransactionTableModel;
+
+/**
+ * Tests of the view components that need no window, so they also run headless
+ */
+public class TestViewComponents {
+
+    private ExpenseTrackerModel model;
+
+    @Before
+    public void setup() {
+        model = new ExpenseTrackerModel();
+    }
+
+
+    @Test
+    public void testTableModelRowsAndUpdates() {
+        // Pre-condition: A table showing three transactions
+        model.addTransaction(new Transaction(10.0, "food"));
+        model.addTransaction(new Transaction(20.0, "travel"));
+        model.addTransaction(new Transaction(30.0, "bills"));
+        TransactionTableModel table = new TransactionTableModel();
+        List<javax.swing.event.TableModelEvent> events = new java.util.ArrayList<>();
+        table.addTableModelListener(events::add);
+        assertEquals(0, table.getRowCount());
+        table.setColumns(model.getSnapshot().asColumns());
+
+        // Post-condition: One row per transaction, mapped to the columns, and the total row
+        assertEquals(4, table.getRowCount());
+        assertEquals(4, table.getColumnCount());
+        assertEquals("Amount", table.getColumnName(1));
+        assertEquals(2, table.getValueAt(1, 0));
+        assertEquals(20.0, table.getValueAt(1, 1));
+        assertEquals("travel", table.getValueAt(1, 2));
+        assertEquals(model.getTransactions().get(1).getTimestamp(), table.getValueAt(1, 3));
+        assertEquals("Total", table.getValueAt(3, 0));
+        assertEquals(60.0, (double) table.getValueAt(3, 3), 0.01);
+        assertEquals(model.getTransactions().get(2).getId(), table.getTransactionId(2));
+        assertEquals(Transaction.NO_ID, table.getTransactionId(3));
+
+        // Perform the action: Report an appended row, then a removed one
+        events.clear();
+        model.addTransaction(new Transaction(40.0, "food"));
+        table.rowsInserted(model.getSnapshot().asColumns(), 3, 3);
+        model.removeTransaction(0);
+        table.rowsDeleted(model.getSnapshot().asColumns(), 0, 0);
+
+        // Post-condition: Only the changed rows are reported, and the rows follow the model
+        assertEquals(4, events.size());
+        assertEquals(javax.swing.event.TableModelEvent.INSERT, events.get(0).getType());
+        assertEquals(3, events.get(0).getFirstRow());
+        assertEquals(javax.swing.event.TableModelEvent.UPDATE, events.get(1).getType());
+        assertEquals(4, events.get(1).getFirstRow());
+        assertEquals(javax.swing.event.TableModelEvent.DELETE, events.get(2).getType());
+        assertEquals(0, events.get(2).getFirstRow());
+        assertEquals(0, events.get(2).getLastRow());
+        assertEquals(javax.swing.event.TableModelEvent.UPDATE, events.get(3).getType());
+        assertEquals(4, table.getRowCount());
+        assertEquals(20.0, table.getValueAt(0, 1));
+        assertEquals(1, table.getValueAt(0, 0));
+        assertEquals(90.0, (double) table.getValueAt(3, 3), 0.01);
+    }
+
+
+    @Test
+    public void testHighlightRendererRows() {
+        // Pre-condition: A table of four rows, rendered with rows 1 and 3 highlighted
+        JTable table = new JTable(4, 2);
+        HighlightRenderer renderer = new HighlightRenderer();
+        java.util.BitSet rows = new java.util.BitSet();
+        rows.set(1);
+        rows.set(3);
+        renderer.setHighlightedRows(rows);
+
+        // Perform the action: Move the highlight from row 1 to row 2
+        rows.clear(1);
+        rows.set(2);
+        java.util.BitSet changed = renderer.setHighlightedRows(rows);
+
+        // Post-condition: Only the highlighted rows are painted green, and only the rows that changed are reported
+        assertEquals(java.util.Arrays.asList(1, 2), changed.stream().boxed().collect(java.util.stream.Collectors.toList()));
+        assertEquals(rows, renderer.getHighlightedRows());
+        java.awt.Color highlight = new java.awt.Color(173, 255, 168);
+        for (int row = 0; row < 4; row++) {
+            java.awt.Color background = renderer.getTableCellRendererComponent(table, "x", false, false, row, 1).getBackground();
+            assertEquals(rows.get(row) ? highlight : table.getBackground(), background);
+        }
+        renderer.getHighlightedRows().clear();
+        assertEquals(rows, renderer.getHighlightedRows());
+    }
+
+}